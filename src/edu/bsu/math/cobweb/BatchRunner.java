@@ -0,0 +1,226 @@
+/*
+ * Cobweb Plot 2008: A function iteration and cobweb plot visualization tool
+ * Copyright (C) 2008 Ball State University
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package edu.bsu.math.cobweb;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+import EDU.emporia.mathtools.Graphable_error;
+
+/**
+ * runs a file of jobs without a display. each line of the job file is
+ * 
+ * <pre>
+ * formula; seed[; k]
+ * </pre>
+ * 
+ * and blank lines and lines starting with # are skipped. for each job the
+ * orbit of f<sup>k</sup> is run past a transient, and then the period of the
+ * cycle it settled on, the values of that cycle, an estimate of the Lyapunov
+ * exponent of f and the last value are written as one tab separated line.
+ * 
+ * the jobs run on a work-stealing pool, but their lines are written in the
+ * order of the job file, each as soon as it and every job before it are
+ * done. only a few jobs per thread are read ahead, so a job file of any
+ * length can be run. formulas that could not be optimized share the
+ * MathToolKit parser with everything else and are run one at a time under
+ * {@link OrbitServer#EVALUATION_LOCK}.
+ */
+final class BatchRunner {
+
+	/**
+	 * the steps of f<sup>k</sup> run before anything is measured
+	 */
+	static final int TRANSIENT_STEPS = 10000;
+
+	/**
+	 * the steps of f<sup>k</sup> measured after the transient
+	 */
+	static final int SAMPLE_STEPS = 1000;
+
+	/**
+	 * the longest cycle looked for
+	 */
+	static final int MAX_PERIOD = 64;
+
+	/**
+	 * how close values must be to count as the same point of a cycle
+	 */
+	static final double TOLERANCE = 1e-9;
+
+	/**
+	 * the first line of the output
+	 */
+	static final String HEADER = "# formula\tseed\tk\tperiod\tattractor"
+			+ "\tlyapunov\tfinal";
+
+	private static final int MAX_K = 1000;
+
+	private static final int JOBS_PER_THREAD = 4;
+
+	private final ForkJoinPool pool;
+
+	/**
+	 * construct a {@link BatchRunner}
+	 * 
+	 * @param parallelism
+	 *            the number of jobs run at once
+	 */
+	public BatchRunner(int parallelism) {
+		pool = new ForkJoinPool(parallelism);
+	}
+
+	/**
+	 * run every job of a job file
+	 * 
+	 * @param jobs
+	 *            the job file
+	 * @param out
+	 *            where the results are written, in the order of the jobs
+	 * @return the number of jobs run
+	 * @throws IOException
+	 *             if the jobs can not be read or the results written
+	 */
+	int run(BufferedReader jobs, Writer out) throws IOException {
+		int window = JOBS_PER_THREAD * pool.getParallelism();
+		Queue<ForkJoinTask<String>> pending = new ArrayDeque<ForkJoinTask<String>>();
+		int count = 0;
+		out.write(HEADER);
+		out.write('\n');
+		String line;
+		while ((line = jobs.readLine()) != null) {
+			final String job = line.trim();
+			if (job.length() == 0 || job.startsWith("#"))
+				continue;
+			pending.add(pool.submit(new Callable<String>() {
+
+				public String call() {
+					return run(job);
+				}
+			}));
+			count++;
+			if (pending.size() >= window)
+				write(pending, out);
+		}
+		while (!pending.isEmpty())
+			write(pending, out);
+		out.flush();
+		return count;
+	}
+
+	/**
+	 * write the result of the oldest job, waiting for it if need be. the
+	 * output is flushed whenever the next job is still running, so results
+	 * show up as they are found.
+	 */
+	private static void write(Queue<ForkJoinTask<String>> pending, Writer out)
+			throws IOException {
+		out.write(pending.remove().join());
+		out.write('\n');
+		if (!pending.isEmpty() && !pending.peek().isDone())
+			out.flush();
+	}
+
+	/**
+	 * stop the threads of the pool once the running jobs are done
+	 */
+	void shutdown() {
+		pool.shutdown();
+	}
+
+	/**
+	 * @param job
+	 *            one line of the job file
+	 * @return the line of the output for the job
+	 */
+	static String run(String job) {
+		String[] parts = job.split(";");
+		String formula = parts[0].trim();
+		StringBuilder line = new StringBuilder(formula);
+		try {
+			if (parts.length < 2 || parts.length > 3)
+				throw new NumberFormatException("expected formula; seed[; k]");
+			double seed = Double.parseDouble(parts[1].trim());
+			int k = parts.length > 2 ? Integer.parseInt(parts[2].trim()) : 1;
+			if (k < 1 || k > MAX_K)
+				throw new NumberFormatException("k must be between 1 and "
+						+ MAX_K);
+			line.append('\t').append(seed).append('\t').append(k);
+
+			CompiledFunction f;
+			synchronized (OrbitServer.EVALUATION_LOCK) {
+				f = FormulaCache.getInstance().function(formula);
+			}
+			if (f.isOptimized())
+				analyze(f, seed, k, line);
+			else
+				synchronized (OrbitServer.EVALUATION_LOCK) {
+					analyze(f, seed, k, line);
+				}
+		} catch (NumberFormatException e) {
+			line.append("\terror: ").append(e.getMessage());
+		} catch (Graphable_error e) {
+			line.append("\terror: not a valid formula");
+		}
+		return line.toString();
+	}
+
+	/**
+	 * run one job and append its period, attractor, Lyapunov exponent and
+	 * last value. the exponent is the mean of ln|f'(x)| over every step of f
+	 * in the measured part of the orbit, with f' estimated by a central
+	 * difference.
+	 */
+	private static void analyze(CompiledFunction f, double seed, int k,
+			StringBuilder line) {
+		double x = seed;
+		for (int i = 0; i < TRANSIENT_STEPS * k; i++)
+			x = f.functionValue(x);
+
+		Orbit tail = new Orbit();
+		tail.add(x);
+		double logs = 0;
+		for (int i = 0; i < SAMPLE_STEPS; i++) {
+			for (int j = 0; j < k; j++) {
+				double h = 1e-6 * Math.max(1, Math.abs(x));
+				logs += Math.log(Math.abs(f.functionValue(x + h)
+						- f.functionValue(x - h))
+						/ (2 * h));
+				x = f.functionValue(x);
+			}
+			tail.add(x);
+		}
+
+		int period = OrbitAnalysis.period(tail, MAX_PERIOD, TOLERANCE);
+		line.append('\t').append(period).append('\t');
+		int last = tail.size() - 1;
+		for (int i = last - period + 1; i <= last; i++) {
+			if (i > last - period + 1)
+				line.append(' ');
+			line.append(tail.get(i));
+		}
+		line.append('\t').append(logs / ((double) SAMPLE_STEPS * k));
+		line.append('\t').append(x);
+	}
+}
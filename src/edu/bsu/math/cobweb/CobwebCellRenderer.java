@@ -0,0 +1,163 @@
+/*
+ * Cobweb Plot 2008: A function iteration and cobweb plot visualization tool
+ * Copyright (C) 2008 Ball State University
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package edu.bsu.math.cobweb;
+
+import java.awt.Component;
+import java.util.Arrays;
+import java.util.Formatter;
+import java.util.Locale;
+
+import javax.swing.JTable;
+import javax.swing.table.DefaultTableCellRenderer;
+
+/**
+ * renders the cells of a {@link CobwebTableModel} straight from the doubles
+ * of its {@link OrbitView}s, so no value is boxed. the text of each cell is
+ * kept in a small cache keyed by the cell and the bits of its value, which
+ * holds every visible cell many times over, so repainting the same rows,
+ * as the table does after every batch of an iteration, finds every text in
+ * the cache and allocates nothing. only the cells of newly shown rows are
+ * formatted, into a reused buffer.
+ * 
+ * the value is ignored; {@link CobwebTable} passes null instead of boxing it.
+ */
+final class CobwebCellRenderer extends DefaultTableCellRenderer {
+
+	private static final long serialVersionUID = 6020761957524208442L;
+
+	/**
+	 * the precision that shows every digit needed to tell a double apart
+	 * from all others
+	 */
+	static final int ALL_DIGITS = 0;
+
+	/**
+	 * the number of cached texts, a power of two
+	 */
+	private static final int CACHE_SIZE = 1024;
+
+	private final int[] cachedRows = new int[CACHE_SIZE];
+
+	private final int[] cachedColumns = new int[CACHE_SIZE];
+
+	private final long[] cachedBits = new long[CACHE_SIZE];
+
+	private final String[] cachedTexts = new String[CACHE_SIZE];
+
+	private final StringBuilder buffer = new StringBuilder(32);
+
+	private final Formatter formatter = new Formatter(buffer, Locale.US);
+
+	private int precision = ALL_DIGITS;
+
+	private String pattern;
+
+	/**
+	 * set the number of significant digits shown
+	 * 
+	 * @param precision
+	 *            the number of significant digits, or {@link #ALL_DIGITS}
+	 */
+	void setPrecision(int precision) {
+		if (precision < 0)
+			throw new IllegalArgumentException("precision: " + precision);
+		if (precision == this.precision)
+			return;
+		this.precision = precision;
+		pattern = precision == ALL_DIGITS ? null : "%." + precision + "g";
+		Arrays.fill(cachedTexts, null);
+	}
+
+	/**
+	 * @return the number of significant digits shown, or {@link #ALL_DIGITS}
+	 */
+	int getPrecision() {
+		return precision;
+	}
+
+	/**
+	 * @see DefaultTableCellRenderer#getTableCellRendererComponent(JTable,
+	 *      Object, boolean, boolean, int, int)
+	 */
+	public Component getTableCellRendererComponent(JTable table, Object value,
+			boolean isSelected, boolean hasFocus, int row, int column) {
+		super.getTableCellRendererComponent(table, null, isSelected, hasFocus,
+				row, column);
+		int modelColumn = table.convertColumnIndexToModel(column);
+		OrbitView view = ((CobwebTableModel) table.getModel())
+				.getColumnView(modelColumn);
+		if (view == null)
+			setText(text(row, modelColumn, row, false));
+		else if (row < view.size())
+			setText(text(row, modelColumn, Double.doubleToRawLongBits(view
+					.get(row)), true));
+		else
+			setText("");
+		return this;
+	}
+
+	/**
+	 * the text is set by {@link #getTableCellRendererComponent}
+	 * 
+	 * @see DefaultTableCellRenderer#setValue(Object)
+	 */
+	protected void setValue(Object value) {
+	}
+
+	/**
+	 * the texts are never HTML, so the label UI has nothing to do when they
+	 * change, and telling it would allocate an event for every cell
+	 * 
+	 * @see DefaultTableCellRenderer#firePropertyChange(String, Object, Object)
+	 */
+	protected void firePropertyChange(String propertyName, Object oldValue,
+			Object newValue) {
+		// property names are interned, as in DefaultTableCellRenderer
+		if (propertyName != "text")
+			super.firePropertyChange(propertyName, oldValue, newValue);
+	}
+
+	/**
+	 * @param bits
+	 *            the row for the n column, the raw bits of the double for
+	 *            the others
+	 * @return the text of a cell, from the cache if it is there
+	 */
+	private String text(int row, int column, long bits, boolean isDouble) {
+		int slot = (row * 31 + column) & (CACHE_SIZE - 1);
+		String text = cachedTexts[slot];
+		if (text != null && cachedRows[slot] == row
+				&& cachedColumns[slot] == column && cachedBits[slot] == bits)
+			return text;
+
+		if (!isDouble)
+			text = Integer.toString(row);
+		else if (pattern == null)
+			text = Double.toString(Double.longBitsToDouble(bits));
+		else {
+			buffer.setLength(0);
+			formatter.format(pattern, Double.longBitsToDouble(bits));
+			text = buffer.toString();
+		}
+		cachedRows[slot] = row;
+		cachedColumns[slot] = column;
+		cachedBits[slot] = bits;
+		cachedTexts[slot] = text;
+		return text;
+	}
+}
@@ -0,0 +1,183 @@
+/*
+ * Cobweb Plot 2008: A function iteration and cobweb plot visualization tool
+ * Copyright (C) 2008 Ball State University
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package edu.bsu.math.cobweb;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.FlightRecorder;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Java Flight Recorder events for the expensive parts of the cobweb plot.
+ * start the program with
+ * <code>-XX:StartFlightRecording=filename=cobweb.jfr</code> and every
+ * iteration batch, graph update and repaint, table change, formula compile
+ * and zoom shows up next to the GC and thread events of the recording.
+ * 
+ * loading the first event class sets up the whole flight recorder, which
+ * takes longer than building the window, so no event is created until
+ * {@link #isRecording()}; a recording started later with
+ * <code>jcmd &lt;pid&gt; JFR.start</code> still gets every event from then on.
+ */
+final class CobwebEvents {
+
+	private static final String CATEGORY = "Cobweb Plot";
+
+	private CobwebEvents() {
+	}
+
+	/**
+	 * @return true once the flight recorder has been started, so events are
+	 *         worth creating
+	 */
+	static boolean isRecording() {
+		return FlightRecorder.isInitialized();
+	}
+
+	/**
+	 * one batch of steps of the Iterate action
+	 */
+	@Name("edu.bsu.math.cobweb.IterationBatch")
+	@Label("Iteration Batch")
+	@Category(CATEGORY)
+	@Description("A batch of iterations between two updates of the graph and table")
+	static final class IterationBatch extends Event {
+
+		@Label("Iterations")
+		int iterations;
+
+		@Label("Orbit Length")
+		int orbitLength;
+
+		@Label("Cancelled")
+		boolean cancelled;
+
+		@Label("Stop Reason")
+		String stopReason;
+	}
+
+	/**
+	 * one call to update the graph
+	 */
+	@Name("edu.bsu.math.cobweb.GraphUpdate")
+	@Label("Graph Update")
+	@Category(CATEGORY)
+	@Description("Recomputing the points of every curve on the graph")
+	static final class GraphUpdate extends Event {
+
+		@Label("Orbit Length")
+		int orbitLength;
+	}
+
+	/**
+	 * one paint of the graph
+	 */
+	@Name("edu.bsu.math.cobweb.GraphPaint")
+	@Label("Graph Paint")
+	@Category(CATEGORY)
+	@Description("Painting the graph component")
+	static final class GraphPaint extends Event {
+
+		@Label("Width")
+		int width;
+
+		@Label("Height")
+		int height;
+
+		@Label("Orbit Length")
+		int orbitLength;
+	}
+
+	/**
+	 * one change event of the table model
+	 */
+	@Name("edu.bsu.math.cobweb.TableChange")
+	@Label("Table Change")
+	@Category(CATEGORY)
+	@Description("Delivering a change of the table model to its listeners")
+	static final class TableChange extends Event {
+
+		@Label("Type")
+		int type;
+
+		@Label("First Row")
+		int firstRow;
+
+		@Label("Last Row")
+		int lastRow;
+
+		@Label("Row Count")
+		int rowCount;
+	}
+
+	/**
+	 * one parse of f and construction of f<sup>k</sup>
+	 */
+	@Name("edu.bsu.math.cobweb.FormulaCompile")
+	@Label("Formula Compile")
+	@Category(CATEGORY)
+	@Description("Parsing and optimizing f and the formula of the kth iterate")
+	static final class FormulaCompile extends Event {
+
+		@Label("Formula")
+		String formula;
+
+		@Label("k")
+		int k;
+
+		@Label("f^k Formula Length")
+		int kFormulaLength;
+
+		@Label("f^k Operations")
+		@Description("Operations in one evaluation of f^k, -1 if not optimized")
+		int kOperations;
+
+		@Label("Cache Hit")
+		boolean cached;
+	}
+
+	/**
+	 * one push or pop of the zoom stack
+	 */
+	@Name("edu.bsu.math.cobweb.Zoom")
+	@Label("Zoom")
+	@Category(CATEGORY)
+	@Description("A change of the zoom stack")
+	static final class Zoom extends Event {
+
+		@Label("Action")
+		String action;
+
+		@Label("Stack Depth")
+		int depth;
+
+		@Label("x min")
+		double xMin;
+
+		@Label("x max")
+		double xMax;
+
+		@Label("y min")
+		double yMin;
+
+		@Label("y max")
+		double yMax;
+	}
+}
@@ -0,0 +1,515 @@
+/*
+ * Cobweb Plot 2008: A function iteration and cobweb plot visualization tool
+ * Copyright (C) 2008 Ball State University
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package edu.bsu.math.cobweb;
+
+import java.awt.AlphaComposite;
+import java.awt.Color;
+import java.awt.FontMetrics;
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.awt.image.BufferedImage;
+import java.awt.image.VolatileImage;
+
+import javax.swing.JComponent;
+import javax.swing.Timer;
+
+import EDU.emporia.mathtools.MathFunction;
+
+/**
+ * the graph of a cobweb plot: the grid, y=x, f, f<sup>k</sup>, the webs of
+ * both and the function and web of each {@link OrbitTrack}, drawn by a
+ * {@link CobwebRenderer}. each of these layers is kept in an
+ * image of its own and only drawn again when it changes, and a web that has
+ * only grown since it was drawn just has its new steps added. the layers are
+ * put together in a {@link VolatileImage}, so a repaint that changes nothing,
+ * such as one for the zoom rectangle or the title, only copies that image.
+ * the webs are drawn without antialiasing, which is many times faster for
+ * orbits of millions of steps.
+ * 
+ * while the user zooms the graph is drawn as a draft: nothing is
+ * antialiased, the functions are sampled every few pixels and only a bounded
+ * number of the steps of each web are drawn, so a zoom is shown within a
+ * frame however long the orbit is. once the mouse has been still for
+ * {@link #IDLE_MILLIS} the draft layers are drawn again in full.
+ * 
+ * every method must be called on the event dispatch thread except
+ * {@link #updateGraph()}.
+ */
+class CobwebGraph extends JComponent {
+
+	private static final long serialVersionUID = 3150318093467268331L;
+
+	/**
+	 * how long the mouse must be still before a draft is drawn in full
+	 */
+	static final int IDLE_MILLIS = 250;
+
+	/**
+	 * the most steps of a web drawn in a draft
+	 */
+	private static final int DRAFT_STEPS = 1 << 14;
+
+	/**
+	 * the pixel columns between samples of a function in a draft
+	 */
+	private static final int DRAFT_COLUMNS = 4;
+
+	/**
+	 * the most tracks shown besides the orbit of f
+	 */
+	static final int MAX_TRACKS = 4;
+
+	/**
+	 * track i is drawn on layers TRACKS + 2i, its function, and TRACKS + 2i +
+	 * 1, its web
+	 */
+	private static final int GRID = 0, LINE = 1, FUNCTION = 2, K_FUNCTION = 3,
+			WEB = 4, K_WEB = 5, TRACKS = 6, LAYERS = TRACKS + 2 * MAX_TRACKS;
+
+	private ZoomLevel zoom = new ZoomLevel(0.0, 1.0, 0.0, 1.0);
+
+	private boolean gridVisible = true, lineVisible = true;
+
+	private MathFunction function, kFunction;
+
+	private OrbitWeb web, kWeb;
+
+	private final MathFunction[] trackFunctions = new MathFunction[MAX_TRACKS];
+
+	private final OrbitWeb[] trackWebs = new OrbitWeb[MAX_TRACKS];
+
+	private final Color[] trackColors = new Color[MAX_TRACKS];
+
+	private String title = "";
+
+	/**
+	 * draws the layers at the current size and zoom, or null if either has
+	 * changed
+	 */
+	private CobwebRenderer renderer;
+
+	private final BufferedImage[] layers = new BufferedImage[LAYERS];
+
+	private final boolean[] valid = new boolean[LAYERS];
+
+	/**
+	 * for each web layer, the steps drawn and the orbit and stride they were
+	 * drawn from
+	 */
+	private final int[] drawnSteps = new int[LAYERS],
+			drawnGeneration = new int[LAYERS], drawnStride = new int[LAYERS],
+			drawnSpan = new int[LAYERS];
+
+	private VolatileImage frame;
+
+	/**
+	 * whether layers are drawn as drafts now, and which layers were
+	 */
+	private boolean draft;
+
+	private final boolean[] drawnDraft = new boolean[LAYERS];
+
+	private final Timer idleTimer = new Timer(IDLE_MILLIS,
+			new ActionListener() {
+
+				public void actionPerformed(ActionEvent e) {
+					draft = false;
+					for (int i = 0; i < LAYERS; i++)
+						if (drawnDraft[i])
+							valid[i] = false;
+					repaint();
+				}
+			});
+
+	/**
+	 * construct a {@link CobwebGraph}
+	 */
+	public CobwebGraph() {
+		idleTimer.setRepeats(false);
+	}
+
+	/**
+	 * draw layers as drafts until the user has stopped for a moment. call
+	 * this for every zoom gesture, before the zoom changes.
+	 */
+	void interacting() {
+		draft = true;
+		idleTimer.restart();
+	}
+
+	/**
+	 * @param zoom
+	 *            the {@link ZoomLevel} to show
+	 */
+	void setZoom(ZoomLevel zoom) {
+		this.zoom = zoom;
+		renderer = null;
+		repaint();
+	}
+
+	/**
+	 * @return the {@link ZoomLevel} shown
+	 */
+	ZoomLevel getZoom() {
+		return zoom;
+	}
+
+	/**
+	 * @param visible
+	 *            true to show the grid lines and axes
+	 */
+	void setGridVisible(boolean visible) {
+		if (visible != gridVisible) {
+			gridVisible = visible;
+			invalidateLayer(GRID);
+		}
+	}
+
+	/**
+	 * @param visible
+	 *            true to show the line y=x
+	 */
+	void setLineVisible(boolean visible) {
+		if (visible != lineVisible) {
+			lineVisible = visible;
+			invalidateLayer(LINE);
+		}
+	}
+
+	/**
+	 * @param f
+	 *            the function f to show, or null to leave it out
+	 */
+	void setFunction(MathFunction f) {
+		if (f != function) {
+			function = f;
+			invalidateLayer(FUNCTION);
+		}
+	}
+
+	/**
+	 * @param kF
+	 *            the function f<sup>k</sup> to show, or null to leave it out
+	 */
+	void setKFunction(MathFunction kF) {
+		if (kF != kFunction) {
+			kFunction = kF;
+			invalidateLayer(K_FUNCTION);
+		}
+	}
+
+	/**
+	 * @param web
+	 *            the {@link OrbitWeb} of f to show, or null to leave it out
+	 */
+	void setWeb(OrbitWeb web) {
+		if (web != this.web) {
+			this.web = web;
+			invalidateLayer(WEB);
+		}
+	}
+
+	/**
+	 * @param kWeb
+	 *            the {@link OrbitWeb} of f<sup>k</sup> to show, or null to
+	 *            leave it out
+	 */
+	void setKWeb(OrbitWeb kWeb) {
+		if (kWeb != this.kWeb) {
+			this.kWeb = kWeb;
+			invalidateLayer(K_WEB);
+		}
+	}
+
+	/**
+	 * @param i
+	 *            the slot of the track, less than {@link #MAX_TRACKS}
+	 * @param f
+	 *            the function of the track to show, or null to leave it out
+	 * @param w
+	 *            the {@link OrbitWeb} of the track to show, or null to leave
+	 *            it out
+	 * @param color
+	 *            the color of both
+	 */
+	void setTrack(int i, MathFunction f, OrbitWeb w, Color color) {
+		boolean recolor = !color.equals(trackColors[i]);
+		trackColors[i] = color;
+		if (f != trackFunctions[i] || recolor) {
+			trackFunctions[i] = f;
+			invalidateLayer(TRACKS + 2 * i);
+		}
+		if (w != trackWebs[i] || recolor) {
+			trackWebs[i] = w;
+			invalidateLayer(TRACKS + 2 * i + 1);
+		}
+	}
+
+	/**
+	 * @param title
+	 *            the text shown above the plot
+	 */
+	void setTitle(String title) {
+		this.title = title;
+		repaint();
+	}
+
+	/**
+	 * @return the text shown above the plot
+	 */
+	String getTitle() {
+		return title;
+	}
+
+	/**
+	 * show the steps added to the orbits since the last paint. may be called
+	 * from any thread.
+	 */
+	void updateGraph() {
+		repaint();
+	}
+
+	/**
+	 * @param x
+	 *            a pixel column
+	 * @return the math x coordinate of the column
+	 */
+	double xPixelToMath(int x) {
+		return zoom.xMin + (zoom.xMax - zoom.xMin) * x / getWidth();
+	}
+
+	/**
+	 * @param y
+	 *            a pixel row
+	 * @return the math y coordinate of the row
+	 */
+	double yPixelToMath(int y) {
+		return zoom.yMax - (zoom.yMax - zoom.yMin) * y / getHeight();
+	}
+
+	private void invalidateLayer(int layer) {
+		valid[layer] = false;
+		repaint();
+	}
+
+	/**
+	 * bring the layers up to date, put them together and draw the title
+	 */
+	protected void paintComponent(Graphics g) {
+		int width = getWidth(), height = getHeight();
+		if (width <= 0 || height <= 0)
+			return;
+		boolean changed = false;
+		if (renderer == null || renderer.getWidth() != width
+				|| renderer.getHeight() != height) {
+			renderer = new CobwebRenderer(zoom, width, height);
+			renderer.prepare();
+			for (int i = 0; i < LAYERS; i++) {
+				valid[i] = false;
+				if (layers[i] == null || layers[i].getWidth() != width
+						|| layers[i].getHeight() != height)
+					layers[i] = null;
+			}
+			changed = true;
+		}
+		changed |= updateLayers();
+
+		do {
+			if (frame == null || frame.getWidth() != width
+					|| frame.getHeight() != height) {
+				frame = createVolatileImage(width, height);
+				changed = true;
+			}
+			if (frame == null) {
+				// not on a screen, so there is nothing to accelerate
+				compose((Graphics2D) g);
+				break;
+			}
+			int status = frame.validate(getGraphicsConfiguration());
+			if (status == VolatileImage.IMAGE_INCOMPATIBLE) {
+				frame = null;
+				continue;
+			}
+			if (changed || status == VolatileImage.IMAGE_RESTORED) {
+				Graphics2D fg = frame.createGraphics();
+				compose(fg);
+				fg.dispose();
+			}
+			g.drawImage(frame, 0, 0, null);
+		} while (frame == null || frame.contentsLost());
+
+		paintTitle(g);
+	}
+
+	/**
+	 * draw every layer that is out of date
+	 * 
+	 * @return true if any layer changed
+	 */
+	private boolean updateLayers() {
+		boolean changed = false;
+		if (!valid[GRID]) {
+			Graphics2D g = clearLayer(GRID);
+			if (gridVisible)
+				renderer.paintGrid(g);
+			g.dispose();
+			changed = true;
+		}
+		if (!valid[LINE]) {
+			Graphics2D g = clearLayer(LINE);
+			if (lineVisible) {
+				g.setColor(CobwebRenderer.LINE_COLOR);
+				g.draw(renderer.linePath());
+			}
+			g.dispose();
+			changed = true;
+		}
+		changed |= updateFunction(FUNCTION, function,
+				CobwebRenderer.FUNCTION_COLOR);
+		changed |= updateFunction(K_FUNCTION, kFunction,
+				CobwebRenderer.K_FUNCTION_COLOR);
+		changed |= updateWeb(WEB, web, CobwebRenderer.WEB_COLOR);
+		changed |= updateWeb(K_WEB, kWeb, CobwebRenderer.K_WEB_COLOR);
+		for (int i = 0; i < MAX_TRACKS; i++) {
+			changed |= updateFunction(TRACKS + 2 * i, trackFunctions[i],
+					trackColors[i]);
+			changed |= updateWeb(TRACKS + 2 * i + 1, trackWebs[i],
+					trackColors[i]);
+		}
+		return changed;
+	}
+
+	private boolean updateFunction(int layer, MathFunction f, Color color) {
+		if (valid[layer])
+			return false;
+		if (f == null && layers[layer] == null) {
+			// an empty layer that was never drawn is left out of the frame
+			valid[layer] = true;
+			return false;
+		}
+		Graphics2D g = clearLayer(layer);
+		if (f != null) {
+			g.setColor(color);
+			g.draw(draft ? renderer.sample(f, DRAFT_COLUMNS) : renderer
+					.sample(f));
+		}
+		g.dispose();
+		return true;
+	}
+
+	/**
+	 * draw the steps of a web that are not on its layer yet, or the whole web
+	 * again if the orbit has changed in any other way than growing. a draft
+	 * is always drawn whole, but from at most {@link #DRAFT_STEPS} steps
+	 * spread over the web.
+	 */
+	private boolean updateWeb(int layer, OrbitWeb w, Color color) {
+		if (w == null) {
+			if (valid[layer])
+				return false;
+			if (layers[layer] == null) {
+				valid[layer] = true;
+				return false;
+			}
+			clearLayer(layer).dispose();
+			return true;
+		}
+		OrbitView view = w.getOrbit();
+		int steps = w.getSteps();
+		int generation = view.getOrbit().getGeneration();
+		int first = drawnSteps[layer];
+		boolean same = valid[layer] && generation == drawnGeneration[layer]
+				&& view.getStride() == drawnStride[layer]
+				&& view.getSpan() == drawnSpan[layer];
+		Graphics2D g;
+		if (same && steps == first && drawnDraft[layer] == draft) {
+			return false;
+		} else if (same && steps > first && !draft && !drawnDraft[layer]) {
+			g = layers[layer].createGraphics();
+			setUp(g);
+		} else {
+			g = clearLayer(layer);
+			first = 0;
+		}
+		g.setRenderingHint(RenderingHints.KEY_ANTIALIASING,
+				RenderingHints.VALUE_ANTIALIAS_OFF);
+		g.setColor(color);
+		if (draft)
+			renderer.paintWeb(g, view, first, steps, Math.max(1,
+					(steps + DRAFT_STEPS - 1) / DRAFT_STEPS));
+		else
+			renderer.paintWeb(g, view, first, steps);
+		g.dispose();
+		drawnSteps[layer] = steps;
+		drawnGeneration[layer] = generation;
+		drawnStride[layer] = view.getStride();
+		drawnSpan[layer] = view.getSpan();
+		return true;
+	}
+
+	/**
+	 * make a layer transparent and mark it up to date
+	 * 
+	 * @return a {@link Graphics2D} set up to draw on the layer
+	 */
+	private Graphics2D clearLayer(int layer) {
+		if (layers[layer] == null)
+			layers[layer] = new BufferedImage(renderer.getWidth(), renderer
+					.getHeight(), BufferedImage.TYPE_INT_ARGB_PRE);
+		Graphics2D g = layers[layer].createGraphics();
+		g.setComposite(AlphaComposite.Clear);
+		g.fillRect(0, 0, renderer.getWidth(), renderer.getHeight());
+		g.setComposite(AlphaComposite.SrcOver);
+		setUp(g);
+		valid[layer] = true;
+		drawnDraft[layer] = draft;
+		drawnSteps[layer] = 0;
+		return g;
+	}
+
+	private void setUp(Graphics2D g) {
+		renderer.setUp(g);
+		if (draft)
+			g.setRenderingHint(RenderingHints.KEY_ANTIALIASING,
+					RenderingHints.VALUE_ANTIALIAS_OFF);
+	}
+
+	/**
+	 * draw the background and every layer in order
+	 */
+	private void compose(Graphics2D g) {
+		g.setColor(CobwebRenderer.BACKGROUND_COLOR);
+		g.fillRect(0, 0, getWidth(), getHeight());
+		for (BufferedImage layer : layers)
+			if (layer != null)
+				g.drawImage(layer, 0, 0, null);
+	}
+
+	private void paintTitle(Graphics g) {
+		if (title.length() == 0)
+			return;
+		g.setFont(getFont());
+		g.setColor(getForeground());
+		FontMetrics metrics = g.getFontMetrics();
+		g.drawString(title, (getWidth() - metrics.stringWidth(title)) / 2,
+				metrics.getAscent() + 2);
+	}
+}
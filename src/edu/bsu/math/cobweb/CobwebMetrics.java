@@ -0,0 +1,354 @@
+/*
+ * Cobweb Plot 2008: A function iteration and cobweb plot visualization tool
+ * Copyright (C) 2008 Ball State University
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package edu.bsu.math.cobweb;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * process wide runtime metrics, registered with the platform MBean server so
+ * they can be viewed in JConsole. to scrape them headlessly start the program
+ * with <code>-Dcom.sun.management.jmxremote.port=&lt;port&gt;</code> and read
+ * the attributes of {@link #OBJECT_NAME} with any JMX client.
+ * 
+ * the recording methods only touch atomic counters so they can be called from
+ * the iteration loop and the paint paths.
+ */
+final class CobwebMetrics implements CobwebMetricsMBean {
+
+	/**
+	 * the name the metrics are registered under
+	 */
+	static final String OBJECT_NAME = "edu.bsu.math.cobweb:type=CobwebMetrics";
+
+	/**
+	 * only one out of every <code>EVALUATION_SAMPLE_MASK + 1</code> formula
+	 * evaluations is timed
+	 */
+	static final int EVALUATION_SAMPLE_MASK = 63;
+
+	private static final int HISTOGRAM_BUCKETS = 24;
+
+	private static final double RATE_SMOOTHING = 0.25;
+
+	private static CobwebMetrics instance;
+
+	private volatile boolean iterating = false;
+
+	private volatile double iterationsPerSecond = 0;
+
+	private volatile long orbitLength = 0, orbitBytes = 0;
+
+	private final AtomicLong iterations = new AtomicLong();
+
+	private final Timing graphUpdates = new Timing();
+
+	private final Timing tableRefreshes = new Timing();
+
+	private final Timing repaints = new Timing();
+
+	private final Timing evaluations = new Timing();
+
+	private final AtomicLongArray evaluationHistogram = new AtomicLongArray(
+			HISTOGRAM_BUCKETS);
+
+	private final AtomicLong zooms = new AtomicLong();
+
+	private volatile long firstPaintNanos = -1;
+
+	/**
+	 * @return the shared {@link CobwebMetrics}
+	 */
+	static synchronized CobwebMetrics getInstance() {
+		if (instance == null)
+			instance = new CobwebMetrics();
+		return instance;
+	}
+
+	/**
+	 * register the shared {@link CobwebMetrics} with the platform MBean
+	 * server. starting the MBean server takes a while, so the window does this
+	 * after it is first painted; the metrics are collected from the start
+	 * either way.
+	 */
+	static synchronized void register() {
+		try {
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			ObjectName name = new ObjectName(OBJECT_NAME);
+			if (!server.isRegistered(name))
+				server.registerMBean(getInstance(), name);
+		} catch (JMException e) {
+			// the metrics are still collected, just not visible
+		} catch (SecurityException e) {
+			// not allowed to register in a sandboxed deployment
+		}
+	}
+
+	private CobwebMetrics() {
+	}
+
+	/**
+	 * record the start of an iteration run
+	 */
+	void iterationStarted() {
+		iterating = true;
+	}
+
+	/**
+	 * record a batch of iterations
+	 * 
+	 * @param count
+	 *            the number of iterations in the batch
+	 * @param nanos
+	 *            the time the batch took in nanoseconds
+	 */
+	void iterationBatch(int count, long nanos) {
+		if (count <= 0)
+			return;
+		iterations.addAndGet(count);
+		if (nanos > 0) {
+			double rate = count * 1e9 / nanos;
+			double old = iterationsPerSecond;
+			iterationsPerSecond = old == 0 ? rate : old + RATE_SMOOTHING
+					* (rate - old);
+		}
+	}
+
+	/**
+	 * record the end of an iteration run
+	 */
+	void iterationFinished() {
+		iterating = false;
+		iterationsPerSecond = 0;
+	}
+
+	/**
+	 * record the current size of the orbit
+	 * 
+	 * @param length
+	 *            the number of rows in the orbit
+	 * @param bytes
+	 *            the approximate number of bytes the orbit occupies
+	 */
+	void orbitChanged(long length, long bytes) {
+		orbitLength = length;
+		orbitBytes = bytes;
+	}
+
+	/**
+	 * @param n
+	 *            the index of the evaluation about to happen
+	 * @return true if the evaluation should be timed
+	 */
+	static boolean sampleEvaluation(int n) {
+		return (n & EVALUATION_SAMPLE_MASK) == 0;
+	}
+
+	/**
+	 * record a timed formula evaluation
+	 * 
+	 * @param nanos
+	 *            the time the evaluation took in nanoseconds
+	 */
+	void evaluationTimed(long nanos) {
+		evaluations.record(nanos);
+		int bucket = nanos <= 0 ? 0 : 64 - Long.numberOfLeadingZeros(nanos);
+		evaluationHistogram.incrementAndGet(Math.min(bucket,
+				HISTOGRAM_BUCKETS - 1));
+	}
+
+	/**
+	 * record an update of the graph
+	 * 
+	 * @param nanos
+	 *            the time the update took in nanoseconds
+	 */
+	void graphUpdated(long nanos) {
+		graphUpdates.record(nanos);
+	}
+
+	/**
+	 * record a refresh of the table
+	 * 
+	 * @param nanos
+	 *            the time the refresh took in nanoseconds
+	 */
+	void tableRefreshed(long nanos) {
+		tableRefreshes.record(nanos);
+	}
+
+	/**
+	 * record a repaint of the graph
+	 * 
+	 * @param nanos
+	 *            the time the repaint took in nanoseconds
+	 */
+	void graphRepainted(long nanos) {
+		repaints.record(nanos);
+	}
+
+	/**
+	 * record the first paint of the graph, once per process
+	 */
+	void firstPainted() {
+		if (firstPaintNanos < 0)
+			firstPaintNanos = System.nanoTime();
+	}
+
+	/**
+	 * record a change of the zoom level
+	 */
+	void zoomed() {
+		zooms.incrementAndGet();
+	}
+
+	public boolean isIterating() {
+		return iterating;
+	}
+
+	public long getIterationCount() {
+		return iterations.get();
+	}
+
+	public double getIterationsPerSecond() {
+		return iterationsPerSecond;
+	}
+
+	public long getOrbitLength() {
+		return orbitLength;
+	}
+
+	public long getOrbitFootprintBytes() {
+		return orbitBytes;
+	}
+
+	public long getGraphUpdateCount() {
+		return graphUpdates.count.get();
+	}
+
+	public double getGraphUpdateMeanMillis() {
+		return graphUpdates.meanNanos() / 1e6;
+	}
+
+	public double getGraphUpdateMaxMillis() {
+		return graphUpdates.max.get() / 1e6;
+	}
+
+	public long getTableRefreshCount() {
+		return tableRefreshes.count.get();
+	}
+
+	public double getTableRefreshMeanMillis() {
+		return tableRefreshes.meanNanos() / 1e6;
+	}
+
+	public double getTableRefreshMaxMillis() {
+		return tableRefreshes.max.get() / 1e6;
+	}
+
+	public long getEvaluationSampleCount() {
+		return evaluations.count.get();
+	}
+
+	public double getEvaluationMeanNanos() {
+		return evaluations.meanNanos();
+	}
+
+	public long[] getEvaluationLatencyHistogram() {
+		long[] counts = new long[HISTOGRAM_BUCKETS];
+		for (int i = 0; i < counts.length; i++)
+			counts[i] = evaluationHistogram.get(i);
+		return counts;
+	}
+
+	public long[] getEvaluationLatencyBucketBoundsNanos() {
+		long[] bounds = new long[HISTOGRAM_BUCKETS];
+		for (int i = 0; i < bounds.length - 1; i++)
+			bounds[i] = 1L << i;
+		bounds[bounds.length - 1] = Long.MAX_VALUE;
+		return bounds;
+	}
+
+	public long getZoomCount() {
+		return zooms.get();
+	}
+
+	public long getRepaintCount() {
+		return repaints.count.get();
+	}
+
+	public double getRepaintMeanMillis() {
+		return repaints.meanNanos() / 1e6;
+	}
+
+	public long getFirstPaintMillis() {
+		long painted = firstPaintNanos;
+		if (painted < 0)
+			return -1;
+		// the uptime is read now so nothing slows down the first paint
+		return ManagementFactory.getRuntimeMXBean().getUptime()
+				- (System.nanoTime() - painted) / 1000000;
+	}
+
+	public void reset() {
+		iterations.set(0);
+		graphUpdates.reset();
+		tableRefreshes.reset();
+		repaints.reset();
+		evaluations.reset();
+		for (int i = 0; i < HISTOGRAM_BUCKETS; i++)
+			evaluationHistogram.set(i, 0);
+		zooms.set(0);
+	}
+
+	/**
+	 * count, total and maximum of a timed operation
+	 */
+	private static final class Timing {
+
+		final AtomicLong count = new AtomicLong();
+
+		final AtomicLong total = new AtomicLong();
+
+		final AtomicLong max = new AtomicLong();
+
+		void record(long nanos) {
+			count.incrementAndGet();
+			total.addAndGet(nanos);
+			long old;
+			while (nanos > (old = max.get()) && !max.compareAndSet(old, nanos))
+				;
+		}
+
+		double meanNanos() {
+			long n = count.get();
+			return n == 0 ? 0 : (double) total.get() / n;
+		}
+
+		void reset() {
+			count.set(0);
+			total.set(0);
+			max.set(0);
+		}
+	}
+}
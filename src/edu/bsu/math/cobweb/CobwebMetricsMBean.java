@@ -0,0 +1,128 @@
+/*
+ * Cobweb Plot 2008: A function iteration and cobweb plot visualization tool
+ * Copyright (C) 2008 Ball State University
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package edu.bsu.math.cobweb;
+
+/**
+ * management interface for the runtime metrics of the cobweb plot. JMX
+ * requires standard MBean interfaces to be public.
+ */
+public interface CobwebMetricsMBean {
+
+	/**
+	 * @return true if an iteration run is currently in progress
+	 */
+	boolean isIterating();
+
+	/**
+	 * @return the total number of iterations since the last reset
+	 */
+	long getIterationCount();
+
+	/**
+	 * @return the smoothed iteration rate of the current run, 0 when idle
+	 */
+	double getIterationsPerSecond();
+
+	/**
+	 * @return the number of rows in the current orbit
+	 */
+	long getOrbitLength();
+
+	/**
+	 * @return the approximate number of bytes held by the current orbit
+	 */
+	long getOrbitFootprintBytes();
+
+	/**
+	 * @return the number of graph updates since the last reset
+	 */
+	long getGraphUpdateCount();
+
+	/**
+	 * @return the mean time of a graph update in milliseconds
+	 */
+	double getGraphUpdateMeanMillis();
+
+	/**
+	 * @return the longest graph update in milliseconds
+	 */
+	double getGraphUpdateMaxMillis();
+
+	/**
+	 * @return the number of table refreshes since the last reset
+	 */
+	long getTableRefreshCount();
+
+	/**
+	 * @return the mean time of a table refresh in milliseconds
+	 */
+	double getTableRefreshMeanMillis();
+
+	/**
+	 * @return the longest table refresh in milliseconds
+	 */
+	double getTableRefreshMaxMillis();
+
+	/**
+	 * @return the number of sampled formula evaluations
+	 */
+	long getEvaluationSampleCount();
+
+	/**
+	 * @return the mean of the sampled formula evaluations in nanoseconds
+	 */
+	double getEvaluationMeanNanos();
+
+	/**
+	 * @return the counts of the sampled formula evaluations, where bucket
+	 *         <code>i</code> counts latencies below
+	 *         {@link #getEvaluationLatencyBucketBoundsNanos()}<code>[i]</code>
+	 */
+	long[] getEvaluationLatencyHistogram();
+
+	/**
+	 * @return the exclusive upper bound in nanoseconds of each histogram bucket
+	 */
+	long[] getEvaluationLatencyBucketBoundsNanos();
+
+	/**
+	 * @return the number of zoom changes since the last reset
+	 */
+	long getZoomCount();
+
+	/**
+	 * @return the number of graph repaints since the last reset
+	 */
+	long getRepaintCount();
+
+	/**
+	 * @return the mean time of a graph repaint in milliseconds
+	 */
+	double getRepaintMeanMillis();
+
+	/**
+	 * @return the time from the start of the JVM to the first paint of the
+	 *         graph in milliseconds, -1 before it is painted
+	 */
+	long getFirstPaintMillis();
+
+	/**
+	 * clear all the counters and histograms
+	 */
+	void reset();
+}
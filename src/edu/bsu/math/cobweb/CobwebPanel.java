@@ -18,28 +18,33 @@
 package edu.bsu.math.cobweb;
 
 import java.awt.BasicStroke;
+import java.awt.BorderLayout;
 import java.awt.Color;
 import java.awt.Component;
-import java.awt.Container;
 import java.awt.Dimension;
 import java.awt.Font;
 import java.awt.Graphics;
 import java.awt.Graphics2D;
 import java.awt.GridBagConstraints;
 import java.awt.GridBagLayout;
+import java.awt.GridLayout;
 import java.awt.Insets;
 import java.awt.Point;
 import java.awt.Stroke;
 import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
 import java.awt.event.FocusEvent;
 import java.awt.event.FocusListener;
-import java.awt.event.KeyAdapter;
 import java.awt.event.KeyEvent;
-import java.awt.event.KeyListener;
 import java.awt.event.MouseAdapter;
 import java.awt.event.MouseEvent;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import javax.swing.AbstractAction;
 import javax.swing.AbstractButton;
@@ -48,23 +53,23 @@ import javax.swing.ButtonGroup;
 import javax.swing.ImageIcon;
 import javax.swing.JButton;
 import javax.swing.JCheckBox;
+import javax.swing.JComboBox;
+import javax.swing.JDialog;
+import javax.swing.JFileChooser;
 import javax.swing.JLabel;
 import javax.swing.JOptionPane;
 import javax.swing.JPanel;
 import javax.swing.JProgressBar;
 import javax.swing.JRadioButton;
 import javax.swing.JScrollPane;
-import javax.swing.JTable;
 import javax.swing.JTextField;
+import javax.swing.KeyStroke;
 import javax.swing.SwingUtilities;
 import javax.swing.border.Border;
 import javax.swing.border.EmptyBorder;
+import javax.swing.filechooser.FileNameExtensionFilter;
 
-import EDU.emporia.mathbeans.MathGrapher;
-import EDU.emporia.mathbeans.MathGrid;
-import EDU.emporia.mathbeans.SymbolicFunction;
 import EDU.emporia.mathtools.Graphable_error;
-import EDU.emporia.mathtools.PolygonalCurve;
 
 /**
  * JPanel for drawing the cobweb plot.
@@ -116,25 +121,97 @@ final class CobwebPanel extends JPanel {
 
 	private int index = 0;
 
-	private SymbolicFunction line;
+	private CompiledFunction func;
 
-	private SymbolicFunction func;
+	private CompiledFunction kFunc;
 
-	private SymbolicFunction kFunc;
+	private final Orbit xOrbit = new Orbit();
 
-	private PolygonalCurve web;
+	private final OrbitView xView = new OrbitView(xOrbit);
 
-	private PolygonalCurve kWeb;
+	private final OrbitView kView = new OrbitView(xOrbit);
 
-	private MathGrapher graph;
+	private final OrbitIndex xIndex = new OrbitIndex(xOrbit);
+
+	private OrbitWeb web;
+
+	private OrbitWeb kWeb;
+
+	private CobwebGraph graph;
 
 	private CobwebTableModel tableModel;
 
-	private final List<Integer> nList = new ArrayList<Integer>();
+	private CobwebTable table;
+
+	private JScrollPane tableScrollPane;
+
+	/**
+	 * the choices of significant digits for the table
+	 */
+	private static final String[] PRECISION_NAMES = { "All digits",
+			"15 digits", "12 digits", "9 digits", "6 digits", "3 digits" };
+
+	private static final int[] PRECISIONS = { CobwebCellRenderer.ALL_DIGITS,
+			15, 12, 9, 6, 3 };
+
+	/**
+	 * the searches of the find dialog, in the order of {@link #FIND_KINDS}
+	 */
+	private static final int FIND_WITHIN = 0, FIND_IN = 1, FIND_ALL_IN = 2,
+			FIND_MIN = 3;
+
+	private static final String[] FIND_KINDS = { "First x within \u03b5 of a",
+			"Next x in [lo, hi]", "Every x in [lo, hi]",
+			"Smallest x in rows a..b", "Largest x in rows a..b" };
+
+	private static final String[] FIND_FIRST_LABELS = { "a", "lo", "lo",
+			"First row a", "First row a" };
+
+	private static final String[] FIND_SECOND_LABELS = { "\u03b5", "hi", "hi",
+			"Last row b", "Last row b" };
+
+	/**
+	 * the most rows selected by a search for every x in an interval
+	 */
+	private static final int FIND_ALL_LIMIT = 10000;
+
+	private int findKind = FIND_WITHIN;
+
+	private String findFirst = "", findSecond = "";
+
+	/**
+	 * the most values of the orbit shown in a recurrence plot at first
+	 */
+	private static final int DEFAULT_RECURRENCE_SIZE = 10000;
+
+	/**
+	 * the size in pixels of a recurrence plot
+	 */
+	private static final int RECURRENCE_PIXELS = 500;
+
+	private JButton recurrenceButton;
+
+	private JButton spectrumButton;
+
+	/**
+	 * how far below its peak a spectrum on a log scale is shown
+	 */
+	private static final double SPECTRUM_RANGE_DB = 200;
+
+	private JDialog timeSeriesDialog;
+
+	private TimeSeriesView timeSeries;
 
-	private final List<Double> xnList = new ArrayList<Double>();
+	private int zTrack;
 
-	private final List<Double> znList = new ArrayList<Double>();
+	private JButton tableInfoButton, helpButton, customInfoButton;
+
+	/**
+	 * what is left to do once the graph has been painted, null after that
+	 */
+	private List<Runnable> afterFirstPaint = new ArrayList<Runnable>();
+
+	private boolean deferredComponentsBuilt = false;
 
 	private JTextField fTextField;
 
@@ -142,6 +219,12 @@ final class CobwebPanel extends JPanel {
 
 	private JTextField kTextField;
 
+	/**
+	 * the colors of the tracks, one for each slot of the graph
+	 */
+	private static final Color[] TRACK_COLORS = { Color.MAGENTA,
+			Color.ORANGE, new Color(0, 128, 128), Color.GRAY };
+
 	private static final int DEFAULT_K_VALUE = 5;
 
 	private static final String DEFAULT_FUNCTION = "2*x*(1-x)";
@@ -150,13 +233,21 @@ final class CobwebPanel extends JPanel {
 
 	private static final String DEFAULT_CUSTOM_ITERATION = "1000";
 
+	private static final String DEFAULT_REPLAY = "10";
+
+	private static final String REPLAY_SECONDS = "seconds in total";
+
+	private static final String REPLAY_RATE = "steps per second";
+
 	private JCheckBox kCheckBox = new JCheckBox();
 
 	private Double seed = DEFAULT_SEED;
 
 	private int kValue = DEFAULT_K_VALUE;
 
-	private Double currentValue, kCurrentValue;
+	private int[] kValues = { DEFAULT_K_VALUE };
+
+	private Double currentValue;
 
 	private JLabel kLabel;
 
@@ -166,10 +257,51 @@ final class CobwebPanel extends JPanel {
 
 	private JButton resetButton;
 
+	private JButton saveButton;
+
+	private JButton loadButton;
+
+	private JButton tracksButton;
+
+	/**
+	 * the maps and seeds iterated alongside f. the array is replaced, never
+	 * changed, and only while no iteration is running.
+	 */
+	private volatile OrbitTrack[] tracks = new OrbitTrack[0];
+
+	private JFileChooser sessionChooser;
+
+	private JFileChooser tableChooser;
+
+	private JButton tableButton;
+
 	private AbstractAction kCheckBoxAction;
 
 	private JButton iterateButton;
 
+	private JButton replayButton;
+
+	private JButton backButton, rewindButton, forwardButton;
+
+	private JLabel stopLabel;
+
+	/**
+	 * when an iteration stops early; read once when an iteration starts
+	 */
+	private volatile TerminationPolicy terminationPolicy = TerminationPolicy.DEFAULT;
+
+	/**
+	 * the cancellation token of the running iteration, null when none is
+	 * running. it is only checked between batches.
+	 */
+	private volatile AtomicBoolean iterationCancel;
+
+	private JTextField replayField;
+
+	private JComboBox<String> replayUnits;
+
+	private OrbitPlayback playback;
+
 	private JCheckBox gridCheckBox;
 
 	private JCheckBox funcCheckBox;
@@ -184,10 +316,21 @@ final class CobwebPanel extends JPanel {
 
 	private JPanel fullZoomPanel;
 
+	private JTextField xMinField, xMaxField, yMinField, yMaxField;
+
 	private static final Border MARGIN = new EmptyBorder(new Insets(5, 5, 5, 5));
 
 	private static final Dimension FIELD_SIZE = new Dimension(125, 20);
 
+	/**
+	 * number of iterations between updates of the graph and the table
+	 */
+	private static final int ITERATION_BATCH_SIZE = 20;
+
+	private final CobwebMetrics metrics = CobwebMetrics.getInstance();
+
+	private final FormulaCache formulas = FormulaCache.getInstance();
+
 	/**
 	 * method to initialize the applet.
 	 * 
@@ -205,26 +348,16 @@ final class CobwebPanel extends JPanel {
 			}
 		});
 
-		// initialize the line and function
-		line = new SymbolicFunction();
-		func = new SymbolicFunction();
-		kFunc = new SymbolicFunction();
-		web = new PolygonalCurve();
-		kWeb = new PolygonalCurve();
+		// initialize the function
+		web = new OrbitWeb(xView);
+		kWeb = new OrbitWeb(kView);
 		try {
-			line.setFormula("x");
-			String f = DEFAULT_FUNCTION;
-			func.setFormula(f);
-
-			for (int i = 0; i < DEFAULT_K_VALUE - 1; i++) {
-				f = f.replace("x", "(" + DEFAULT_FUNCTION + ")");
-			}
-			kFunc.setFormula(f);
+			setFormula(DEFAULT_FUNCTION);
 		} catch (Graphable_error e) {
 		}
 
 		// initialize the graph
-		graph = new MathGrapher() {
+		graph = new CobwebGraph() {
 
 			private static final long serialVersionUID = -1686608942648653451L;
 
@@ -232,6 +365,12 @@ final class CobwebPanel extends JPanel {
 			 * extended paint method to draw the zoom rectangle
 			 */
 			public void paintComponent(Graphics g) {
+				CobwebEvents.GraphPaint event = null;
+				if (CobwebEvents.isRecording()) {
+					event = new CobwebEvents.GraphPaint();
+					event.begin();
+				}
+				long start = System.nanoTime();
 				if (this.getTitle().equals(""))
 					setTitle("(0.000000, 0.000000)");
 				super.paintComponent(g);
@@ -241,19 +380,21 @@ final class CobwebPanel extends JPanel {
 				g2.setColor(Color.BLACK);
 				g2.draw(zoomManager.getRectangle());
 				g2.setStroke(oldStroke);
+				metrics.graphRepainted(System.nanoTime() - start);
+				if (afterFirstPaint != null)
+					firstPainted();
+				if (event != null) {
+					event.width = getWidth();
+					event.height = getHeight();
+					event.orbitLength = xOrbit.size();
+					event.commit();
+				}
 			}
 		};
-		graph.addGraph(line, Color.BLACK);
-		graph.addGraph(func, Color.BLUE);
-		graph.addGraph(web, Color.RED);
-		graph.setXMin(0.0);
-		graph.setXMax(1.0);
-		graph.setYMin(0.0);
-		graph.setYMax(1.0);
-		graph.setZoomMode(MathGrapher.ZOOMOFF);
-		graph.setTraceEnabled(false);
+		graph.setFunction(func);
+		graph.setWeb(web);
 		graph.setFont(new Font("Serif", Font.PLAIN, 10));
-		graph.setBackground(Color.LIGHT_GRAY);
+		graph.setForeground(Color.BLACK);
 		graph.setPreferredSize(new Dimension(300, 300));
 
 		graph.addMouseWheelListener(zoomManager);
@@ -265,15 +406,12 @@ final class CobwebPanel extends JPanel {
 		GridBagConstraints c = new GridBagConstraints();
 		c.fill = GridBagConstraints.HORIZONTAL;
 
-		// initialize the table
-		tableModel = new CobwebTableModel(nList, xnList, znList);
-		JTable table = new JTable(tableModel);
-
-		JScrollPane scrollPane = new JScrollPane(table);
-
-		scrollPane.setPreferredSize(new Dimension(600, 300));
+		// initialize the table, which is filled in after the first paint
+		tableModel = new CobwebTableModel(xOrbit);
+		tableScrollPane = new JScrollPane();
+		tableScrollPane.setPreferredSize(new Dimension(600, 300));
 
-		JButton tableInfoButton = new JButton(new AbstractAction(
+		tableInfoButton = new JButton(new AbstractAction(
 				"Table Information") {
 
 			private static final long serialVersionUID = 3962757827516328355L;
@@ -285,19 +423,85 @@ final class CobwebPanel extends JPanel {
 								.getResource("Information24.gif")));
 			}
 		});
-		tableInfoButton.setIcon(new ImageIcon(cl
-				.getResource("Information16.gif")));
+		final JComboBox<String> precisionBox = new JComboBox<String>(
+				PRECISION_NAMES);
+		precisionBox.setToolTipText("Significant digits shown in the table");
+		precisionBox.addActionListener(new ActionListener() {
+
+			public void actionPerformed(ActionEvent e) {
+				buildDeferredComponents();
+				table.setPrecision(PRECISIONS[precisionBox.getSelectedIndex()]);
+			}
+		});
+		JButton findButton = new JButton(new AbstractAction("Find...") {
+
+			private static final long serialVersionUID = -2706113983590546171L;
+
+			public void actionPerformed(ActionEvent e) {
+				findInTable();
+			}
+		});
+		findButton.setToolTipText("Jump to a row of the table by its value");
 		JPanel tablePanel = new JPanel(new GridBagLayout());
 		c.gridx = 0;
 		c.gridy = 0;
-		c.gridwidth = 1;
+		c.gridwidth = 3;
 		c.gridheight = 1;
-		tablePanel.add(scrollPane, c);
+		tablePanel.add(tableScrollPane, c);
 		c.gridx = 0;
 		c.gridy = 1;
 		c.gridwidth = 1;
 		c.gridheight = 1;
 		tablePanel.add(tableInfoButton, c);
+		c.gridx = 1;
+		c.gridy = 1;
+		c.gridwidth = 1;
+		c.gridheight = 1;
+		tablePanel.add(precisionBox, c);
+		c.gridx = 2;
+		c.gridy = 1;
+		c.gridwidth = 1;
+		c.gridheight = 1;
+		tablePanel.add(findButton, c);
+		recurrenceButton = new JButton(new AbstractAction(
+				"Recurrence Plot...") {
+
+			private static final long serialVersionUID = 7471925309862307160L;
+
+			public void actionPerformed(ActionEvent e) {
+				showRecurrencePlot();
+			}
+		});
+		c.gridx = 0;
+		c.gridy = 2;
+		c.gridwidth = 1;
+		c.gridheight = 1;
+		tablePanel.add(recurrenceButton, c);
+		c.gridx = 1;
+		c.gridy = 2;
+		c.gridwidth = 1;
+		c.gridheight = 1;
+		tablePanel.add(new JButton(new AbstractAction("Time Series...") {
+
+			private static final long serialVersionUID = -4529608370530153290L;
+
+			public void actionPerformed(ActionEvent e) {
+				showTimeSeries();
+			}
+		}), c);
+		spectrumButton = new JButton(new AbstractAction("Spectrum...") {
+
+			private static final long serialVersionUID = 2874044361505817734L;
+
+			public void actionPerformed(ActionEvent e) {
+				showSpectrum();
+			}
+		});
+		c.gridx = 2;
+		c.gridy = 2;
+		c.gridwidth = 1;
+		c.gridheight = 1;
+		tablePanel.add(spectrumButton, c);
 		tablePanel
 				.setBorder(BorderFactory.createCompoundBorder(MARGIN, MARGIN));
 
@@ -319,7 +523,7 @@ final class CobwebPanel extends JPanel {
 		c.gridy = 0;
 		graphPanel.add(graph, c);
 
-		JButton helpButton = new JButton(new AbstractAction("Zooming Help") {
+		helpButton = new JButton(new AbstractAction("Zooming Help") {
 
 			private static final long serialVersionUID = -959727892421262755L;
 
@@ -331,7 +535,6 @@ final class CobwebPanel extends JPanel {
 
 			}
 		});
-		helpButton.setIcon(new ImageIcon(cl.getResource("Help16.gif")));
 		c.gridy = 1;
 		c.fill = GridBagConstraints.HORIZONTAL;
 		graphPanel.add(helpButton, c);
@@ -369,6 +572,7 @@ final class CobwebPanel extends JPanel {
 		fTextField = new JTextField(DEFAULT_FUNCTION);
 		fTextField.setDisabledTextColor(Color.lightGray);
 		fTextField.setPreferredSize(FIELD_SIZE);
+		updateFormulaToolTip();
 		fTextField.addFocusListener(new FocusListener() {
 
 			public void focusGained(FocusEvent e) {
@@ -377,16 +581,8 @@ final class CobwebPanel extends JPanel {
 			public void focusLost(FocusEvent e) {
 				if (!e.isTemporary())
 					try {
-						String f = fTextField.getText();
-						func.setFormula(f);
-
-						String kF = f;
-						for (int i = 0; i < kValue - 1; i++) {
-							kF = kF.replace("x", "(" + f + ")");
-						}
-						kFunc.setFormula(kF);
-
-						graph.updateGraph();
+						setFormula(fTextField.getText());
+						refreshGraph();
 					} catch (Graphable_error e1) {
 						JOptionPane.showMessageDialog(null, fTextField
 								.getText()
@@ -469,9 +665,12 @@ final class CobwebPanel extends JPanel {
 					kWebCheckBox.setEnabled(false);
 				}
 
+				try {
+					setKFormula(fTextField.getText());
+				} catch (Graphable_error e1) {
+				}
 				updateGraphOptions();
-				tableModel.setZColumnVisible(kCheckBox.isSelected());
-				tableModel.fireTableStructureChanged();
+				updateStrides();
 			}
 		};
 		kCheckBox = new JCheckBox(kCheckBoxAction);
@@ -492,7 +691,8 @@ final class CobwebPanel extends JPanel {
 		c.gridwidth = 1;
 		c.gridheight = 1;
 		kValue = DEFAULT_K_VALUE;
-		kTextField = new JTextField("" + kValue);
+		kValues = new int[] { kValue };
+		kTextField = new JTextField(formatKValues(kValues));
 		kTextField.setEditable(false);
 		kTextField.setDisabledTextColor(Color.lightGray);
 		kTextField.setPreferredSize(FIELD_SIZE);
@@ -504,18 +704,15 @@ final class CobwebPanel extends JPanel {
 			public void focusLost(FocusEvent e) {
 				if (!e.isTemporary())
 					try {
-						kValue = Integer.parseInt(kTextField.getText());
-						String f = fTextField.getText();
-						String kF = f;
-						for (int i = 0; i < kValue - 1; i++) {
-							kF = kF.replace("x", "(" + f + ")");
-						}
-						kFunc.setFormula(kF);
-
-						graph.updateGraph();
+						kValues = parseKValues(kTextField.getText());
+						kValue = kValues[0];
+						setKFormula(fTextField.getText());
+						updateStrides();
+						refreshGraph();
 					} catch (NumberFormatException e1) {
 						JOptionPane.showMessageDialog(null,
-								"k value must be an integer", "Syntax Error",
+								"k must be positive integers separated by "
+										+ "commas", "Syntax Error",
 								JOptionPane.ERROR_MESSAGE);
 						SwingUtilities.invokeLater(new Runnable() {
 
@@ -539,28 +736,87 @@ final class CobwebPanel extends JPanel {
 			private static final long serialVersionUID = -6144368548853840049L;
 
 			public void actionPerformed(ActionEvent arg0) {
-				currentValue = kCurrentValue = null;
+				currentValue = null;
 				index = 0;
-				web.removeAllPoints();
-				kWeb.removeAllPoints();
-				nList.clear();
-				xnList.clear();
-				znList.clear();
+				xOrbit.clear();
+				followTracks();
 				tableModel.fireTableDataChanged();
 
-				graph.updateGraph();
+				refreshGraph();
 
 				fTextField.setEditable(true);
+				tableButton.setEnabled(true);
 				seedTextField.setEditable(true);
 				kCheckBox.setEnabled(true);
 				kCheckBoxAction.actionPerformed(null);
 
 				resetButton.setEnabled(false);
+				replayButton.setEnabled(false);
+				setStepButtonsEnabled(false);
+				stopLabel.setText(" ");
 			}
 		});
 		resetButton.setEnabled(false);
 		functionPanel.add(resetButton, c);
 
+		// add save and load buttons to function panel
+		c.gridx = 0;
+		c.gridy = 5;
+		c.gridwidth = 1;
+		c.gridheight = 1;
+		saveButton = new JButton(new AbstractAction("Save...") {
+
+			private static final long serialVersionUID = 1848530264217723071L;
+
+			public void actionPerformed(ActionEvent arg0) {
+				saveSession();
+			}
+		});
+		functionPanel.add(saveButton, c);
+
+		c.gridx = 1;
+		c.gridy = 5;
+		c.gridwidth = 1;
+		c.gridheight = 1;
+		loadButton = new JButton(new AbstractAction("Load...") {
+
+			private static final long serialVersionUID = -4587311965218830646L;
+
+			public void actionPerformed(ActionEvent arg0) {
+				loadSession();
+			}
+		});
+		functionPanel.add(loadButton, c);
+
+		// add the table and tracks buttons to function panel
+		c.gridx = 0;
+		c.gridy = 6;
+		c.gridwidth = 1;
+		c.gridheight = 1;
+		tableButton = new JButton(new AbstractAction("Table...") {
+
+			private static final long serialVersionUID = -3170925842915310764L;
+
+			public void actionPerformed(ActionEvent arg0) {
+				loadTable();
+			}
+		});
+		functionPanel.add(tableButton, c);
+
+		c.gridx = 1;
+		c.gridy = 6;
+		c.gridwidth = 1;
+		c.gridheight = 1;
+		tracksButton = new JButton(new AbstractAction("Tracks...") {
+
+			private static final long serialVersionUID = 5520671836944215402L;
+
+			public void actionPerformed(ActionEvent arg0) {
+				editTracks();
+			}
+		});
+		functionPanel.add(tracksButton, c);
+
 		// add the function panel to main panel
 		c.gridx = 2;
 		c.gridy = 2;
@@ -691,7 +947,7 @@ final class CobwebPanel extends JPanel {
 		c.gridheight = 1;
 		c.fill = GridBagConstraints.NONE;
 		c.insets = new Insets(0, 5, 0, 5);
-		JButton customInfoButton = new JButton(new AbstractAction("") {
+		customInfoButton = new JButton(new AbstractAction("") {
 
 			private static final long serialVersionUID = -959727892421262755L;
 
@@ -705,8 +961,6 @@ final class CobwebPanel extends JPanel {
 								.getResource("Information24.gif")));
 			}
 		});
-		customInfoButton.setIcon(new ImageIcon(cl
-				.getResource("Information16.gif")));
 		customInfoButton.setPreferredSize(new Dimension(20, 20));
 		iterationPanel.add(customInfoButton, c);
 
@@ -727,40 +981,17 @@ final class CobwebPanel extends JPanel {
 
 			private static final long serialVersionUID = 7729263454936606886L;
 
-			private volatile boolean cancelIteration = false;
-
-			private final KeyListener listener = new KeyAdapter() {
-
-				public void keyPressed(KeyEvent e) {
-					if (e.getKeyCode() == KeyEvent.VK_ESCAPE)
-						cancelIteration = true;
-				}
-			};
-
-			private void addListenerTo(Component c) {
-				c.addKeyListener(listener);
-				if (c instanceof Container)
-					for (Component child : ((Container) c).getComponents())
-						addListenerTo(child);
-			}
-
-			private void removeListenerFrom(Component c) {
-				c.removeKeyListener(listener);
-				if (c instanceof Container)
-					for (Component child : ((Container) c).getComponents())
-						removeListenerFrom(child);
-			}
-
 			public void actionPerformed(ActionEvent arg0) {
-				cancelIteration = false;
+				final AtomicBoolean cancel = new AtomicBoolean();
+				iterationCancel = cancel;
 
 				if (currentValue == null) {
-					currentValue = kCurrentValue = seed;
-					nList.add(0);
-					xnList.add(seed);
-					znList.add(seed);
+					currentValue = seed;
+					xOrbit.add(seed);
+					followTracks();
 
 					fTextField.setEditable(false);
+					tableButton.setEnabled(false);
 					seedTextField.setEditable(false);
 					kCheckBox.setEnabled(false);
 					kTextField.setEditable(false);
@@ -769,6 +1000,11 @@ final class CobwebPanel extends JPanel {
 
 				iterateButton.setVisible(false);
 				resetButton.setEnabled(false);
+				replayButton.setEnabled(false);
+				setStepButtonsEnabled(false);
+				saveButton.setEnabled(false);
+				loadButton.setEnabled(false);
+				tracksButton.setEnabled(false);
 				final JProgressBar iterationProgress = new JProgressBar(0,
 						iterationSize);
 				iterationProgress.setStringPainted(true);
@@ -780,42 +1016,195 @@ final class CobwebPanel extends JPanel {
 				c.gridheight = 1;
 				iterationPanel.add(iterationProgress, c);
 
-				addListenerTo(CobwebPanel.this);
-
 				new Thread() {
 
 					public void run() {
-						long startTime = System.currentTimeMillis();
-						for (int i = 0; i < iterationSize; ++i) {
-							iterate();
-							if (i % 20 == 0) {
-								graph.updateGraph();
-								tableModel.fireTableDataChanged();
+						metrics.iterationStarted();
+						TerminationPolicy policy = terminationPolicy;
+						TerminationPolicy.Reason reason = null;
+						long runStart = System.nanoTime();
+						long batchStart = runStart;
+						int done = 0, reported = 0;
+						CobwebEvents.IterationBatch batch = newBatchEvent();
+						while (done < iterationSize) {
+							int end = Math.min(done + ITERATION_BATCH_SIZE,
+									iterationSize);
+							while (done < end && reason == null) {
+								reason = iterate(policy);
+								++done;
+							}
+
+							long now = System.nanoTime();
+							metrics.iterationBatch(done - reported, now
+									- batchStart);
+							if (batch != null) {
+								batch.iterations = done - reported;
+								batch.orbitLength = xOrbit.size();
 							}
-							iterationProgress.setValue(i);
-							Thread.yield();
-							if (cancelIteration)
+							reported = done;
+							batchStart = now;
+							refreshGraph();
+							tableModel.fireTableDataChanged();
+							iterationProgress.setValue(done);
+
+							// the orbit is whole here, so this is where to stop
+							if (reason == null)
+								reason = policy.checkBudget(now - runStart,
+										xOrbit.footprint());
+							if (reason == null && cancel.get())
+								reason = TerminationPolicy.Reason.CANCELLED;
+							if (reason != null)
 								break;
+							if (batch != null)
+								batch.commit();
+							batch = newBatchEvent();
+						}
+						if (reason == null)
+							reason = TerminationPolicy.Reason.COMPLETED;
+						if (batch != null) {
+							batch.cancelled = reason == TerminationPolicy.Reason.CANCELLED;
+							batch.stopReason = reason.name();
+							batch.commit();
 						}
-						graph.updateGraph();
-						tableModel.fireTableDataChanged();
+						metrics.iterationFinished();
+						showStopReason(reason);
+						iterationCancel = null;
 
 						iterationPanel.remove(iterationProgress);
 						iterateButton.setVisible(true);
 						resetButton.setEnabled(true);
-
-						long endTime = System.currentTimeMillis();
-						long diffTime = endTime - startTime;
-						System.out.println("Time for " + iterationSize
-								+ " iterations: " + diffTime + " ms.");
-
-						removeListenerFrom(CobwebPanel.this);
+						replayButton.setEnabled(true);
+						setStepButtonsEnabled(true);
+						saveButton.setEnabled(true);
+						loadButton.setEnabled(true);
+						tracksButton.setEnabled(true);
 					}
 				}.start();
 			}
 		});
 		iterationPanel.add(iterateButton, c);
 
+		// escape anywhere in the window cancels a running iteration
+		getInputMap(WHEN_IN_FOCUSED_WINDOW).put(
+				KeyStroke.getKeyStroke(KeyEvent.VK_ESCAPE, 0), "cancelIteration");
+		getActionMap().put("cancelIteration", new AbstractAction() {
+
+			private static final long serialVersionUID = -5283541208876520196L;
+
+			public void actionPerformed(ActionEvent arg0) {
+				AtomicBoolean cancel = iterationCancel;
+				if (cancel != null)
+					cancel.set(true);
+			}
+		});
+
+		// add the replay rate to the iteration panel
+		c.gridx = 0;
+		c.gridy = 5;
+		c.gridwidth = 1;
+		c.gridheight = 1;
+		replayField = new JTextField(DEFAULT_REPLAY);
+		replayField.setPreferredSize(FIELD_SIZE);
+		iterationPanel.add(replayField, c);
+
+		c.gridx = 1;
+		c.gridy = 5;
+		c.gridwidth = 2;
+		c.gridheight = 1;
+		replayUnits = new JComboBox<String>(new String[] { REPLAY_SECONDS,
+				REPLAY_RATE });
+		iterationPanel.add(replayUnits, c);
+
+		// add the replay button to the iteration panel
+		c.gridx = 0;
+		c.gridy = 6;
+		c.gridwidth = 3;
+		c.gridheight = 1;
+		replayButton = new JButton(new AbstractAction("Replay") {
+
+			private static final long serialVersionUID = -2212906471983245537L;
+
+			/**
+			 * replay the orbit that has already been computed, or stop the
+			 * replay if one is running
+			 */
+			public void actionPerformed(ActionEvent arg0) {
+				if (playback != null && playback.isRunning())
+					playback.stop();
+				else
+					startReplay();
+			}
+		});
+		replayButton.setEnabled(false);
+		iterationPanel.add(replayButton, c);
+
+		// add the buttons that go back and forth through the orbit
+		c.gridx = 0;
+		c.gridy = 7;
+		c.gridwidth = 1;
+		c.gridheight = 1;
+		backButton = new JButton(new AbstractAction("\u25c0") {
+
+			private static final long serialVersionUID = -1429301552046813757L;
+
+			public void actionPerformed(ActionEvent arg0) {
+				rewind(index - 1);
+			}
+		});
+		backButton.setToolTipText("Go back one iteration");
+		iterationPanel.add(backButton, c);
+
+		c.gridx = 1;
+		c.gridy = 7;
+		c.gridwidth = 1;
+		c.gridheight = 1;
+		rewindButton = new JButton(new AbstractAction("Rewind...") {
+
+			private static final long serialVersionUID = 2281452687390342411L;
+
+			public void actionPerformed(ActionEvent arg0) {
+				rewindTo();
+			}
+		});
+		iterationPanel.add(rewindButton, c);
+
+		c.gridx = 2;
+		c.gridy = 7;
+		c.gridwidth = 1;
+		c.gridheight = 1;
+		forwardButton = new JButton(new AbstractAction("\u25b6") {
+
+			private static final long serialVersionUID = 6841580931785370457L;
+
+			public void actionPerformed(ActionEvent arg0) {
+				stepForward();
+			}
+		});
+		forwardButton.setToolTipText("Go forward one iteration");
+		iterationPanel.add(forwardButton, c);
+		setStepButtonsEnabled(false);
+
+		// add the stop rules button and the reason the last iteration stopped
+		c.gridx = 0;
+		c.gridy = 8;
+		c.gridwidth = 3;
+		c.gridheight = 1;
+		iterationPanel.add(new JButton(new AbstractAction("Stop Rules...") {
+
+			private static final long serialVersionUID = 4410982795374219315L;
+
+			public void actionPerformed(ActionEvent arg0) {
+				editTerminationPolicy();
+			}
+		}), c);
+
+		c.gridx = 0;
+		c.gridy = 9;
+		c.gridwidth = 3;
+		c.gridheight = 1;
+		stopLabel = new JLabel(" ");
+		iterationPanel.add(stopLabel, c);
+
 		// add the function panel to main panel
 		c.gridx = 3;
 		c.gridy = 2;
@@ -843,12 +1232,8 @@ final class CobwebPanel extends JPanel {
 			 * when checkbox is clicked, show / hide grid lines
 			 */
 			public void actionPerformed(ActionEvent e) {
-				if (gridCheckBox.isSelected()) {
-					graph.setGridLines(MathGrapher.GRIDNORMAL);
-				} else {
-					graph.setGridLines(MathGrapher.GRIDOFF);
-				}
-				graph.updateGraph();
+				graph.setGridVisible(gridCheckBox.isSelected());
+				refreshGraph();
 			}
 		});
 		gridCheckBox.setSelected(true);
@@ -969,17 +1354,70 @@ final class CobwebPanel extends JPanel {
 								+ " fully zoomed out"), MARGIN)));
 
 		c.gridx = 0;
-		c.gridy = 0;
-		c.gridwidth = 1;
-		c.gridheight = 1;
-		fullZoomPanel.add(new JLabel("x min: "), c);
-		c.gridx = 0;
-		c.gridy = 1;
-		c.gridwidth = 1;
+		c.gridy = 3;
+		c.gridwidth = 2;
 		c.gridheight = 1;
-		fullZoomPanel.add(new JLabel("x max: "), c);
-		c.gridx = 2;
-		c.gridy = 0;
+		this.add(fullZoomPanel, c);
+
+		// the table, the full zoom fields and the icons wait until the graph
+		// has been painted, and so does the MBean server
+		invokeAfterFirstPaint(new Runnable() {
+
+			public void run() {
+				buildDeferredComponents();
+				CobwebMetrics.register();
+			}
+		});
+	}
+
+	/**
+	 * run a task on the event dispatch thread once the graph has been painted
+	 * for the first time, or soon if it already has. tasks run in the order
+	 * they were given. must be called on the event dispatch thread.
+	 * 
+	 * @param task
+	 *            the task to run
+	 */
+	void invokeAfterFirstPaint(Runnable task) {
+		if (afterFirstPaint == null)
+			SwingUtilities.invokeLater(task);
+		else
+			afterFirstPaint.add(task);
+	}
+
+	/**
+	 * method to build the parts of the panel that are not needed for the
+	 * first paint: the table, the fields of the full zoom panel and the icons
+	 * of the help buttons. they are built after the first paint, or as soon as
+	 * something needs them, whichever comes first.
+	 */
+	private void buildDeferredComponents() {
+		if (deferredComponentsBuilt)
+			return;
+		deferredComponentsBuilt = true;
+
+		table = new CobwebTable(tableModel);
+		tableScrollPane.setViewportView(table);
+		ImageIcon info = new ImageIcon(cl.getResource("Information16.gif"));
+		tableInfoButton.setIcon(info);
+		customInfoButton.setIcon(info);
+		helpButton.setIcon(new ImageIcon(cl.getResource("Help16.gif")));
+
+		GridBagConstraints c = new GridBagConstraints();
+		c.fill = GridBagConstraints.BOTH;
+		c.insets = new Insets(0, 5, 0, 5);
+		c.gridx = 0;
+		c.gridy = 0;
+		c.gridwidth = 1;
+		c.gridheight = 1;
+		fullZoomPanel.add(new JLabel("x min: "), c);
+		c.gridx = 0;
+		c.gridy = 1;
+		c.gridwidth = 1;
+		c.gridheight = 1;
+		fullZoomPanel.add(new JLabel("x max: "), c);
+		c.gridx = 2;
+		c.gridy = 0;
 		c.gridwidth = 1;
 		c.gridheight = 1;
 		fullZoomPanel.add(new JLabel("y min: "), c);
@@ -989,7 +1427,7 @@ final class CobwebPanel extends JPanel {
 		c.gridheight = 1;
 		fullZoomPanel.add(new JLabel("y max: "), c);
 
-		final JTextField xMinField = new JTextField("" + DEFAULT_MIN_X);
+		xMinField = new JTextField("" + fullZoom.xMin);
 		xMinField.setDisabledTextColor(Color.lightGray);
 		xMinField.setPreferredSize(FIELD_SIZE);
 		xMinField.addFocusListener(new FocusListener() {
@@ -1025,7 +1463,7 @@ final class CobwebPanel extends JPanel {
 		c.gridheight = 1;
 		fullZoomPanel.add(xMinField, c);
 
-		final JTextField xMaxField = new JTextField("" + DEFAULT_MAX_X);
+		xMaxField = new JTextField("" + fullZoom.xMax);
 		xMaxField.setDisabledTextColor(Color.lightGray);
 		xMaxField.setPreferredSize(FIELD_SIZE);
 		xMaxField.addFocusListener(new FocusListener() {
@@ -1061,7 +1499,7 @@ final class CobwebPanel extends JPanel {
 		c.gridheight = 1;
 		fullZoomPanel.add(xMaxField, c);
 
-		final JTextField yMinField = new JTextField("" + DEFAULT_MIN_Y);
+		yMinField = new JTextField("" + fullZoom.yMin);
 		yMinField.setDisabledTextColor(Color.lightGray);
 		yMinField.setPreferredSize(FIELD_SIZE);
 		yMinField.addFocusListener(new FocusListener() {
@@ -1096,7 +1534,7 @@ final class CobwebPanel extends JPanel {
 		c.gridwidth = c.gridheight = 1;
 		fullZoomPanel.add(yMinField, c);
 
-		final JTextField yMaxField = new JTextField("" + DEFAULT_MAX_Y);
+		yMaxField = new JTextField("" + fullZoom.yMax);
 		yMaxField.setDisabledTextColor(Color.lightGray);
 		yMaxField.setPreferredSize(FIELD_SIZE);
 		yMaxField.addFocusListener(new FocusListener() {
@@ -1131,12 +1569,99 @@ final class CobwebPanel extends JPanel {
 		c.gridy = 1;
 		c.gridwidth = c.gridheight = 1;
 		fullZoomPanel.add(yMaxField, c);
+		setFullZoomOptionsEnabled(zoomManager.getZoomStack().size() == 1);
+		fullZoomPanel.revalidate();
+	}
 
-		c.gridx = 0;
-		c.gridy = 3;
-		c.gridwidth = 2;
-		c.gridheight = 1;
-		this.add(fullZoomPanel, c);
+	/**
+	 * method to use a new formula for f and rebuild f<sup>k</sup> from it
+	 * 
+	 * @param f
+	 *            the formula for f
+	 * @throws Graphable_error
+	 *             if the formula is not valid
+	 */
+	private void setFormula(String f) throws Graphable_error {
+		loadFunctions(f, true);
+	}
+
+	/**
+	 * method to rebuild f<sup>k</sup> from the formula for f using the current
+	 * k value
+	 * 
+	 * @param f
+	 *            the formula for f
+	 * @throws Graphable_error
+	 *             if the formula is not valid
+	 */
+	private void setKFormula(String f) throws Graphable_error {
+		loadFunctions(f, false);
+	}
+
+	/**
+	 * look f and f<sup>k</sup> up in the {@link FormulaCache}, which only
+	 * parses formulas it has not seen, and put them on the graph in place of
+	 * the old ones. nothing changes if the formula is not valid.
+	 * 
+	 * @param f
+	 *            the formula for f
+	 * @param withF
+	 *            false if only f<sup>k</sup> needs to change
+	 * @throws Graphable_error
+	 *             if the formula is not valid
+	 */
+	private void loadFunctions(String f, boolean withF) throws Graphable_error {
+		CobwebEvents.FormulaCompile event = null;
+		if (CobwebEvents.isRecording()) {
+			event = new CobwebEvents.FormulaCompile();
+			event.begin();
+		}
+		long misses = formulas.getMisses();
+		CompiledFunction newFunc = withF ? formulas.function(f) : func;
+		// f^k is only built while it is enabled; it is by far the longest
+		CompiledFunction newKFunc = kCheckBox.isSelected() ? formulas.iterate(
+				f, kValue) : null;
+		if (newFunc != func || newKFunc != kFunc) {
+			func = newFunc;
+			kFunc = newKFunc;
+			if (graph != null)
+				updateGraphOptions();
+			if (fTextField != null)
+				updateFormulaToolTip();
+			updateTimeSeries();
+		}
+		if (event != null) {
+			event.formula = f;
+			event.k = kValue;
+			event.kFormulaLength = kFunc == null ? 0 : kFunc.getFormula()
+					.length();
+			event.kOperations = kFunc == null ? 0 : kFunc.getOperationCount();
+			event.cached = formulas.getMisses() == misses;
+			event.commit();
+		}
+	}
+
+	/**
+	 * show the optimized formulas of f and f<sup>k</sup> as the tool tip of
+	 * the formula field
+	 */
+	private void updateFormulaToolTip() {
+		String text = "<html>f(x) = " + optimized(func);
+		if (kFunc != null)
+			text += "<br>f^" + kValue + "(x) = " + optimized(kFunc);
+		fTextField.setToolTipText(text + "</html>");
+	}
+
+	/**
+	 * @param f
+	 *            a {@link CompiledFunction}
+	 * @return the optimized formula of f as HTML
+	 */
+	private static String optimized(CompiledFunction f) {
+		if (!f.isOptimized())
+			return "<i>not optimized</i>";
+		return f.getOptimized().replace("&", "&amp;").replace("<", "&lt;")
+				.replace(">", "&gt;");
 	}
 
 	/**
@@ -1144,53 +1669,1197 @@ final class CobwebPanel extends JPanel {
 	 * (which lines and functions to display)
 	 */
 	private void updateGraphOptions() {
-		graph.removeGraph(line);
-		graph.removeGraph(func);
-		graph.removeGraph(web);
-		graph.removeGraph(kFunc);
-		graph.removeGraph(kWeb);
-
-		line.setTitle("");
-		func.setTitle("");
-		web.setTitle("");
-		kWeb.setTitle("");
-		kFunc.setTitle("");
-
-		if (lineCheckBox.isSelected())
-			graph.addGraph(line, Color.BLACK);
-		if (funcCheckBox.isSelected())
-			graph.addGraph(func, Color.BLUE);
-		if (webCheckBox.isSelected())
-			graph.addGraph(web, Color.RED);
-		if (kCheckBox.isSelected()) {
-			if (kFuncCheckBox.isSelected())
-				graph.addGraph(kFunc, Color.YELLOW);
-			if (kWebCheckBox.isSelected())
-				graph.addGraph(kWeb, Color.GREEN);
+		boolean k = kCheckBox.isSelected();
+		graph.setLineVisible(lineCheckBox.isSelected());
+		graph.setFunction(funcCheckBox.isSelected() ? func : null);
+		graph.setWeb(webCheckBox.isSelected() ? web : null);
+		graph.setKFunction(k && kFuncCheckBox.isSelected() ? kFunc : null);
+		graph.setKWeb(k && kWebCheckBox.isSelected() ? kWeb : null);
+		OrbitTrack[] shown = tracks;
+		for (int i = 0; i < CobwebGraph.MAX_TRACKS; i++) {
+			OrbitTrack t = i < shown.length ? shown[i] : null;
+			graph.setTrack(i, t != null && funcCheckBox.isSelected() ? t
+					.getFunction() : null, t != null
+					&& webCheckBox.isSelected() ? t.getWeb() : null,
+					TRACK_COLORS[i]);
+		}
+	}
+
+	/**
+	 * method to start replaying the computed orbit at the rate given by the
+	 * replay controls
+	 */
+	private void startReplay() {
+		double amount;
+		try {
+			amount = Double.parseDouble(replayField.getText());
+		} catch (NumberFormatException e) {
+			amount = 0;
+		}
+		if (amount <= 0) {
+			JOptionPane.showMessageDialog(CobwebPanel.this,
+					"Replay must be a positive number", "Invalid Replay",
+					JOptionPane.ERROR_MESSAGE);
+			return;
 		}
+		int steps = xView.size() - 1;
+		if (steps < 1)
+			return;
+		double rate = REPLAY_SECONDS.equals(replayUnits.getSelectedItem()) ? steps
+				/ amount
+				: amount;
+
+		playback = new OrbitPlayback(web, kCheckBox.isSelected() ? kWeb
+				: null, rate, new Runnable() {
+
+			public void run() {
+				refreshGraph();
+			}
+		}, new Runnable() {
+
+			public void run() {
+				replayButton.setText("Replay");
+				iterateButton.setEnabled(true);
+				setStepButtonsEnabled(true);
+				resetButton.setEnabled(true);
+				saveButton.setEnabled(true);
+				loadButton.setEnabled(true);
+				tracksButton.setEnabled(true);
+			}
+		});
+		replayButton.setText("Stop");
+		iterateButton.setEnabled(false);
+		setStepButtonsEnabled(false);
+		resetButton.setEnabled(false);
+		saveButton.setEnabled(false);
+		loadButton.setEnabled(false);
+		tracksButton.setEnabled(false);
+		playback.start();
 	}
 
 	/**
-	 * method to iterate the functions one time (and also k times if kth iterate
-	 * is enabled)
+	 * @return the {@link JFileChooser} for session files
 	 */
-	private void iterate() {
-		if (kCheckBox.isSelected()) {
-			kWeb.addPoint(kCurrentValue, kCurrentValue);
-			double kOldValue = kCurrentValue;
-			for (int i = 0; i < kValue; ++i) {
-				kCurrentValue = func.functionValue(kCurrentValue);
-			}
-			kWeb.addPoint(kOldValue, kCurrentValue);
-			znList.add(kCurrentValue);
+	private JFileChooser getSessionChooser() {
+		if (sessionChooser == null) {
+			sessionChooser = new JFileChooser();
+			sessionChooser.setFileFilter(new FileNameExtensionFilter(
+					"Cobweb Plot sessions (*." + SessionSnapshot.EXTENSION
+							+ ")", SessionSnapshot.EXTENSION));
 		}
+		return sessionChooser;
+	}
 
-		web.addPoint(currentValue, currentValue);
-		double oldValue = currentValue;
-		currentValue = func.functionValue(currentValue);
-		web.addPoint(oldValue, currentValue);
-		nList.add(++index);
-		xnList.add(currentValue);
+	/**
+	 * method to let the user choose a file of points and use the table as f,
+	 * interpolated along lines or cubics. the formula field names the table,
+	 * so f<sup>k</sup>, tracks and sessions treat it like any formula.
+	 */
+	private void loadTable() {
+		if (tableChooser == null) {
+			tableChooser = new JFileChooser();
+			tableChooser.setFileFilter(new FileNameExtensionFilter(
+					"Tables of points (*.txt, *.csv, *.dat)", "txt", "csv",
+					"dat"));
+		}
+		if (tableChooser.showOpenDialog(this) != JFileChooser.APPROVE_OPTION)
+			return;
+		String[] options = { "Lines", "Cubics" };
+		int choice = JOptionPane.showOptionDialog(this,
+				"Interpolate between the points along", "Table",
+				JOptionPane.DEFAULT_OPTION, JOptionPane.QUESTION_MESSAGE, null,
+				options, options[0]);
+		if (choice < 0)
+			return;
+		String formula = (choice == 1 ? TabulatedFunction.CUBIC
+				: TabulatedFunction.LINEAR)
+				+ "(" + tableChooser.getSelectedFile().getPath() + ")";
+		try {
+			setFormula(formula);
+		} catch (Graphable_error e) {
+			JOptionPane.showMessageDialog(this, "Could not load "
+					+ tableChooser.getSelectedFile().getName() + ":\n"
+					+ e.getMessage(), "Table Error", JOptionPane.ERROR_MESSAGE);
+			return;
+		}
+		fTextField.setText(formula);
+		refreshGraph();
+	}
+
+	/**
+	 * method to save the whole session to a file chosen by the user
+	 */
+	private void saveSession() {
+		JFileChooser chooser = getSessionChooser();
+		if (chooser.showSaveDialog(this) != JFileChooser.APPROVE_OPTION)
+			return;
+		File file = chooser.getSelectedFile();
+		if (!file.getName().contains("."))
+			file = new File(file.getPath() + "." + SessionSnapshot.EXTENSION);
+
+		boolean started = currentValue != null;
+		SessionSnapshot snapshot = new SessionSnapshot(fTextField.getText(),
+				seed, kCheckBox.isSelected(), kValues, index, started,
+				zoomManager.getZoomStack(), xOrbit);
+		try {
+			snapshot.write(file);
+		} catch (IOException e) {
+			JOptionPane.showMessageDialog(this, "Could not save "
+					+ file.getName() + ":\n" + e.getMessage(), "Save Error",
+					JOptionPane.ERROR_MESSAGE);
+		}
+	}
+
+	/**
+	 * method to load a session from a file chosen by the user, replacing the
+	 * current one
+	 */
+	private void loadSession() {
+		JFileChooser chooser = getSessionChooser();
+		if (chooser.showOpenDialog(this) != JFileChooser.APPROVE_OPTION)
+			return;
+		File file = chooser.getSelectedFile();
+		try {
+			restoreSession(SessionSnapshot.read(file));
+		} catch (IOException e) {
+			JOptionPane.showMessageDialog(this, "Could not load "
+					+ file.getName() + ":\n" + e.getMessage(), "Load Error",
+					JOptionPane.ERROR_MESSAGE);
+		} catch (Graphable_error e) {
+			JOptionPane.showMessageDialog(this, "Could not load "
+					+ file.getName() + ":\n" + e.getMessage(), "Load Error",
+					JOptionPane.ERROR_MESSAGE);
+		}
+	}
+
+	/**
+	 * method to put the panel back in the state of a saved session, so the
+	 * iteration continues where it left off. the tracks shown are not part of
+	 * a session; they are kept and iterated along the new orbit afterwards.
+	 * 
+	 * @param snapshot
+	 *            the {@link SessionSnapshot} to restore
+	 * @throws Graphable_error
+	 *             if the formula of the session is not valid
+	 */
+	void restoreSession(SessionSnapshot snapshot) throws Graphable_error {
+		if (playback != null)
+			playback.stop();
+
+		// parse the formula first so a bad session leaves everything as it was
+		int oldK = kValue;
+		kValue = snapshot.kValues[0];
+		try {
+			setFormula(snapshot.formula);
+		} catch (Graphable_error e) {
+			kValue = oldK;
+			throw e;
+		}
+		// the tracks are not saved, so they catch up with the new orbit later
+		OrbitTrack[] kept = tracks;
+		tracks = new OrbitTrack[0];
+		kValues = snapshot.kValues.clone();
+		fTextField.setText(snapshot.formula);
+		seed = snapshot.seed;
+		seedTextField.setText(seed.toString());
+		kTextField.setText(formatKValues(kValues));
+		kCheckBox.setSelected(snapshot.kEnabled);
+		kCheckBoxAction.actionPerformed(null);
+
+		xOrbit.replaceWith(snapshot.orbit);
+		index = snapshot.index;
+		currentValue = snapshot.started ? xOrbit.get(xOrbit.size() - 1)
+				: null;
+		fTextField.setEditable(!snapshot.started);
+		tableButton.setEnabled(!snapshot.started);
+		seedTextField.setEditable(!snapshot.started);
+		kCheckBox.setEnabled(!snapshot.started);
+		if (snapshot.started)
+			kTextField.setEditable(false);
+		resetButton.setEnabled(snapshot.started);
+		replayButton.setEnabled(snapshot.started);
+		setStepButtonsEnabled(snapshot.started);
+		stopLabel.setText(" ");
+
+		List<ZoomLevel> zooms = snapshot.zooms;
+		fullZoom = zooms.get(0);
+		buildDeferredComponents();
+		xMinField.setText("" + fullZoom.xMin);
+		xMaxField.setText("" + fullZoom.xMax);
+		yMinField.setText("" + fullZoom.yMin);
+		yMaxField.setText("" + fullZoom.yMax);
+		zoomManager.setZoomStack(zooms);
+		setGraphZoom(zooms.get(zooms.size() - 1));
+		setFullZoomOptionsEnabled(zooms.size() == 1);
+
+		tableModel.fireTableDataChanged();
+		refreshGraph();
+		if (kept.length > 0)
+			installTracks(kept);
+	}
+
+	/**
+	 * method to iterate the function one time, or once for each step of the
+	 * span when the Z columns need values further along the orbit. Z<sub>n</sub>
+	 * is X<sub>nk</sub>, so the kth iterate costs no evaluations of its own.
+	 * 
+	 * each new value is checked against the policy, but the span is finished
+	 * even when one says to stop, so the rows of the table stay whole.
+	 * values still stored from before a rewind are restored, not computed,
+	 * and checked in the same way.
+	 * 
+	 * @param policy
+	 *            the {@link TerminationPolicy} of this iteration
+	 * @return the reason to stop, or null to go on
+	 */
+	private TerminationPolicy.Reason iterate(TerminationPolicy policy) {
+		int span = xView.getSpan();
+		double x = currentValue;
+		TerminationPolicy.Reason reason = null;
+		int size = xOrbit.size();
+		if (xOrbit.restore(size + span)) {
+			// the values are still stored from before a rewind
+			for (int n = size; n < size + span; ++n) {
+				double previous = x;
+				x = xOrbit.get(n);
+				if (reason == null)
+					reason = policy.check(previous, x);
+			}
+			currentValue = x;
+			++index;
+			followTracks();
+			return reason;
+		}
+		for (int i = 0; i < span; ++i) {
+			double previous = x;
+			if (i == 0 && CobwebMetrics.sampleEvaluation(index)) {
+				long start = System.nanoTime();
+				x = func.functionValue(x);
+				metrics.evaluationTimed(System.nanoTime() - start);
+			} else {
+				x = func.functionValue(x);
+			}
+			xOrbit.add(x);
+			if (reason == null)
+				reason = policy.check(previous, x);
+		}
+		currentValue = x;
+		++index;
+		followTracks();
+		return reason;
+	}
+
+	/**
+	 * method to go back or forward to row n of the table and go on iterating
+	 * from there. going back cuts the orbit and the tracks back at once and
+	 * keeps the values after the cut, so going forward again only restores
+	 * them, as far as they go. the webs are drawn again as drafts, so holding
+	 * a step button down stays quick however long the orbit is.
+	 * 
+	 * @param n
+	 *            the row to go to
+	 */
+	private void rewind(int n) {
+		if (currentValue == null)
+			return;
+		int span = xView.getSpan();
+		int rows = (xOrbit.getStoredSize() - 1) / span;
+		n = Math.max(0, Math.min(n, rows));
+		if (n == index)
+			return;
+		if (n < index)
+			xOrbit.truncate(n * span + 1);
+		else
+			xOrbit.restore(n * span + 1);
+		index = n;
+		currentValue = xOrbit.get(xOrbit.size() - 1);
+		followTracks();
+
+		graphInteracting();
+		tableModel.fireTableDataChanged();
+		refreshGraph();
+		stopLabel.setText(" ");
+		if (table != null)
+			table.changeSelection(n, 1, false, false);
+	}
+
+	/**
+	 * method to go forward one row, restoring it if it is still stored and
+	 * computing it otherwise
+	 */
+	private void stepForward() {
+		if (currentValue == null)
+			return;
+		if (xOrbit.getStoredSize() >= (index + 1) * xView.getSpan() + 1) {
+			rewind(index + 1);
+			return;
+		}
+		TerminationPolicy.Reason reason = iterate(terminationPolicy);
+		showStopReason(reason == null ? TerminationPolicy.Reason.COMPLETED
+				: reason);
+		tableModel.fireTableDataChanged();
+		refreshGraph();
+		if (table != null)
+			table.changeSelection(index, 1, false, false);
+	}
+
+	/**
+	 * method to let the user pick the row to go back or forward to
+	 */
+	private void rewindTo() {
+		int rows = (xOrbit.getStoredSize() - 1) / xView.getSpan();
+		int selected = table == null ? -1 : table.getSelectedRow();
+		JTextField rowField = new JTextField(""
+				+ (selected >= 0 ? selected : index));
+		rowField.setPreferredSize(FIELD_SIZE);
+		JPanel panel = new JPanel(new GridBagLayout());
+		GridBagConstraints c = new GridBagConstraints();
+		c.fill = GridBagConstraints.HORIZONTAL;
+		c.insets = new Insets(2, 2, 2, 2);
+		c.gridx = 0;
+		c.gridy = 0;
+		c.gridwidth = 2;
+		panel.add(new JLabel("Rows 0 to " + rows + " are stored"), c);
+		c.gridy = 1;
+		c.gridwidth = 1;
+		panel.add(new JLabel("Go to n = "), c);
+		c.gridx = 1;
+		panel.add(rowField, c);
+
+		if (JOptionPane.showConfirmDialog(this, panel, "Rewind",
+				JOptionPane.OK_CANCEL_OPTION, JOptionPane.PLAIN_MESSAGE) != JOptionPane.OK_OPTION)
+			return;
+		int n;
+		try {
+			n = Integer.parseInt(rowField.getText().trim());
+		} catch (NumberFormatException e) {
+			n = -1;
+		}
+		if (n < 0 || n > rows) {
+			JOptionPane.showMessageDialog(this, "n must be between 0 and "
+					+ rows, "Invalid Row", JOptionPane.ERROR_MESSAGE);
+			return;
+		}
+		rewind(n);
+	}
+
+	/**
+	 * @param enabled
+	 *            true to let the user go back and forth through the orbit
+	 */
+	private void setStepButtonsEnabled(boolean enabled) {
+		backButton.setEnabled(enabled);
+		rewindButton.setEnabled(enabled);
+		forwardButton.setEnabled(enabled);
+	}
+
+	/**
+	 * method to iterate each track up to the number of rows of the orbit, or
+	 * clear it with the orbit. only the rows are shown for a track, so it is
+	 * not iterated through the span of each row. it is called by whichever
+	 * thread changed the orbit, so
+	 * a batch of iterations and its one update of the graph and table cover
+	 * every track.
+	 */
+	private void followTracks() {
+		int size = xView.size();
+		for (OrbitTrack t : tracks)
+			t.follow(size);
+	}
+
+	/**
+	 * method to let the user choose the maps and seeds iterated alongside f.
+	 * a track whose formula and seed are unchanged keeps its orbit, and a new
+	 * one is iterated up to the rows of the orbit of f by
+	 * {@link #installTracks(OrbitTrack[])}.
+	 */
+	private void editTracks() {
+		OrbitTrack[] old = tracks;
+		JTextField[] formulaFields = new JTextField[CobwebGraph.MAX_TRACKS];
+		JTextField[] seedFields = new JTextField[CobwebGraph.MAX_TRACKS];
+		JPanel panel = new JPanel(new GridBagLayout());
+		GridBagConstraints c = new GridBagConstraints();
+		c.fill = GridBagConstraints.HORIZONTAL;
+		c.insets = new Insets(2, 2, 2, 2);
+		c.gridy = 0;
+		c.gridx = 1;
+		panel.add(new JLabel("f(x) = "), c);
+		c.gridx = 2;
+		panel.add(new JLabel("Initial Value: "), c);
+		for (int i = 0; i < CobwebGraph.MAX_TRACKS; i++) {
+			c.gridy = i + 1;
+			c.gridx = 0;
+			JLabel color = new JLabel("\u25a0");
+			color.setForeground(TRACK_COLORS[i]);
+			panel.add(color, c);
+			formulaFields[i] = new JTextField(i < old.length ? old[i]
+					.getFormula() : "");
+			seedFields[i] = new JTextField(i < old.length ? ""
+					+ old[i].getSeed() : "");
+			formulaFields[i].setPreferredSize(FIELD_SIZE);
+			seedFields[i].setPreferredSize(FIELD_SIZE);
+			c.gridx = 1;
+			panel.add(formulaFields[i], c);
+			c.gridx = 2;
+			panel.add(seedFields[i], c);
+		}
+
+		if (JOptionPane.showConfirmDialog(this, panel, "Tracks",
+				JOptionPane.OK_CANCEL_OPTION, JOptionPane.PLAIN_MESSAGE) != JOptionPane.OK_OPTION)
+			return;
+		List<OrbitTrack> chosen = new ArrayList<OrbitTrack>();
+		for (int i = 0; i < CobwebGraph.MAX_TRACKS; i++) {
+			String formula = formulaFields[i].getText().trim();
+			if (formula.length() == 0)
+				continue;
+			double trackSeed;
+			CompiledFunction f;
+			try {
+				trackSeed = Double.parseDouble(seedFields[i].getText().trim());
+				f = formulas.function(formula);
+			} catch (NumberFormatException e) {
+				JOptionPane.showMessageDialog(this, seedFields[i].getText()
+						+ " is not a valid initial value", "Invalid Track",
+						JOptionPane.ERROR_MESSAGE);
+				return;
+			} catch (Graphable_error e) {
+				JOptionPane.showMessageDialog(this, formula
+						+ " is not a valid formula", "Syntax Error",
+						JOptionPane.ERROR_MESSAGE);
+				return;
+			}
+			OrbitTrack track = null;
+			for (OrbitTrack t : old)
+				if (t.getFormula().equals(formula)
+						&& t.getSeed() == trackSeed
+						&& t.getColor().equals(TRACK_COLORS[chosen.size()]))
+					track = t;
+			if (track == null)
+				track = new OrbitTrack(formula, f, trackSeed,
+						TRACK_COLORS[chosen.size()]);
+			chosen.add(track);
+		}
+
+		installTracks(chosen.toArray(new OrbitTrack[chosen.size()]));
+	}
+
+	/**
+	 * method to iterate tracks up to the rows of the orbit on a thread of
+	 * their own, while the buttons that change the orbit are disabled, and
+	 * then show them in place of the tracks shown now. the tracks shown now
+	 * are kept if there is not enough memory.
+	 * 
+	 * @param next
+	 *            the tracks to show
+	 */
+	private void installTracks(final OrbitTrack[] next) {
+		final int size = xView.size();
+		setOrbitButtonsEnabled(false);
+		new Thread("tracks") {
+
+			public void run() {
+				boolean followed = false;
+				try {
+					// a new track catches up with the rows of the orbit here
+					for (OrbitTrack t : next)
+						t.follow(size);
+					followed = true;
+				} catch (OutOfMemoryError e) {
+					// the tracks shown now are kept
+				} finally {
+					final boolean done = followed;
+					SwingUtilities.invokeLater(new Runnable() {
+
+						public void run() {
+							setOrbitButtonsEnabled(true);
+							if (!done) {
+								JOptionPane.showMessageDialog(CobwebPanel.this,
+										"There is not enough memory for "
+												+ "tracks of " + size
+												+ " values", "Tracks",
+										JOptionPane.ERROR_MESSAGE);
+								return;
+							}
+							tracks = next;
+							followTracks();
+							updateStrides();
+							updateGraphOptions();
+							refreshGraph();
+						}
+					});
+				}
+			}
+		}.start();
+	}
+
+	/**
+	 * @param enabled
+	 *            true to let the user change the orbit, as far as it has been
+	 *            started
+	 */
+	private void setOrbitButtonsEnabled(boolean enabled) {
+		boolean started = enabled && currentValue != null;
+		iterateButton.setEnabled(enabled);
+		resetButton.setEnabled(started);
+		replayButton.setEnabled(started);
+		setStepButtonsEnabled(started);
+		saveButton.setEnabled(enabled);
+		loadButton.setEnabled(enabled);
+		tracksButton.setEnabled(enabled);
+	}
+
+	/**
+	 * method to show why the last iteration stopped, unless it did all the
+	 * steps asked for. may be called from any thread.
+	 * 
+	 * @param reason
+	 *            the {@link TerminationPolicy.Reason} it stopped
+	 */
+	private void showStopReason(TerminationPolicy.Reason reason) {
+		final String text = reason == TerminationPolicy.Reason.COMPLETED ? " "
+				: "The orbit " + reason.getDescription() + " at n = "
+						+ index;
+		SwingUtilities.invokeLater(new Runnable() {
+
+			public void run() {
+				stopLabel.setText(text);
+			}
+		});
+	}
+
+	/**
+	 * method to let the user change the {@link TerminationPolicy} used by the
+	 * next iteration. a blank field means no limit.
+	 */
+	private void editTerminationPolicy() {
+		TerminationPolicy policy = terminationPolicy;
+		JTextField radiusField = new JTextField(limitText(policy
+				.getEscapeRadius()));
+		JCheckBox nonFiniteBox = new JCheckBox("Stop at infinity or NaN",
+				policy.isStopOnNonFinite());
+		JTextField toleranceField = new JTextField(limitText(policy
+				.getTolerance()));
+		JTextField timeField = new JTextField(limitText(policy.getMaxMillis()
+				/ 1000.0));
+		JTextField memoryField = new JTextField(limitText(policy.getMaxBytes()
+				/ (1024.0 * 1024.0)));
+
+		JPanel panel = new JPanel(new GridBagLayout());
+		GridBagConstraints c = new GridBagConstraints();
+		c.fill = GridBagConstraints.HORIZONTAL;
+		c.insets = new Insets(2, 2, 2, 2);
+		String[] labels = { "Escape radius |x| >", "Converged |\u0394x| <",
+				"Time limit (s)", "Memory limit (MB)" };
+		JTextField[] fields = { radiusField, toleranceField, timeField,
+				memoryField };
+		for (int i = 0; i < fields.length; i++) {
+			c.gridx = 0;
+			c.gridy = i;
+			panel.add(new JLabel(labels[i]), c);
+			c.gridx = 1;
+			fields[i].setPreferredSize(FIELD_SIZE);
+			panel.add(fields[i], c);
+		}
+		c.gridx = 0;
+		c.gridy = fields.length;
+		c.gridwidth = 2;
+		panel.add(nonFiniteBox, c);
+
+		if (JOptionPane.showConfirmDialog(this, panel, "Stop Rules",
+				JOptionPane.OK_CANCEL_OPTION, JOptionPane.PLAIN_MESSAGE) != JOptionPane.OK_OPTION)
+			return;
+		try {
+			double radius = parseLimit(radiusField.getText());
+			terminationPolicy = new TerminationPolicy(
+					radius == 0 ? Double.POSITIVE_INFINITY : radius,
+					nonFiniteBox.isSelected(), parseLimit(toleranceField
+							.getText()), Math.round(parseLimit(timeField
+							.getText()) * 1000), Math.round(parseLimit(memoryField
+							.getText()) * 1024 * 1024));
+		} catch (IllegalArgumentException e) {
+			JOptionPane.showMessageDialog(this,
+					"Stop rules must be positive numbers or blank",
+					"Invalid Stop Rules", JOptionPane.ERROR_MESSAGE);
+		}
+	}
+
+	/**
+	 * method to let the user find a row of the table by its value, answered
+	 * by the {@link OrbitIndex} of the orbit. the search starts after the
+	 * selected row, so finding again steps through the returns to a value.
+	 */
+	private void findInTable() {
+		buildDeferredComponents();
+		final JComboBox<String> kindBox = new JComboBox<String>(FIND_KINDS);
+		final JLabel firstLabel = new JLabel();
+		final JLabel secondLabel = new JLabel();
+		JTextField firstField = new JTextField(findFirst);
+		JTextField secondField = new JTextField(findSecond);
+		int selected = table.getSelectedRow();
+		final JTextField fromField = new JTextField("" + (selected + 1));
+		kindBox.setSelectedIndex(findKind);
+		ActionListener relabel = new ActionListener() {
+
+			public void actionPerformed(ActionEvent e) {
+				int kind = kindBox.getSelectedIndex();
+				firstLabel.setText(FIND_FIRST_LABELS[kind]);
+				secondLabel.setText(FIND_SECOND_LABELS[kind]);
+				// the range of rows is typed in for the smallest and largest
+				fromField.setEnabled(kind < FIND_MIN);
+			}
+		};
+		kindBox.addActionListener(relabel);
+		relabel.actionPerformed(null);
+
+		JPanel panel = new JPanel(new GridBagLayout());
+		GridBagConstraints c = new GridBagConstraints();
+		c.fill = GridBagConstraints.HORIZONTAL;
+		c.insets = new Insets(2, 2, 2, 2);
+		c.gridx = 0;
+		c.gridy = 0;
+		c.gridwidth = 2;
+		panel.add(kindBox, c);
+		c.gridwidth = 1;
+		JLabel[] labels = { firstLabel, secondLabel, new JLabel("From row") };
+		JTextField[] fields = { firstField, secondField, fromField };
+		for (int i = 0; i < fields.length; i++) {
+			c.gridx = 0;
+			c.gridy = i + 1;
+			panel.add(labels[i], c);
+			c.gridx = 1;
+			fields[i].setPreferredSize(FIELD_SIZE);
+			panel.add(fields[i], c);
+		}
+
+		if (JOptionPane.showConfirmDialog(this, panel, "Find",
+				JOptionPane.OK_CANCEL_OPTION, JOptionPane.PLAIN_MESSAGE) != JOptionPane.OK_OPTION)
+			return;
+		findKind = kindBox.getSelectedIndex();
+		findFirst = firstField.getText().trim();
+		findSecond = secondField.getText().trim();
+		double first, second;
+		int from;
+		try {
+			first = Double.parseDouble(findFirst);
+			second = Double.parseDouble(findSecond);
+			from = findKind < FIND_MIN ? Integer.parseInt(fromField
+					.getText().trim()) : 0;
+		} catch (NumberFormatException e) {
+			JOptionPane.showMessageDialog(this,
+					"The values and the row must be numbers", "Invalid Search",
+					JOptionPane.ERROR_MESSAGE);
+			return;
+		}
+
+		int rows = xView.size();
+		int row;
+		switch (findKind) {
+		case FIND_WITHIN:
+			row = xIndex.firstWithin(first, Math.abs(second), from, rows);
+			break;
+		case FIND_IN:
+			row = xIndex.firstIn(first, second, from, rows);
+			break;
+		case FIND_ALL_IN:
+			int[] returns = xIndex.allIn(first, second, from, rows,
+					FIND_ALL_LIMIT);
+			if (returns.length > 0) {
+				table.clearSelection();
+				for (int n : returns)
+					table.addRowSelectionInterval(n, n);
+				table.scrollRectToVisible(table.getCellRect(returns[0], 1,
+						true));
+			}
+			row = returns.length > 0 ? returns[0] : -1;
+			if (returns.length == FIND_ALL_LIMIT)
+				JOptionPane.showMessageDialog(this, "Only the first "
+						+ FIND_ALL_LIMIT + " rows were selected", "Find",
+						JOptionPane.INFORMATION_MESSAGE);
+			break;
+		case FIND_MIN:
+			row = xIndex.argMin((int) first, (int) Math.min(second + 1, rows));
+			break;
+		default:
+			row = xIndex.argMax((int) first, (int) Math.min(second + 1, rows));
+			break;
+		}
+		if (row < 0)
+			JOptionPane.showMessageDialog(this, "No row was found", "Find",
+					JOptionPane.INFORMATION_MESSAGE);
+		else if (findKind != FIND_ALL_IN)
+			table.changeSelection(row, 1, false, false);
+	}
+
+	/**
+	 * method to let the user draw the recurrence plot of the end of the
+	 * orbit. the plot is computed on a thread of its own and opens in a
+	 * window of its own.
+	 */
+	private void showRecurrencePlot() {
+		int rows = xView.size();
+		if (rows < 2) {
+			JOptionPane.showMessageDialog(this,
+					"Iterate the function before drawing a recurrence plot",
+					"Recurrence Plot", JOptionPane.INFORMATION_MESSAGE);
+			return;
+		}
+		// a twentieth of the range of the orbit, which has none if it never
+		// leaves NaN
+		int max = xIndex.argMax(0, rows), min = xIndex.argMin(0, rows);
+		double range = max < 0 || min < 0 ? 0 : xOrbit.get(max)
+				- xOrbit.get(min);
+		JTextField sizeField = new JTextField(""
+				+ Math.min(rows, DEFAULT_RECURRENCE_SIZE));
+		JTextField epsilonField = new JTextField(""
+				+ (range > 0 ? range / 20 : 1e-9));
+		JPanel panel = new JPanel(new GridBagLayout());
+		GridBagConstraints c = new GridBagConstraints();
+		c.fill = GridBagConstraints.HORIZONTAL;
+		c.insets = new Insets(2, 2, 2, 2);
+		String[] labels = { "Last n values", "Recurrence |x_i - x_j| <" };
+		JTextField[] fields = { sizeField, epsilonField };
+		for (int i = 0; i < fields.length; i++) {
+			c.gridx = 0;
+			c.gridy = i;
+			panel.add(new JLabel(labels[i]), c);
+			c.gridx = 1;
+			fields[i].setPreferredSize(FIELD_SIZE);
+			panel.add(fields[i], c);
+		}
+		if (JOptionPane.showConfirmDialog(this, panel, "Recurrence Plot",
+				JOptionPane.OK_CANCEL_OPTION, JOptionPane.PLAIN_MESSAGE) != JOptionPane.OK_OPTION)
+			return;
+		final double epsilon;
+		int size;
+		try {
+			size = Integer.parseInt(sizeField.getText().trim());
+			epsilon = Double.parseDouble(epsilonField.getText().trim());
+			if (size < 1 || size > RecurrencePlot.MAX_SIZE || !(epsilon > 0))
+				throw new NumberFormatException();
+		} catch (NumberFormatException e) {
+			JOptionPane.showMessageDialog(this, "The number of values must be "
+					+ "between 1 and " + RecurrencePlot.MAX_SIZE
+					+ " and the distance must be positive",
+					"Invalid Recurrence Plot", JOptionPane.ERROR_MESSAGE);
+			return;
+		}
+		size = Math.min(size, rows);
+		final double[] x = new double[size];
+		for (int i = 0; i < size; i++)
+			x[i] = xView.get(rows - size + i);
+		final int first = rows - size;
+
+		recurrenceButton.setEnabled(false);
+		new Thread("recurrence plot") {
+
+			public void run() {
+				try {
+					plot();
+				} finally {
+					// however the plot ends, it may be drawn again
+					SwingUtilities.invokeLater(new Runnable() {
+
+						public void run() {
+							recurrenceButton.setEnabled(true);
+						}
+					});
+				}
+			}
+
+			private void plot() {
+				ForkJoinPool pool = new ForkJoinPool();
+				final RecurrencePlot plot;
+				final BufferedImage image;
+				final long millis;
+				try {
+					long start = System.nanoTime();
+					plot = new RecurrencePlot(x, epsilon, pool);
+					image = plot.toImage(RECURRENCE_PIXELS, pool);
+					millis = (System.nanoTime() - start) / 1000000;
+				} catch (OutOfMemoryError e) {
+					SwingUtilities.invokeLater(new Runnable() {
+
+						public void run() {
+							JOptionPane.showMessageDialog(CobwebPanel.this,
+									"There is not enough memory for a "
+											+ "recurrence plot of " + x.length
+											+ " values", "Recurrence Plot",
+									JOptionPane.ERROR_MESSAGE);
+						}
+					});
+					return;
+				} finally {
+					pool.shutdown();
+				}
+				SwingUtilities.invokeLater(new Runnable() {
+
+					public void run() {
+						JLabel picture = new JLabel(new ImageIcon(image));
+						picture.setBorder(MARGIN);
+						JLabel caption = new JLabel(String.format(
+								"n = %d to %d, \u03b5 = %g, recurrence rate %.3g%%, %d ms",
+								first, first + x.length - 1, epsilon,
+								100 * plot.recurrenceRate(), millis));
+						caption.setBorder(MARGIN);
+						JDialog dialog = new JDialog(SwingUtilities
+								.getWindowAncestor(CobwebPanel.this),
+								"Recurrence Plot");
+						dialog.add(picture, BorderLayout.CENTER);
+						dialog.add(caption, BorderLayout.SOUTH);
+						dialog.pack();
+						dialog.setLocationRelativeTo(CobwebPanel.this);
+						dialog.setVisible(true);
+					}
+				});
+			}
+		}.start();
+	}
+
+	/**
+	 * @param limit
+	 *            a limit of a {@link TerminationPolicy}
+	 * @return the limit as text, blank for none
+	 */
+	private static String limitText(double limit) {
+		return limit == 0 || Double.isInfinite(limit) ? "" : "" + limit;
+	}
+
+	/**
+	 * @param text
+	 *            a limit typed by the user
+	 * @return the limit, 0 if the text is blank
+	 * @throws IllegalArgumentException
+	 *             if the text is not a number that is not negative
+	 */
+	private static double parseLimit(String text) {
+		text = text.trim();
+		if (text.length() == 0)
+			return 0;
+		double limit = Double.parseDouble(text);
+		if (!(limit >= 0) || Double.isInfinite(limit))
+			throw new IllegalArgumentException(text);
+		return limit;
+	}
+
+	/**
+	 * method to point the webs and the table at the values of the orbit for
+	 * the k values in use, and set the span of the orbit to the largest of
+	 * them
+	 */
+	private void updateStrides() {
+		int[] strides = kCheckBox.isSelected() ? kValues : new int[0];
+		int span = OrbitView.span(strides);
+		xView.setStride(1, span);
+		kView.setStride(kValue, Math.max(kValue, span));
+		tableModel.setKValues(strides);
+		tableModel.setTracks(tracks);
+		tableModel.fireTableStructureChanged();
+	}
+
+	/**
+	 * @param text
+	 *            k values separated by commas
+	 * @return the k values
+	 * @throws NumberFormatException
+	 *             if a k value is not a positive integer
+	 */
+	static int[] parseKValues(String text) {
+		String[] parts = text.split(",");
+		int[] values = new int[parts.length];
+		for (int i = 0; i < parts.length; i++) {
+			values[i] = Integer.parseInt(parts[i].trim());
+			if (values[i] < 1)
+				throw new NumberFormatException("k must be positive: "
+						+ values[i]);
+		}
+		return values;
+	}
+
+	/**
+	 * @param values
+	 *            k values
+	 * @return the k values separated by commas
+	 */
+	static String formatKValues(int[] values) {
+		StringBuilder text = new StringBuilder();
+		for (int k : values) {
+			if (text.length() > 0)
+				text.append(", ");
+			text.append(k);
+		}
+		return text.toString();
+	}
+
+	/**
+	 * method to start the work that waited for the first paint of the graph
+	 */
+	private void firstPainted() {
+		metrics.firstPainted();
+		for (Runnable task : afterFirstPaint)
+			SwingUtilities.invokeLater(task);
+		afterFirstPaint = null;
+	}
+
+	/**
+	 * @return a started flight recorder event for the next batch of
+	 *         iterations, or null if nothing is recording
+	 */
+	private static CobwebEvents.IterationBatch newBatchEvent() {
+		if (!CobwebEvents.isRecording())
+			return null;
+		CobwebEvents.IterationBatch batch = new CobwebEvents.IterationBatch();
+		batch.begin();
+		return batch;
+	}
+
+	/**
+	 * method to update the graph, recording how long the update took
+	 */
+	private void refreshGraph() {
+		CobwebEvents.GraphUpdate event = null;
+		if (CobwebEvents.isRecording()) {
+			event = new CobwebEvents.GraphUpdate();
+			event.begin();
+		}
+		long start = System.nanoTime();
+		graph.updateGraph();
+		metrics.graphUpdated(System.nanoTime() - start);
+		if (event != null) {
+			event.orbitLength = xOrbit.size();
+			event.commit();
+		}
+		metrics.orbitChanged(xView.size(), xOrbit.footprint());
+		updateTimeSeries();
+	}
+
+	/**
+	 * method to let the user see the power spectrum and autocorrelation of
+	 * the orbit after a transient. the values are copied first, and the
+	 * spectrum is computed from the copy on a thread of its own and opens in
+	 * a window of its own.
+	 */
+	private void showSpectrum() {
+		int size = xOrbit.size();
+		if (size < 3) {
+			JOptionPane.showMessageDialog(this,
+					"Iterate the function before taking its spectrum",
+					"Spectrum", JOptionPane.INFORMATION_MESSAGE);
+			return;
+		}
+		JTextField transientField = new JTextField("" + size / 10);
+		JComboBox<String> windowBox = new JComboBox<String>(new String[] {
+				"No window", "Hann window" });
+		JCheckBox logBox = new JCheckBox("Power in decibels", true);
+		JPanel panel = new JPanel(new GridBagLayout());
+		GridBagConstraints c = new GridBagConstraints();
+		c.fill = GridBagConstraints.HORIZONTAL;
+		c.insets = new Insets(2, 2, 2, 2);
+		c.gridx = 0;
+		c.gridy = 0;
+		panel.add(new JLabel("Discard the first n"), c);
+		c.gridx = 1;
+		transientField.setPreferredSize(FIELD_SIZE);
+		panel.add(transientField, c);
+		c.gridx = 0;
+		c.gridy = 1;
+		c.gridwidth = 2;
+		panel.add(windowBox, c);
+		c.gridy = 2;
+		panel.add(logBox, c);
+		if (JOptionPane.showConfirmDialog(this, panel, "Spectrum",
+				JOptionPane.OK_CANCEL_OPTION, JOptionPane.PLAIN_MESSAGE) != JOptionPane.OK_OPTION)
+			return;
+		final int first;
+		try {
+			first = Integer.parseInt(transientField.getText().trim());
+			if (first < 0 || first > size - 2)
+				throw new NumberFormatException();
+		} catch (NumberFormatException e) {
+			JOptionPane.showMessageDialog(this, "The transient must be "
+					+ "between 0 and " + (size - 2), "Invalid Spectrum",
+					JOptionPane.ERROR_MESSAGE);
+			return;
+		}
+		final boolean hann = windowBox.getSelectedIndex() == 1;
+		final boolean log = logBox.isSelected();
+		final int last = size - 1;
+		// copied here, since the orbit may be reset or rewound meanwhile
+		final double[] x;
+		try {
+			x = new double[last - first + 1];
+		} catch (OutOfMemoryError e) {
+			JOptionPane.showMessageDialog(this, "There is not enough memory "
+					+ "for the spectrum of " + (last - first + 1) + " values",
+					"Spectrum", JOptionPane.ERROR_MESSAGE);
+			return;
+		}
+		for (int i = 0; i < x.length; i++)
+			x[i] = xOrbit.get(first + i);
+
+		spectrumButton.setEnabled(false);
+		new Thread("spectrum") {
+
+			public void run() {
+				try {
+					spectrum();
+				} finally {
+					// however the spectrum ends, it may be taken again
+					SwingUtilities.invokeLater(new Runnable() {
+
+						public void run() {
+							spectrumButton.setEnabled(true);
+						}
+					});
+				}
+			}
+
+			private void spectrum() {
+				ForkJoinPool pool = new ForkJoinPool();
+				final Orbit[] orbits;
+				final int padded;
+				final long millis;
+				long start = System.nanoTime();
+				try {
+					Spectrum spectrum = new Spectrum(x, hann, pool);
+					padded = spectrum.getPadded();
+					orbits = spectrumOrbits(spectrum, log);
+				} catch (IllegalArgumentException e) {
+					showSpectrumError("The spectrum could not be taken: "
+							+ e.getMessage());
+					return;
+				} catch (OutOfMemoryError e) {
+					showSpectrumError("There is not enough memory for the "
+							+ "spectrum of " + (last - first + 1) + " values");
+					return;
+				} finally {
+					pool.shutdown();
+				}
+				millis = (System.nanoTime() - start) / 1000000;
+				SwingUtilities.invokeLater(new Runnable() {
+
+					public void run() {
+						showSpectrum(orbits[0], orbits[1], padded, first,
+								last, hann, log, millis);
+					}
+				});
+			}
+		}.start();
+	}
+
+	/**
+	 * method to tell the user why a spectrum could not be taken. may be
+	 * called from any thread.
+	 * 
+	 * @param message
+	 *            what went wrong
+	 */
+	private void showSpectrumError(final String message) {
+		SwingUtilities.invokeLater(new Runnable() {
+
+			public void run() {
+				JOptionPane.showMessageDialog(CobwebPanel.this, message,
+						"Spectrum", JOptionPane.ERROR_MESSAGE);
+			}
+		});
+	}
+
+	/**
+	 * copy a spectrum into orbits to be plotted, off the event dispatch
+	 * thread since they are as long as the transform
+	 * 
+	 * @param spectrum
+	 *            the {@link Spectrum}
+	 * @param log
+	 *            true for the power in decibels
+	 * @return the {@link Orbit}s of the power and the autocorrelation
+	 */
+	private static Orbit[] spectrumOrbits(Spectrum spectrum, boolean log) {
+		double[] power = spectrum.getPower();
+		Orbit powerOrbit = new Orbit();
+		powerOrbit.ensureCapacity(power.length);
+		double peak = 0;
+		for (double p : power)
+			peak = Math.max(peak, p);
+		double floor = 10 * Math.log10(peak) - SPECTRUM_RANGE_DB;
+		for (double p : power)
+			powerOrbit.add(log ? Math.max(10 * Math.log10(p), floor) : p);
+		Orbit correlationOrbit = new Orbit();
+		double[] correlation = spectrum.getAutocorrelation();
+		correlationOrbit.ensureCapacity(correlation.length);
+		for (double r : correlation)
+			correlationOrbit.add(r);
+		return new Orbit[] { powerOrbit, correlationOrbit };
+	}
+
+	/**
+	 * method to open a window with a spectrum that has been computed
+	 */
+	private void showSpectrum(Orbit powerOrbit, Orbit correlationOrbit,
+			int padded, int first, int last, boolean hann, boolean log,
+			long millis) {
+		TimeSeriesView powerView = new TimeSeriesView();
+		powerView.setForeground(Color.BLACK);
+		powerView.addTrack(log ? "power (dB)" : "power", new OrbitView(
+				powerOrbit), CobwebRenderer.FUNCTION_COLOR);
+		powerView.setAxis("f", 1.0 / padded);
+		TimeSeriesView correlationView = new TimeSeriesView();
+		correlationView.setForeground(Color.BLACK);
+		correlationView.addTrack("autocorrelation", new OrbitView(
+				correlationOrbit), CobwebRenderer.WEB_COLOR);
+		correlationView.setAxis("lag", 1);
+
+		JPanel views = new JPanel(new GridLayout(2, 1));
+		views.add(powerView);
+		views.add(correlationView);
+		JLabel caption = new JLabel(String.format(
+				"n = %d to %d, %s, %d-point FFT, %d ms", first, last,
+				hann ? "Hann window" : "no window", padded, millis));
+		caption.setBorder(MARGIN);
+		JDialog dialog = new JDialog(SwingUtilities.getWindowAncestor(this),
+				"Spectrum");
+		dialog.add(views, BorderLayout.CENTER);
+		dialog.add(caption, BorderLayout.SOUTH);
+		dialog.pack();
+		dialog.setLocationRelativeTo(this);
+		dialog.setVisible(true);
+	}
+
+	/**
+	 * method to open the window with the plot of x<sub>n</sub> and
+	 * z<sub>n</sub> against n, which is kept up to date until it is closed
+	 */
+	private void showTimeSeries() {
+		if (timeSeriesDialog == null) {
+			timeSeries = new TimeSeriesView();
+			timeSeries.setForeground(Color.BLACK);
+			timeSeries.addTrack("X_n", new OrbitView(xOrbit),
+					CobwebRenderer.WEB_COLOR);
+			zTrack = timeSeries.addTrack("Z_n", kView,
+					CobwebRenderer.K_WEB_COLOR);
+			JLabel help = new JLabel("Drag to zoom, shift-drag to pan, "
+					+ "right click to see the whole orbit");
+			help.setBorder(MARGIN);
+			timeSeriesDialog = new JDialog(SwingUtilities
+					.getWindowAncestor(this), "Time Series");
+			timeSeriesDialog.add(timeSeries, BorderLayout.CENTER);
+			timeSeriesDialog.add(help, BorderLayout.SOUTH);
+			timeSeriesDialog.pack();
+			timeSeriesDialog.setLocationRelativeTo(this);
+		}
+		timeSeriesDialog.setVisible(true);
+		updateTimeSeries();
+	}
+
+	/**
+	 * method to redraw the time series, if it is showing, after the orbit or
+	 * k has changed. it can be called from any thread.
+	 */
+	private void updateTimeSeries() {
+		TimeSeriesView view = timeSeries;
+		if (view == null || !view.isShowing())
+			return;
+		view.setTrackVisible(zTrack, kFunc != null);
+		view.repaint();
 	}
 
 	/**
@@ -1200,6 +2869,7 @@ final class CobwebPanel extends JPanel {
 	 *            boolean to describe if full zoom options should be enabled
 	 */
 	public void setFullZoomOptionsEnabled(boolean enabled) {
+		buildDeferredComponents();
 		if (enabled)
 			for (Component c : fullZoomPanel.getComponents()) {
 				c.setForeground(Color.BLACK);
@@ -1219,16 +2889,22 @@ final class CobwebPanel extends JPanel {
 	 *            the new {@link ZoomLevel} to set for the graph
 	 */
 	public void setGraphZoom(ZoomLevel zoomLevel) {
-		graph.setXMax(zoomLevel.xMax);
-		graph.setXMin(zoomLevel.xMin);
-		graph.setYMax(zoomLevel.yMax);
-		graph.setYMin(zoomLevel.yMin);
+		graph.setZoom(zoomLevel);
+		metrics.zoomed();
+	}
+
+	/**
+	 * method to tell the graph the user is zooming, so it is drawn quickly
+	 * until the mouse has been still for a moment
+	 */
+	public void graphInteracting() {
+		graph.interacting();
 	}
 
 	/**
-	 * method to use the {@link MathGrid#xPixelToMath(int)} and
-	 * {@link MathGrid#yPixelToMath(int)} to convert screen coordinates to graph
-	 * coordinates
+	 * method to use the {@link CobwebGraph#xPixelToMath(int)} and
+	 * {@link CobwebGraph#yPixelToMath(int)} to convert screen coordinates to
+	 * graph coordinates
 	 * 
 	 * @param p
 	 *            the {@link Point} of the mouse location in screen coordinates
@@ -17,7 +17,21 @@
  */
 package edu.bsu.math.cobweb;
 
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+
 import javax.swing.JFrame;
+import javax.swing.SwingUtilities;
+
+import EDU.emporia.mathtools.Graphable_error;
 
 /**
  * driver class to create a window and add a panel to it.
@@ -26,16 +40,196 @@ import javax.swing.JFrame;
  */
 public class CobwebPlot2008 {
 
+	private static final String EXPORT_USAGE = "usage: CobwebPlot2008 export"
+			+ " <file.png|file.svg> <width> <height> <formula> <seed> <steps>"
+			+ " [k [xMin xMax yMin yMax]]";
+
+	private static final String BATCH_USAGE = "usage: CobwebPlot2008 batch"
+			+ " <jobs> <results> [threads]";
+
+	private static final String SERVE_USAGE = "usage: CobwebPlot2008 serve"
+			+ " [port [maxConcurrent [address]]]"
+			+ " (the loopback address unless another is given, 0.0.0.0 for all)";
+
 	/**
 	 * @param args
-	 *            not used
+	 *            empty to open the window, <code>export</code> followed by the
+	 *            arguments in {@link #EXPORT_USAGE} to write an image without a
+	 *            display, or <code>serve</code> followed by the arguments in
+	 *            {@link #SERVE_USAGE} to run an {@link OrbitServer}, or
+	 *            <code>batch</code> followed by the arguments in
+	 *            {@link #BATCH_USAGE} to run a job file with a
+	 *            {@link BatchRunner}, or <code>firstpaint</code> to open the
+	 *            window, print how long it took to paint and exit, which is
+	 *            also how the class data sharing archive is made
 	 */
 	public static void main(String[] args) {
-		JFrame frame = new JFrame("Cobweb Plot 2008");
-		frame.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
-		frame.add(new CobwebPanel());
-		frame.pack();
-		frame.setVisible(true);
+		if (args.length > 0 && args[0].equals("export")) {
+			export(args);
+			return;
+		}
+		if (args.length > 0 && args[0].equals("serve")) {
+			serve(args);
+			return;
+		}
+		if (args.length > 0 && args[0].equals("batch")) {
+			batch(args);
+			return;
+		}
+
+		final boolean timing = args.length > 0 && args[0].equals("firstpaint");
+		SwingUtilities.invokeLater(new Runnable() {
+
+			public void run() {
+				JFrame frame = new JFrame("Cobweb Plot 2008");
+				frame.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
+				CobwebPanel panel = new CobwebPanel();
+				frame.add(panel);
+				frame.pack();
+				frame.setVisible(true);
+				if (timing)
+					panel.invokeAfterFirstPaint(new Runnable() {
+
+						public void run() {
+							System.out.println("first paint after "
+									+ CobwebMetrics.getInstance()
+											.getFirstPaintMillis() + " ms");
+							System.exit(0);
+						}
+					});
+			}
+		});
+	}
+
+	/**
+	 * run every job of a job file and write the results
+	 * 
+	 * @param args
+	 *            the command line arguments
+	 */
+	private static void batch(String[] args) {
+		if (args.length != 3 && args.length != 4) {
+			System.err.println(BATCH_USAGE);
+			System.exit(1);
+		}
+		BatchRunner runner = null;
+		try {
+			int threads = args.length > 3 ? Integer.parseInt(args[3]) : Runtime
+					.getRuntime().availableProcessors();
+			if (threads < 1)
+				throw new NumberFormatException("threads must be positive");
+			runner = new BatchRunner(threads);
+			BufferedReader jobs = new BufferedReader(new InputStreamReader(
+					new FileInputStream(args[1]), "UTF-8"));
+			Writer results = new BufferedWriter(new OutputStreamWriter(
+					new FileOutputStream(args[2]), "UTF-8"));
+			long start = System.nanoTime();
+			int count;
+			try {
+				count = runner.run(jobs, results);
+			} finally {
+				jobs.close();
+				results.close();
+			}
+			System.out.println(count + " jobs in "
+					+ (System.nanoTime() - start) / 1000000 + " ms");
+		} catch (NumberFormatException e) {
+			System.err.println(e.getMessage());
+			System.err.println(BATCH_USAGE);
+			System.exit(1);
+		} catch (IOException e) {
+			System.err.println(e.getMessage());
+			System.exit(1);
+		} finally {
+			if (runner != null)
+				runner.shutdown();
+		}
+	}
+
+	/**
+	 * run an {@link OrbitServer} until the program is killed
+	 * 
+	 * @param args
+	 *            the command line arguments
+	 */
+	private static void serve(String[] args) {
+		if (args.length > 4) {
+			System.err.println(SERVE_USAGE);
+			System.exit(1);
+		}
+		try {
+			int port = args.length > 1 ? Integer.parseInt(args[1])
+					: OrbitServer.DEFAULT_PORT;
+			int maxConcurrent = args.length > 2 ? Integer.parseInt(args[2])
+					: OrbitServer.DEFAULT_MAX_CONCURRENT;
+			InetAddress address = args.length > 3 ? InetAddress
+					.getByName(args[3]) : InetAddress.getLoopbackAddress();
+			OrbitServer server = new OrbitServer(address, port, maxConcurrent);
+			server.start();
+			System.out.println("serving orbits on "
+					+ server.getAddress().getAddress().getHostAddress()
+					+ " port " + server.getAddress().getPort());
+		} catch (NumberFormatException e) {
+			System.err.println(e.getMessage());
+			System.err.println(SERVE_USAGE);
+			System.exit(1);
+		} catch (IOException e) {
+			System.err.println(e.getMessage());
+			System.exit(1);
+		}
 	}
 
+	/**
+	 * compute an orbit and write its cobweb plot to an image file. works with
+	 * <code>java.awt.headless=true</code>.
+	 * 
+	 * @param args
+	 *            the command line arguments
+	 */
+	private static void export(String[] args) {
+		if (args.length != 7 && args.length != 8 && args.length != 12) {
+			System.err.println(EXPORT_USAGE);
+			System.exit(1);
+		}
+		try {
+			File file = new File(args[1]);
+			int width = Integer.parseInt(args[2]);
+			int height = Integer.parseInt(args[3]);
+			CompiledFunction f = FormulaCache.getInstance().function(args[4]);
+			double seed = Double.parseDouble(args[5]);
+			int steps = Integer.parseInt(args[6]);
+			int k = args.length > 7 ? Integer.parseInt(args[7]) : 0;
+			ZoomLevel zoom = new ZoomLevel(0.0, 1.0, 0.0, 1.0);
+			if (args.length == 12)
+				zoom = new ZoomLevel(Double.parseDouble(args[8]), Double
+						.parseDouble(args[9]), Double.parseDouble(args[10]),
+						Double.parseDouble(args[11]));
+
+			// one orbit of f out to steps * k gives both webs
+			int span = Math.max(1, k);
+			if ((long) steps * span >= Integer.MAX_VALUE)
+				throw new NumberFormatException("steps * k is too large");
+			Orbit orbit = Orbit.iterate(f, seed, steps * span);
+
+			CobwebRenderer renderer = new CobwebRenderer(zoom, width, height);
+			renderer.setFunction(f);
+			renderer.setWeb(new OrbitView(orbit, 1, span));
+			if (k > 0) {
+				renderer.setKFunction(FormulaCache.getInstance().iterate(
+						args[4], k));
+				renderer.setKWeb(new OrbitView(orbit, k, span));
+			}
+			new PlotExporter(renderer).write(file);
+		} catch (NumberFormatException e) {
+			System.err.println(e.getMessage());
+			System.err.println(EXPORT_USAGE);
+			System.exit(1);
+		} catch (Graphable_error e) {
+			System.err.println(args[4] + " is not a valid formula");
+			System.exit(1);
+		} catch (IOException e) {
+			System.err.println(e.getMessage());
+			System.exit(1);
+		}
+	}
 }
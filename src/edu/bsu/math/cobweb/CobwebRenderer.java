@@ -0,0 +1,528 @@
+/*
+ * Cobweb Plot 2008: A function iteration and cobweb plot visualization tool
+ * Copyright (C) 2008 Ball State University
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package edu.bsu.math.cobweb;
+
+import java.awt.BasicStroke;
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.geom.Line2D;
+import java.awt.geom.Path2D;
+import java.text.DecimalFormat;
+
+import EDU.emporia.mathtools.MathFunction;
+
+/**
+ * draws the layers of a cobweb plot (grid, y=x, f, f<sup>k</sup> and both
+ * webs) for a {@link ZoomLevel} at an arbitrary pixel size without needing a
+ * screen. the image can be painted in tiles: {@link #prepare()} samples the
+ * functions once, after which {@link #paintTile(Graphics2D, int, int, int, int)}
+ * only reads shared state and may be called from several threads at once.
+ */
+final class CobwebRenderer {
+
+	/**
+	 * colors of the layers, the same as the ones used on screen
+	 */
+	static final Color LINE_COLOR = Color.BLACK, FUNCTION_COLOR = Color.BLUE,
+			WEB_COLOR = Color.RED, K_FUNCTION_COLOR = Color.YELLOW,
+			K_WEB_COLOR = Color.GREEN, GRID_COLOR = Color.LIGHT_GRAY,
+			AXES_COLOR = Color.DARK_GRAY, BACKGROUND_COLOR = Color.WHITE;
+
+	/**
+	 * number of web segments collected into one path before it is drawn
+	 */
+	private static final int SEGMENTS_PER_PATH = 8192;
+
+	/**
+	 * device coordinates are clamped to this many pixels outside the image so
+	 * huge values still fit in a float
+	 */
+	private static final double DEVICE_LIMIT = 1e6;
+
+	private static final int TARGET_GRID_LINES = 10;
+
+	private final ZoomLevel zoom;
+
+	private final int width, height;
+
+	private MathFunction function, kFunction;
+
+	private OrbitView web, kWeb;
+
+	private boolean gridVisible = true, lineVisible = true;
+
+	private Path2D.Float functionPath, kFunctionPath;
+
+	private double gridStepX, gridStepY;
+
+	/**
+	 * construct a {@link CobwebRenderer}
+	 * 
+	 * @param zoom
+	 *            the {@link ZoomLevel} to draw
+	 * @param width
+	 *            the width of the image in pixels
+	 * @param height
+	 *            the height of the image in pixels
+	 */
+	public CobwebRenderer(ZoomLevel zoom, int width, int height) {
+		this.zoom = zoom;
+		this.width = width;
+		this.height = height;
+	}
+
+	/**
+	 * @param f
+	 *            the function f to draw, or null to leave it out
+	 */
+	void setFunction(MathFunction f) {
+		function = f;
+	}
+
+	/**
+	 * @param kF
+	 *            the function f<sup>k</sup> to draw, or null to leave it out
+	 */
+	void setKFunction(MathFunction kF) {
+		kFunction = kF;
+	}
+
+	/**
+	 * @param orbit
+	 *            the {@link OrbitView} of f to draw as a web, or null to leave
+	 *            it out
+	 */
+	void setWeb(OrbitView orbit) {
+		web = orbit;
+	}
+
+	/**
+	 * @param orbit
+	 *            the {@link OrbitView} of f<sup>k</sup> to draw as a web, or
+	 *            null to leave it out
+	 */
+	void setKWeb(OrbitView orbit) {
+		kWeb = orbit;
+	}
+
+	/**
+	 * @param visible
+	 *            true to draw the grid lines and axes
+	 */
+	void setGridVisible(boolean visible) {
+		gridVisible = visible;
+	}
+
+	/**
+	 * @param visible
+	 *            true to draw the line y=x
+	 */
+	void setLineVisible(boolean visible) {
+		lineVisible = visible;
+	}
+
+	/**
+	 * @return true if the grid lines and axes are drawn
+	 */
+	boolean isGridVisible() {
+		return gridVisible;
+	}
+
+	/**
+	 * @return true if the line y=x is drawn
+	 */
+	boolean isLineVisible() {
+		return lineVisible;
+	}
+
+	/**
+	 * @return the width of the image in pixels
+	 */
+	int getWidth() {
+		return width;
+	}
+
+	/**
+	 * @return the height of the image in pixels
+	 */
+	int getHeight() {
+		return height;
+	}
+
+	/**
+	 * evaluate the functions across the image. the MathToolKit functions share
+	 * a single x variable, so this has to happen on one thread before any
+	 * tiles are painted.
+	 */
+	void prepare() {
+		functionPath = function == null ? null : sample(function);
+		kFunctionPath = kFunction == null ? null : sample(kFunction);
+		gridStepX = gridStep(zoom.xMax - zoom.xMin);
+		gridStepY = gridStep(zoom.yMax - zoom.yMin);
+	}
+
+	/**
+	 * paint one tile of the image. the origin of the {@link Graphics2D} is
+	 * the top left corner of the tile.
+	 * 
+	 * @param g
+	 *            the {@link Graphics2D} to paint on
+	 * @param x
+	 *            the left edge of the tile in image pixels
+	 * @param y
+	 *            the top edge of the tile in image pixels
+	 * @param w
+	 *            the width of the tile
+	 * @param h
+	 *            the height of the tile
+	 */
+	void paintTile(Graphics2D g, int x, int y, int w, int h) {
+		g.setColor(BACKGROUND_COLOR);
+		g.fillRect(0, 0, w, h);
+		g.translate(-x, -y);
+		g.clipRect(x, y, w, h);
+		setUp(g);
+
+		if (gridVisible)
+			paintGrid(g);
+		if (lineVisible) {
+			g.setColor(LINE_COLOR);
+			g.draw(linePath());
+		}
+		if (functionPath != null) {
+			g.setColor(FUNCTION_COLOR);
+			g.draw(functionPath);
+		}
+		if (kFunctionPath != null) {
+			g.setColor(K_FUNCTION_COLOR);
+			g.draw(kFunctionPath);
+		}
+		if (web != null) {
+			g.setColor(WEB_COLOR);
+			paintWeb(g, web, 0, web.size() - 1, 1, x, y, w, h);
+		}
+		if (kWeb != null) {
+			g.setColor(K_WEB_COLOR);
+			paintWeb(g, kWeb, 0, kWeb.size() - 1, 1, x, y, w, h);
+		}
+	}
+
+	/**
+	 * set the rendering hints and stroke every layer is drawn with
+	 * 
+	 * @param g
+	 *            the {@link Graphics2D} to set up
+	 */
+	void setUp(Graphics2D g) {
+		g.setRenderingHint(RenderingHints.KEY_ANTIALIASING,
+				RenderingHints.VALUE_ANTIALIAS_ON);
+		g.setRenderingHint(RenderingHints.KEY_STROKE_CONTROL,
+				RenderingHints.VALUE_STROKE_PURE);
+		g.setStroke(new BasicStroke(getStrokeWidth(), BasicStroke.CAP_ROUND,
+				BasicStroke.JOIN_ROUND));
+	}
+
+	/**
+	 * @return the width of the lines, scaled so large images stay readable
+	 */
+	float getStrokeWidth() {
+		return Math.max(1f, Math.min(width, height) / 600f);
+	}
+
+	/**
+	 * @return the size of the labels, scaled with the image
+	 */
+	float getFontSize() {
+		return Math.max(10f, Math.min(width, height) / 60f);
+	}
+
+	/**
+	 * @param x
+	 *            a math x coordinate
+	 * @return the x pixel coordinate
+	 */
+	double xToDevice(double x) {
+		return clamp((x - zoom.xMin) / (zoom.xMax - zoom.xMin) * width);
+	}
+
+	/**
+	 * @param y
+	 *            a math y coordinate
+	 * @return the y pixel coordinate
+	 */
+	double yToDevice(double y) {
+		return clamp((zoom.yMax - y) / (zoom.yMax - zoom.yMin) * height);
+	}
+
+	/**
+	 * @return the distance between vertical grid lines in math units
+	 */
+	double getGridStepX() {
+		return gridStepX;
+	}
+
+	/**
+	 * @return the distance between horizontal grid lines in math units
+	 */
+	double getGridStepY() {
+		return gridStepY;
+	}
+
+	/**
+	 * @return the {@link ZoomLevel} being drawn
+	 */
+	ZoomLevel getZoom() {
+		return zoom;
+	}
+
+	/**
+	 * @return the {@link OrbitView} drawn as the web of f, or null
+	 */
+	OrbitView getWeb() {
+		return web;
+	}
+
+	/**
+	 * @return the {@link OrbitView} drawn as the web of f<sup>k</sup>, or
+	 *         null
+	 */
+	OrbitView getKWeb() {
+		return kWeb;
+	}
+
+	/**
+	 * @return the path of f in pixel coordinates, or null
+	 */
+	Path2D.Float getFunctionPath() {
+		return functionPath;
+	}
+
+	/**
+	 * @return the path of f<sup>k</sup> in pixel coordinates, or null
+	 */
+	Path2D.Float getKFunctionPath() {
+		return kFunctionPath;
+	}
+
+	/**
+	 * @return the path of y=x in pixel coordinates
+	 */
+	Path2D.Float linePath() {
+		double lo = Math.max(zoom.xMin, zoom.yMin);
+		double hi = Math.min(zoom.xMax, zoom.yMax);
+		Path2D.Float path = new Path2D.Float();
+		if (lo < hi) {
+			path.moveTo(xToDevice(lo), yToDevice(lo));
+			path.lineTo(xToDevice(hi), yToDevice(hi));
+		}
+		return path;
+	}
+
+	/**
+	 * @return a formatter for the grid labels
+	 */
+	static DecimalFormat labelFormat() {
+		return new DecimalFormat("#0.###");
+	}
+
+	/**
+	 * draw the grid lines and the axes with their labels
+	 * 
+	 * @param g
+	 *            the {@link Graphics2D} to draw on
+	 */
+	void paintGrid(Graphics2D g) {
+		DecimalFormat format = labelFormat();
+		g.setFont(new Font("Serif", Font.PLAIN, Math.round(getFontSize())));
+		float ascent = g.getFontMetrics().getAscent();
+		long last = (long) Math.floor(zoom.xMax / gridStepX);
+		for (long i = (long) Math.ceil(zoom.xMin / gridStepX); i <= last; i++) {
+			double gx = i * gridStepX;
+			float px = (float) xToDevice(gx);
+			g.setColor(i == 0 ? AXES_COLOR : GRID_COLOR);
+			g.draw(new Line2D.Float(px, 0, px, height));
+			g.setColor(AXES_COLOR);
+			g.drawString(format.format(gx), px + 2, height - 2);
+		}
+		last = (long) Math.floor(zoom.yMax / gridStepY);
+		for (long i = (long) Math.ceil(zoom.yMin / gridStepY); i <= last; i++) {
+			double gy = i * gridStepY;
+			float py = (float) yToDevice(gy);
+			g.setColor(i == 0 ? AXES_COLOR : GRID_COLOR);
+			g.draw(new Line2D.Float(0, py, width, py));
+			g.setColor(AXES_COLOR);
+			g.drawString(format.format(gy), 2, py + ascent);
+		}
+	}
+
+	/**
+	 * draw some of the steps of a web in the current color
+	 * 
+	 * @param g
+	 *            the {@link Graphics2D} to draw on
+	 * @param orbit
+	 *            the {@link OrbitView} of the web
+	 * @param first
+	 *            the first step to draw
+	 * @param last
+	 *            the step after the last one to draw, at most the size of the
+	 *            view less one
+	 */
+	void paintWeb(Graphics2D g, OrbitView orbit, int first, int last) {
+		paintWeb(g, orbit, first, last, 1, 0, 0, width, height);
+	}
+
+	/**
+	 * draw every so many steps of a web in the current color, for a quick
+	 * look at a long web
+	 * 
+	 * @param g
+	 *            the {@link Graphics2D} to draw on
+	 * @param orbit
+	 *            the {@link OrbitView} of the web
+	 * @param first
+	 *            the first step to draw
+	 * @param last
+	 *            the step after the last one to draw, at most the size of the
+	 *            view less one
+	 * @param stride
+	 *            the number of steps from one drawn step to the next
+	 */
+	void paintWeb(Graphics2D g, OrbitView orbit, int first, int last,
+			int stride) {
+		paintWeb(g, orbit, first, last, stride, 0, 0, width, height);
+	}
+
+	/**
+	 * draw the segments of some steps of a web that cross a tile, in batches
+	 * of paths
+	 */
+	private void paintWeb(Graphics2D g, OrbitView orbit, int first, int last,
+			int stride, int x, int y, int w, int h) {
+		double left = x - 1, right = x + w + 1, top = y - 1, bottom = y + h + 1;
+		Path2D.Float path = new Path2D.Float(Path2D.WIND_NON_ZERO,
+				2 * SEGMENTS_PER_PATH);
+		int segments = 0;
+		for (int i = first; i < last; i += stride) {
+			double a = orbit.get(i), b = orbit.get(i + 1);
+			if (!isFinite(a) || !isFinite(b))
+				continue;
+			double ax = xToDevice(a), ay = yToDevice(a), by = yToDevice(b);
+			double bx = xToDevice(b);
+			// vertical segment from (a, a) to (a, b)
+			if (ax >= left && ax <= right && Math.max(ay, by) >= top
+					&& Math.min(ay, by) <= bottom) {
+				path.moveTo(ax, ay);
+				path.lineTo(ax, by);
+				segments++;
+			}
+			// horizontal segment from (a, b) to (b, b)
+			if (by >= top && by <= bottom && Math.max(ax, bx) >= left
+					&& Math.min(ax, bx) <= right) {
+				path.moveTo(ax, by);
+				path.lineTo(bx, by);
+				segments++;
+			}
+			if (segments >= SEGMENTS_PER_PATH) {
+				g.draw(path);
+				path.reset();
+				segments = 0;
+			}
+		}
+		if (segments > 0)
+			g.draw(path);
+	}
+
+	/**
+	 * sample a function with a {@link CurveSampler}, as densely as the curve
+	 * needs, breaking the path where it is not defined or jumps
+	 * 
+	 * @param f
+	 *            the {@link MathFunction} to sample
+	 * @return the path of f in pixel coordinates
+	 */
+	Path2D.Float sample(MathFunction f) {
+		return new CurveSampler(this, f).sample();
+	}
+
+	/**
+	 * sample a function every so many pixel columns, breaking the path where
+	 * it is not defined. this is quicker but rougher than
+	 * {@link #sample(MathFunction)}.
+	 * 
+	 * @param f
+	 *            the {@link MathFunction} to sample
+	 * @param columns
+	 *            the number of pixel columns from one sample to the next
+	 * @return the path of f in pixel coordinates
+	 */
+	Path2D.Float sample(MathFunction f, int columns) {
+		Path2D.Float path = new Path2D.Float(Path2D.WIND_NON_ZERO, width
+				/ columns + 2);
+		boolean drawing = false;
+		double dx = (zoom.xMax - zoom.xMin) / width;
+		for (int c = 0; c < width + columns; c += columns) {
+			// the last sample is always at the right edge
+			int i = Math.min(c, width);
+			double y = f.functionValue(zoom.xMin + i * dx);
+			if (!isFinite(y)) {
+				drawing = false;
+				continue;
+			}
+			if (drawing)
+				path.lineTo(i, yToDevice(y));
+			else
+				path.moveTo(i, yToDevice(y));
+			drawing = true;
+		}
+		return path;
+	}
+
+	/**
+	 * @return a step of 1, 2 or 5 times a power of ten giving about
+	 *         {@link #TARGET_GRID_LINES} lines across the range
+	 */
+	private static double gridStep(double range) {
+		double raw = range / TARGET_GRID_LINES;
+		if (!(raw > 0) || Double.isInfinite(raw))
+			return 1;
+		double magnitude = Math.pow(10, Math.floor(Math.log10(raw)));
+		double scaled = raw / magnitude;
+		if (scaled < 1.5)
+			return magnitude;
+		else if (scaled < 3.5)
+			return 2 * magnitude;
+		else if (scaled < 7.5)
+			return 5 * magnitude;
+		else
+			return 10 * magnitude;
+	}
+
+	private static double clamp(double d) {
+		return Math.max(-DEVICE_LIMIT, Math.min(DEVICE_LIMIT, d));
+	}
+
+	/**
+	 * @return true if a value is neither NaN nor infinite
+	 */
+	static boolean isFinite(double d) {
+		return !Double.isNaN(d) && !Double.isInfinite(d);
+	}
+}
@@ -0,0 +1,82 @@
+/*
+ * Cobweb Plot 2008: A function iteration and cobweb plot visualization tool
+ * Copyright (C) 2008 Ball State University
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package edu.bsu.math.cobweb;
+
+import java.awt.Component;
+
+import javax.swing.JTable;
+import javax.swing.table.TableCellRenderer;
+
+/**
+ * the table of values. its cells are drawn by a {@link CobwebCellRenderer}
+ * without boxing their values and copied by a {@link CobwebTransferHandler}.
+ */
+final class CobwebTable extends JTable {
+
+	private static final long serialVersionUID = -4402311896580150837L;
+
+	private final CobwebCellRenderer renderer = new CobwebCellRenderer();
+
+	/**
+	 * construct a {@link CobwebTable}
+	 * 
+	 * @param model
+	 *            the {@link CobwebTableModel} to show
+	 */
+	public CobwebTable(CobwebTableModel model) {
+		super(model);
+		setDefaultRenderer(Object.class, renderer);
+		setTransferHandler(new CobwebTransferHandler());
+	}
+
+	/**
+	 * set the number of significant digits shown
+	 * 
+	 * @param precision
+	 *            the number of significant digits, or
+	 *            {@link CobwebCellRenderer#ALL_DIGITS}
+	 */
+	void setPrecision(int precision) {
+		renderer.setPrecision(precision);
+		repaint();
+	}
+
+	/**
+	 * the same as {@link JTable#prepareRenderer(TableCellRenderer, int, int)}
+	 * except that the value is only looked up for renderers other than the
+	 * {@link CobwebCellRenderer}, which reads the doubles itself
+	 * 
+	 * @see JTable#prepareRenderer(TableCellRenderer, int, int)
+	 */
+	public Component prepareRenderer(TableCellRenderer cellRenderer, int row,
+			int column) {
+		if (cellRenderer != renderer)
+			return super.prepareRenderer(cellRenderer, row, column);
+		boolean isSelected = false;
+		boolean hasFocus = false;
+		if (!isPaintingForPrint()) {
+			isSelected = isCellSelected(row, column);
+			hasFocus = getSelectionModel().getLeadSelectionIndex() == row
+					&& getColumnModel().getSelectionModel()
+							.getLeadSelectionIndex() == column
+					&& isFocusOwner();
+		}
+		return renderer.getTableCellRendererComponent(this, null, isSelected,
+				hasFocus, row, column);
+	}
+}
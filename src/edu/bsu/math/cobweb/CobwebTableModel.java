@@ -17,8 +17,7 @@
  */
 package edu.bsu.math.cobweb;
 
-import java.util.List;
-
+import javax.swing.event.TableModelEvent;
 import javax.swing.table.AbstractTableModel;
 
 /**
@@ -30,65 +29,97 @@ final class CobwebTableModel extends AbstractTableModel {
 
 	private static final long serialVersionUID = 3877845437884037968L;
 
-	private String[] columnNames = { "n", "X_n", "Z_n" };
+	private final Orbit orbit;
+
+	private OrbitView xView;
+
+	private OrbitView[] kViews = new OrbitView[0];
+
+	private OrbitTrack[] tracks = new OrbitTrack[0];
 
-	private final List<Integer> nList;
+	private OrbitView[] trackViews = new OrbitView[0];
 
-	private final List<Double> xnList, znList;
+	private int span = 1;
 
-	private boolean zColumnVisible = false;
+	private final CobwebMetrics metrics = CobwebMetrics.getInstance();
 
 	/**
 	 * construct a {@link CobwebTableModel}
 	 * 
-	 * @param n
-	 *            a {@link List} of {@link Integer} representing the iterations
-	 * @param x
-	 *            a {@link List} of {@link Integer} representing the
-	 *            f(x<sub>n-1</sub>) value
-	 * @param z
-	 *            a {@link List} of {@link Integer} representing the
-	 *            f<sup>k</sup>(z<sub>n-1</sub>) value
+	 * @param orbit
+	 *            the {@link Orbit} of f, which the X and Z columns are views
+	 *            of
 	 */
-	public CobwebTableModel(List<Integer> n, List<Double> x, List<Double> z) {
-		nList = n;
-		xnList = x;
-		znList = z;
+	public CobwebTableModel(Orbit orbit) {
+		this.orbit = orbit;
+		xView = new OrbitView(orbit);
 	}
 
 	/**
-	 * method to set whether or not the Z column is visible
+	 * method to set which Z columns are visible. the column of k shows
+	 * Z<sub>n</sub> = X<sub>nk</sub>, read from the same orbit as the X
+	 * column, so any number of them cost nothing to compute.
 	 * 
-	 * @param visible
-	 *            boolean true if Z column should be visible, false if Z column
-	 *            should not be visible
+	 * @param kValues
+	 *            the k of each Z column, or none to hide the Z column
 	 */
-	public void setZColumnVisible(boolean visible) {
-		zColumnVisible = visible;
+	public void setKValues(int[] kValues) {
+		span = OrbitView.span(kValues);
+		OrbitView[] views = new OrbitView[kValues.length];
+		for (int i = 0; i < kValues.length; i++)
+			views[i] = new OrbitView(orbit, kValues[i], span);
+		xView = new OrbitView(orbit, 1, span);
+		kViews = views;
+		setTracks(tracks);
+	}
+
+	/**
+	 * method to set which {@link OrbitTrack}s have columns, after the Z
+	 * columns. each shows the X<sub>n</sub> of its track, which has a value
+	 * for each row.
+	 * 
+	 * @param tracks
+	 *            the tracks to show, which may be none
+	 */
+	public void setTracks(OrbitTrack[] tracks) {
+		OrbitView[] views = new OrbitView[tracks.length];
+		for (int i = 0; i < tracks.length; i++)
+			views[i] = new OrbitView(tracks[i].getOrbit());
+		this.tracks = tracks.clone();
+		trackViews = views;
 	}
 
 	/**
 	 * @see AbstractTableModel#getColumnCount()
 	 */
 	public int getColumnCount() {
-		if (zColumnVisible)
-			return columnNames.length;
-		else
-			return columnNames.length - 1;
+		return 2 + kViews.length + trackViews.length;
 	}
 
 	/**
 	 * @see AbstractTableModel#getColumnName(int)
 	 */
 	public String getColumnName(int column) {
-		return columnNames[column];
+		switch (column) {
+		case 0:
+			return "n";
+		case 1:
+			return "X_n";
+		default:
+			int i = column - 2;
+			if (i >= kViews.length)
+				return tracks[i - kViews.length].getName();
+			if (kViews.length == 1)
+				return "Z_n";
+			return "Z_n, k=" + kViews[i].getStride();
+		}
 	}
 
 	/**
 	 * @see AbstractTableModel#getRowCount()
 	 */
 	public int getRowCount() {
-		return nList.size();
+		return xView.size();
 	}
 
 	/**
@@ -97,13 +128,58 @@ final class CobwebTableModel extends AbstractTableModel {
 	public Object getValueAt(int row, int column) {
 		switch (column) {
 		case 0:
-			return nList.get(row);
+			return row;
 		case 1:
-			return xnList.get(row);
-		case 2:
-			return zColumnVisible ? znList.get(row) : null;
+			return xView.get(row);
 		default:
+			OrbitView view = getColumnView(column);
+			// a track is iterated just after the orbit, so it may lag a row
+			return view != null && row < view.size() ? view.get(row) : null;
+		}
+	}
+
+	/**
+	 * @param column
+	 *            a column of the table
+	 * @return the {@link OrbitView} the column shows, or null for the n
+	 *         column. setting the k values replaces the views, so a view keeps
+	 *         showing the same values for as long as its orbit is not cleared.
+	 */
+	OrbitView getColumnView(int column) {
+		if (column == 0)
 			return null;
+		if (column == 1)
+			return xView;
+		OrbitView[] views = kViews;
+		int i = column - 2;
+		if (i < views.length)
+			return views[i];
+		i -= views.length;
+		views = trackViews;
+		return i < views.length ? views[i] : null;
+	}
+
+	/**
+	 * notify the listeners of a change, recording how long the table took to
+	 * refresh
+	 * 
+	 * @see AbstractTableModel#fireTableChanged(TableModelEvent)
+	 */
+	public void fireTableChanged(TableModelEvent e) {
+		CobwebEvents.TableChange event = null;
+		if (CobwebEvents.isRecording()) {
+			event = new CobwebEvents.TableChange();
+			event.begin();
+		}
+		long start = System.nanoTime();
+		super.fireTableChanged(e);
+		metrics.tableRefreshed(System.nanoTime() - start);
+		if (event != null) {
+			event.type = e.getType();
+			event.firstRow = e.getFirstRow();
+			event.lastRow = e.getLastRow();
+			event.rowCount = getRowCount();
+			event.commit();
 		}
 	}
 }
@@ -0,0 +1,420 @@
+/*
+ * Cobweb Plot 2008: A function iteration and cobweb plot visualization tool
+ * Copyright (C) 2008 Ball State University
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package edu.bsu.math.cobweb;
+
+import java.awt.datatransfer.Clipboard;
+import java.awt.datatransfer.DataFlavor;
+import java.awt.datatransfer.Transferable;
+import java.awt.datatransfer.UnsupportedFlavorException;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
+import java.io.Reader;
+import java.nio.charset.Charset;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+import javax.swing.JComponent;
+import javax.swing.JOptionPane;
+import javax.swing.JTable;
+import javax.swing.ProgressMonitor;
+import javax.swing.SwingUtilities;
+import javax.swing.Timer;
+import javax.swing.TransferHandler;
+
+/**
+ * copies the selected cells of a table of a {@link CobwebTableModel} as tab
+ * separated text, one line per row, which spreadsheets paste as cells.
+ * 
+ * nothing is formatted when the selection is copied. each time the text is
+ * asked for, a thread formats the rows {@link #ROWS_PER_CHUNK} at a time and
+ * hands them over as the stream is read, never more than
+ * {@link #CHUNKS_AHEAD} chunks ahead of the reader, so a selection of any
+ * size takes the same small amount of memory until the reader keeps it.
+ * only selections of at most {@link #STRING_ROW_LIMIT} rows are also offered
+ * as one String. the stream fails if the orbit is cleared or replaced before
+ * it has been read.
+ * 
+ * some systems, Windows among them, read every flavor as soon as the
+ * clipboard is given its contents, so there the text is formatted in full
+ * when it is copied. a selection of more than {@link #STRING_ROW_LIMIT} rows
+ * is therefore handed to the clipboard on a thread of its own, with a
+ * progress monitor that shows how many rows have been formatted and can
+ * cancel the copy. where the clipboard is read lazily, as on X11, the monitor
+ * closes at once and the rows are formatted when they are pasted.
+ */
+final class CobwebTransferHandler extends TransferHandler {
+
+	private static final long serialVersionUID = -3021579335930785417L;
+
+	/**
+	 * the rows formatted at once
+	 */
+	static final int ROWS_PER_CHUNK = 4096;
+
+	/**
+	 * the most formatted chunks waiting for the reader
+	 */
+	static final int CHUNKS_AHEAD = 8;
+
+	/**
+	 * the most rows offered as {@link DataFlavor#stringFlavor}
+	 */
+	static final int STRING_ROW_LIMIT = 100000;
+
+	/**
+	 * the text as a stream of characters
+	 */
+	static final DataFlavor READER_FLAVOR = new DataFlavor(
+			"text/plain;class=java.io.Reader", "Plain Text");
+
+	/**
+	 * the text as a stream of UTF-8 bytes
+	 */
+	static final DataFlavor STREAM_FLAVOR = new DataFlavor(
+			"text/plain;charset=UTF-8;class=java.io.InputStream", "Plain Text");
+
+	/**
+	 * the text is only numbers, tabs and newlines, so its ASCII bytes are
+	 * also its UTF-8 bytes
+	 */
+	private static final Charset ASCII = Charset.forName("US-ASCII");
+
+	private static final byte[] END = new byte[0];
+
+	/**
+	 * how often the progress of a copy to the clipboard is shown
+	 */
+	private static final int PROGRESS_MILLIS = 100;
+
+	/**
+	 * @see TransferHandler#getSourceActions(JComponent)
+	 */
+	public int getSourceActions(JComponent c) {
+		return COPY;
+	}
+
+	/**
+	 * @see TransferHandler#exportToClipboard(JComponent, Clipboard, int)
+	 */
+	public void exportToClipboard(final JComponent c, final Clipboard clip,
+			int action) {
+		final TableSelection selection = (TableSelection) createTransferable(c);
+		if (selection == null)
+			return;
+		if (selection.rows.length <= STRING_ROW_LIMIT) {
+			clip.setContents(selection, null);
+			return;
+		}
+
+		final ProgressMonitor monitor = new ProgressMonitor(c,
+				"Copying the table", null, 0, selection.rows.length);
+		final Timer timer = new Timer(PROGRESS_MILLIS, new ActionListener() {
+
+			public void actionPerformed(ActionEvent e) {
+				if (monitor.isCanceled())
+					selection.cancel();
+				else
+					monitor.setProgress(selection.formatted);
+			}
+		});
+		timer.start();
+		new Thread("clipboard") {
+
+			public void run() {
+				String error = null;
+				try {
+					clip.setContents(selection, null);
+				} catch (IllegalStateException e) {
+					error = "The clipboard is not available";
+				} finally {
+					final String message = error;
+					SwingUtilities.invokeLater(new Runnable() {
+
+						public void run() {
+							timer.stop();
+							monitor.close();
+							if (message != null)
+								JOptionPane.showMessageDialog(c, message,
+										"Copy", JOptionPane.ERROR_MESSAGE);
+						}
+					});
+				}
+			}
+		}.start();
+	}
+
+	/**
+	 * @see TransferHandler#createTransferable(JComponent)
+	 */
+	protected Transferable createTransferable(JComponent c) {
+		JTable table = (JTable) c;
+		if (!(table.getModel() instanceof CobwebTableModel))
+			return null;
+		CobwebTableModel model = (CobwebTableModel) table.getModel();
+
+		int[] rows;
+		if (table.getRowSelectionAllowed()) {
+			rows = table.getSelectedRows();
+		} else {
+			rows = new int[table.getRowCount()];
+			for (int i = 0; i < rows.length; i++)
+				rows[i] = i;
+		}
+		int[] columns;
+		if (table.getColumnSelectionAllowed()) {
+			columns = table.getSelectedColumns();
+		} else {
+			columns = new int[table.getColumnCount()];
+			for (int i = 0; i < columns.length; i++)
+				columns[i] = i;
+		}
+		if (rows.length == 0 || columns.length == 0)
+			return null;
+
+		OrbitView[] views = new OrbitView[columns.length];
+		Orbit orbit = null;
+		for (int i = 0; i < columns.length; i++) {
+			views[i] = model.getColumnView(table
+					.convertColumnIndexToModel(columns[i]));
+			if (views[i] != null)
+				orbit = views[i].getOrbit();
+		}
+		return new TableSelection(rows, views, orbit);
+	}
+
+	/**
+	 * the rows and columns that were selected, with their views taken at the
+	 * time of the copy
+	 */
+	private static final class TableSelection implements Transferable {
+
+		private final int[] rows;
+
+		private final OrbitView[] views;
+
+		private final Orbit orbit;
+
+		private final int generation;
+
+		/**
+		 * the rows formatted by the stream read last
+		 */
+		private volatile int formatted;
+
+		private volatile boolean cancelled;
+
+		TableSelection(int[] rows, OrbitView[] views, Orbit orbit) {
+			this.rows = rows;
+			this.views = views;
+			this.orbit = orbit;
+			this.generation = orbit == null ? 0 : orbit.getGeneration();
+		}
+
+		public DataFlavor[] getTransferDataFlavors() {
+			if (rows.length > STRING_ROW_LIMIT)
+				return new DataFlavor[] { READER_FLAVOR, STREAM_FLAVOR };
+			return new DataFlavor[] { READER_FLAVOR, STREAM_FLAVOR,
+					DataFlavor.stringFlavor };
+		}
+
+		public boolean isDataFlavorSupported(DataFlavor flavor) {
+			for (DataFlavor f : getTransferDataFlavors())
+				if (f.equals(flavor))
+					return true;
+			return false;
+		}
+
+		public Object getTransferData(DataFlavor flavor)
+				throws UnsupportedFlavorException, IOException {
+			if (!isDataFlavorSupported(flavor))
+				throw new UnsupportedFlavorException(flavor);
+			if (flavor.equals(STREAM_FLAVOR))
+				return new RowStream(this);
+			Reader reader = new InputStreamReader(new RowStream(this), ASCII);
+			if (flavor.equals(READER_FLAVOR))
+				return reader;
+			try {
+				StringBuilder text = new StringBuilder();
+				char[] buffer = new char[8192];
+				int n;
+				while ((n = reader.read(buffer)) > 0)
+					text.append(buffer, 0, n);
+				return text.toString();
+			} finally {
+				reader.close();
+			}
+		}
+
+		/**
+		 * append rows from..to - 1 of the selection, one line each
+		 * 
+		 * @throws IOException
+		 *             if the orbit has changed since the copy
+		 */
+		void format(int from, int to, StringBuilder out) throws IOException {
+			for (int i = from; i < to; i++) {
+				int row = rows[i];
+				for (int j = 0; j < views.length; j++) {
+					if (j > 0)
+						out.append('\t');
+					OrbitView view = views[j];
+					if (view == null)
+						out.append(row);
+					else if (row < view.size())
+						out.append(view.get(row));
+				}
+				out.append('\n');
+			}
+			if (orbit != null && orbit.getGeneration() != generation)
+				throw new IOException("the table changed while it was copied");
+			if (cancelled)
+				throw new IOException("the copy was cancelled");
+			formatted = to;
+		}
+
+		/**
+		 * make every stream of the selection fail from its next chunk on
+		 */
+		void cancel() {
+			cancelled = true;
+		}
+	}
+
+	/**
+	 * the formatted rows of a {@link TableSelection}, formatted by a thread
+	 * of their own that is started by the first read and stopped by close
+	 */
+	private static final class RowStream extends InputStream {
+
+		private final TableSelection selection;
+
+		private final BlockingQueue<byte[]> chunks = new ArrayBlockingQueue<byte[]>(
+				CHUNKS_AHEAD);
+
+		private Thread formatter;
+
+		private volatile IOException failure;
+
+		private byte[] chunk;
+
+		private int position;
+
+		RowStream(TableSelection selection) {
+			this.selection = selection;
+		}
+
+		public int read() throws IOException {
+			if (!fill())
+				return -1;
+			return chunk[position++] & 0xff;
+		}
+
+		public int read(byte[] b, int off, int len) throws IOException {
+			if (len == 0)
+				return 0;
+			if (!fill())
+				return -1;
+			int n = Math.min(len, chunk.length - position);
+			System.arraycopy(chunk, position, b, off, n);
+			position += n;
+			return n;
+		}
+
+		public int available() {
+			return chunk == null || chunk == END ? 0 : chunk.length - position;
+		}
+
+		public void close() {
+			if (formatter != null)
+				formatter.interrupt();
+			chunk = END;
+		}
+
+		/**
+		 * make sure there is something left to read in the current chunk
+		 * 
+		 * @return false at the end of the stream
+		 */
+		private boolean fill() throws IOException {
+			if (formatter == null)
+				start();
+			while (chunk != END && position == chunk.length) {
+				try {
+					chunk = chunks.take();
+				} catch (InterruptedException e) {
+					close();
+					throw new InterruptedIOException();
+				}
+				position = 0;
+			}
+			if (chunk == END && failure != null)
+				throw failure;
+			return chunk != END;
+		}
+
+		private void start() {
+			chunk = new byte[0];
+			position = 0;
+			formatter = new Thread("table copy") {
+
+				public void run() {
+					int[] rows = selection.rows;
+					StringBuilder text = new StringBuilder();
+					boolean closed = false;
+					try {
+						for (int i = 0; i < rows.length; i += ROWS_PER_CHUNK) {
+							text.setLength(0);
+							selection.format(i, Math.min(i + ROWS_PER_CHUNK,
+									rows.length), text);
+							chunks.put(text.toString().getBytes(ASCII));
+						}
+					} catch (IOException e) {
+						failure = e;
+					} catch (InterruptedException e) {
+						// the reader closed the stream
+						closed = true;
+					} catch (RuntimeException e) {
+						failure = new IOException("the table could not be copied",
+								e);
+					} catch (Error e) {
+						failure = new IOException("the table could not be copied",
+								e);
+						throw e;
+					} finally {
+						// however the formatting ends, the reader must not wait
+						if (!closed)
+							end();
+					}
+				}
+
+				private void end() {
+					try {
+						chunks.put(END);
+					} catch (InterruptedException e) {
+					}
+				}
+			};
+			formatter.setDaemon(true);
+			formatter.start();
+		}
+	}
+}
@@ -0,0 +1,390 @@
+/*
+ * Cobweb Plot 2008: A function iteration and cobweb plot visualization tool
+ * Copyright (C) 2008 Ball State University
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package edu.bsu.math.cobweb;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+import EDU.emporia.mathbeans.SymbolicFunction;
+import EDU.emporia.mathtools.Graphable_error;
+import EDU.emporia.mathtools.MathFunction;
+
+/**
+ * a function of x whose formula has been optimized before it is evaluated.
+ * the formula is read by {@link ExpressionParser}, which folds constants,
+ * turns integer powers into multiplications and cancels identities, and then
+ * every subexpression used more than once is given a temporary so it is
+ * computed only once. this matters most for the kth iterate, where the
+ * formula of f is repeated many times over.
+ * 
+ * the formula is always parsed by SymbolicFunction as well, which decides
+ * whether it is valid. if it can not be optimized, or the optimized form does
+ * not agree with SymbolicFunction at a few sample points, the
+ * SymbolicFunction is evaluated instead. an optimized function may be
+ * evaluated by several threads at once; otherwise the MathToolKit rules
+ * apply.
+ * 
+ * a {@link TabulatedFunction} applied some number of times is a
+ * {@link CompiledFunction} too, so a map given by data can take the place of
+ * a formula anywhere. it counts as optimized.
+ * 
+ * a formula with a parameter such as r can be compiled once for a whole
+ * family of maps, as for a bifurcation diagram. the parameter is kept in the
+ * last of the temporaries, and each member of the family shares the
+ * optimized formula and only differs in that value.
+ */
+final class CompiledFunction extends MathFunction {
+
+	private static final double[] SAMPLES = { 0, 0.1, 0.25, 0.5, 0.75, 0.9, 1,
+			-0.5, -1, 1.5, 2, 3.7, -10, 100 };
+
+	private static final double TOLERANCE = 1e-9;
+
+	/**
+	 * the values of a parameter at which a family is checked
+	 */
+	private static final double[] PARAMETER_SAMPLES = { -1, 0.5, 2.5, 3.9 };
+
+	private final String formula;
+
+	private final SymbolicFunction symbolic;
+
+	private final Expression[] temporaries;
+
+	private final Expression result;
+
+	/**
+	 * the formula with its parameter, the name of the parameter and its value,
+	 * or null, null and 0 for a formula in x alone
+	 */
+	private final String family, parameter;
+
+	private final double value;
+
+	/**
+	 * the number of values kept during an evaluation, the temporaries and
+	 * then the parameter
+	 */
+	private final int slots;
+
+	/**
+	 * the values of the temporaries, one array for each thread that
+	 * evaluates the function, so an evaluation allocates nothing
+	 */
+	private final ThreadLocal<double[]> scratch = new ThreadLocal<double[]>() {
+
+		protected double[] initialValue() {
+			return new double[slots];
+		}
+	};
+
+	private final TabulatedFunction table;
+
+	private final int times;
+
+	private CompiledFunction(String formula, SymbolicFunction symbolic,
+			Expression[] temporaries, Expression result) {
+		this(formula, symbolic, temporaries, result, null, null, 0);
+	}
+
+	private CompiledFunction(String formula, SymbolicFunction symbolic,
+			Expression[] temporaries, Expression result, String family,
+			String parameter, double value) {
+		this.formula = formula;
+		this.symbolic = symbolic;
+		this.temporaries = temporaries;
+		this.result = result;
+		this.family = family;
+		this.parameter = parameter;
+		this.value = value;
+		slots = temporaries == null ? 0 : temporaries.length
+				+ (parameter == null ? 0 : 1);
+		table = null;
+		times = 0;
+		setTitle("y=" + formula);
+	}
+
+	private CompiledFunction(String formula, TabulatedFunction table, int times) {
+		this.formula = formula;
+		this.table = table;
+		this.times = times;
+		symbolic = null;
+		temporaries = null;
+		result = null;
+		family = null;
+		parameter = null;
+		value = 0;
+		slots = 0;
+		setTitle("y=" + formula);
+	}
+
+	/**
+	 * @param formula
+	 *            the formula that names the table
+	 * @param table
+	 *            a {@link TabulatedFunction}
+	 * @param k
+	 *            the number of times the table is applied
+	 * @return the function that applies the table k times
+	 */
+	static CompiledFunction tabulated(String formula, TabulatedFunction table,
+			int k) {
+		return new CompiledFunction(formula, table, Math.max(1, k));
+	}
+
+	/**
+	 * parse and optimize a formula
+	 * 
+	 * @param formula
+	 *            a formula in x
+	 * @return the {@link CompiledFunction}
+	 * @throws Graphable_error
+	 *             if SymbolicFunction can not parse the formula
+	 */
+	static CompiledFunction compile(String formula) throws Graphable_error {
+		SymbolicFunction symbolic = new SymbolicFunction();
+		symbolic.setFormula(formula);
+		Expression e;
+		try {
+			e = ExpressionParser.parse(formula, new Expression.Builder());
+		} catch (Graphable_error unsupported) {
+			return new CompiledFunction(formula, symbolic, null, null);
+		}
+
+		List<Expression> temporaries = new ArrayList<Expression>();
+		Map<Expression, Integer> uses = new IdentityHashMap<Expression, Integer>();
+		count(e, uses);
+		Expression result = schedule(e, uses,
+				new IdentityHashMap<Expression, Expression>(), temporaries);
+		CompiledFunction f = new CompiledFunction(formula, symbolic,
+				temporaries.toArray(new Expression[temporaries.size()]),
+				result);
+		for (double x : SAMPLES) {
+			double expected = symbolic.functionValue(x);
+			double actual = f.functionValue(x);
+			if (!agree(expected, actual))
+				return new CompiledFunction(formula, symbolic, null, null);
+		}
+		return f;
+	}
+
+	/**
+	 * parse and optimize a formula in x and a parameter once for every value
+	 * of the parameter. the family is checked against the formula compiled
+	 * with the parameter written out at a few values.
+	 * 
+	 * @param formula
+	 *            a formula in x and the parameter
+	 * @param parameter
+	 *            the name of the parameter
+	 * @return the family, to be given a value with {@link #at(double)}, or
+	 *         null if the formula can not be optimized with the parameter
+	 * @throws Graphable_error
+	 *             if SymbolicFunction can not parse the formula with the
+	 *             parameter written out
+	 */
+	static CompiledFunction compile(String formula, String parameter)
+			throws Graphable_error {
+		Expression e;
+		try {
+			e = ExpressionParser.parse(formula, parameter,
+					new Expression.Builder());
+		} catch (Graphable_error unsupported) {
+			return null;
+		}
+
+		List<Expression> temporaries = new ArrayList<Expression>();
+		Map<Expression, Integer> uses = new IdentityHashMap<Expression, Integer>();
+		count(e, uses);
+		Expression result = schedule(e, uses,
+				new IdentityHashMap<Expression, Expression>(), temporaries);
+		CompiledFunction family = new CompiledFunction(formula, null,
+				temporaries.toArray(new Expression[temporaries.size()]),
+				result, formula, parameter, 0);
+		for (double p : PARAMETER_SAMPLES) {
+			CompiledFunction written = compile(substitute(formula, parameter,
+					p));
+			if (!written.isOptimized())
+				return null;
+			CompiledFunction member = family.at(p);
+			for (double x : SAMPLES)
+				if (!agree(written.functionValue(x), member.functionValue(x)))
+					return null;
+		}
+		return family;
+	}
+
+	/**
+	 * @param formula
+	 *            a formula with a parameter
+	 * @param parameter
+	 *            the name of the parameter
+	 * @param value
+	 *            the value of the parameter
+	 * @return the formula with the value written in place of the parameter
+	 */
+	static String substitute(String formula, String parameter, double value) {
+		return formula.replaceAll("(?<![A-Za-z])" + Pattern.quote(parameter)
+				+ "(?![A-Za-z])", "("
+				+ BigDecimal.valueOf(value).toPlainString() + ")");
+	}
+
+	/**
+	 * @param value
+	 *            a value of the parameter
+	 * @return the member of the family of this function with the parameter
+	 *         at the value, which shares its optimized formula
+	 * @throws IllegalStateException
+	 *             if the function was not compiled with a parameter
+	 */
+	CompiledFunction at(double value) {
+		if (family == null)
+			throw new IllegalStateException("no parameter: " + formula);
+		return new CompiledFunction(substitute(family, parameter, value), null,
+				temporaries, result, family, parameter, value);
+	}
+
+	/**
+	 * count how many times each node is used by the nodes above it
+	 */
+	private static void count(Expression e, Map<Expression, Integer> uses) {
+		for (Expression child : e.children()) {
+			Integer n = uses.get(child);
+			uses.put(child, n == null ? 1 : n + 1);
+			if (n == null)
+				count(child, uses);
+		}
+	}
+
+	/**
+	 * rebuild the tree below e, replacing every node used more than once with
+	 * an {@link Expression.Temporary} that is computed before anything that
+	 * reads it
+	 */
+	private static Expression schedule(Expression e,
+			Map<Expression, Integer> uses, Map<Expression, Expression> done,
+			List<Expression> temporaries) {
+		Expression scheduled = done.get(e);
+		if (scheduled != null)
+			return scheduled;
+		Expression[] children = e.children();
+		if (children.length == 0)
+			return e;
+		for (int i = 0; i < children.length; i++)
+			children[i] = schedule(children[i], uses, done, temporaries);
+		scheduled = e.with(children);
+		Integer n = uses.get(e);
+		if (n != null && n > 1) {
+			temporaries.add(scheduled);
+			scheduled = new Expression.Temporary(temporaries.size() - 1);
+		}
+		done.put(e, scheduled);
+		return scheduled;
+	}
+
+	private static boolean agree(double expected, double actual) {
+		if (Double.isNaN(expected) || Double.isNaN(actual))
+			return Double.isNaN(expected) && Double.isNaN(actual);
+		if (expected == actual)
+			return true;
+		return Math.abs(expected - actual) <= TOLERANCE
+				* Math.max(1, Math.max(Math.abs(expected), Math.abs(actual)));
+	}
+
+	public double functionValue(double x) {
+		if (table != null) {
+			for (int i = 0; i < times; i++)
+				x = table.functionValue(x);
+			return x;
+		}
+		if (result == null)
+			return symbolic.functionValue(x);
+		double[] t = slots == 0 ? null : scratch.get();
+		if (parameter != null)
+			t[slots - 1] = value;
+		for (int i = 0; i < temporaries.length; i++)
+			t[i] = temporaries[i].value(x, t);
+		return result.value(x, t);
+	}
+
+	/**
+	 * @return the formula as given
+	 */
+	String getFormula() {
+		return formula;
+	}
+
+	/**
+	 * @return whether the formula was optimized, in which case the function
+	 *         may be evaluated by several threads at once
+	 */
+	boolean isOptimized() {
+		return result != null || table != null;
+	}
+
+	/**
+	 * @return the {@link TabulatedFunction} applied, or null for a formula
+	 */
+	TabulatedFunction getTable() {
+		return table;
+	}
+
+	/**
+	 * @return the number of operations in one evaluation, a lookup in a table
+	 *         counting as one, or -1 if the formula was not optimized
+	 */
+	int getOperationCount() {
+		if (table != null)
+			return times;
+		if (result == null)
+			return -1;
+		int n = 0;
+		for (Expression e : temporaries)
+			n += operations(e);
+		return n + operations(result);
+	}
+
+	private static int operations(Expression e) {
+		Expression[] children = e.children();
+		int n = children.length == 0 ? 0 : 1;
+		for (Expression child : children)
+			n += operations(child);
+		return n;
+	}
+
+	/**
+	 * @return the optimized formula, temporaries first, or null if the formula
+	 *         was not optimized
+	 */
+	String getOptimized() {
+		if (table != null)
+			return times == 1 ? table.toString() : table + ", applied "
+					+ times + " times";
+		if (result == null)
+			return null;
+		StringBuilder text = new StringBuilder();
+		for (int i = 0; i < temporaries.length; i++)
+			text.append("t").append(i).append(" = ").append(temporaries[i])
+					.append("; ");
+		return text.append(result).toString();
+	}
+}
@@ -0,0 +1,231 @@
+/*
+ * Cobweb Plot 2008: A function iteration and cobweb plot visualization tool
+ * Copyright (C) 2008 Ball State University
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package edu.bsu.math.cobweb;
+
+import java.awt.geom.Path2D;
+
+import EDU.emporia.mathtools.MathFunction;
+
+/**
+ * samples a function across the width of a {@link CobwebRenderer} only as
+ * densely as the curve needs. the function is evaluated every
+ * {@link #INITIAL_COLUMNS} pixel columns, and each interval is cut in half
+ * until its middle lies within {@link #FLATNESS} of a pixel of the straight
+ * line between its ends. flat stretches cost about one evaluation every two
+ * columns, while the steep, tightly folded parts of f<sup>k</sup> get as many
+ * as {@link #MAX_EVALUATIONS_PER_COLUMN}.
+ * 
+ * an interval that can not be made flat is a jump when its rise stops
+ * shrinking as it is halved, and the path is broken there instead of
+ * drawing a vertical line; a pole, where the function runs off to infinity,
+ * is found the same way. the edges of the domain, where the function stops
+ * being finite, are found to within {@link #MIN_WIDTH} of a pixel.
+ */
+final class CurveSampler {
+
+	/**
+	 * the pixel columns between the first samples
+	 */
+	static final int INITIAL_COLUMNS = 4;
+
+	/**
+	 * how far in pixels the middle of an interval may be from a straight line
+	 */
+	static final double FLATNESS = 0.25;
+
+	/**
+	 * the narrowest interval in pixels
+	 */
+	static final double MIN_WIDTH = 1.0 / 1024;
+
+	/**
+	 * the most evaluations spent on one pixel column on average
+	 */
+	static final int MAX_EVALUATIONS_PER_COLUMN = 32;
+
+	/**
+	 * an interval whose rise in pixels is no smaller than this fraction of
+	 * the rise of the interval it was cut from has stalled
+	 */
+	private static final double STALL_RATIO = 0.75;
+
+	/**
+	 * the number of halvings in a row an interval must stall to be a jump
+	 */
+	private static final int STALLS_FOR_JUMP = 4;
+
+	private final CobwebRenderer renderer;
+
+	private final MathFunction f;
+
+	private final double xMin, dx, yMax, dy;
+
+	private Path2D.Float path;
+
+	private boolean drawing;
+
+	private int evaluations, budget;
+
+	/**
+	 * construct a {@link CurveSampler}
+	 * 
+	 * @param renderer
+	 *            the {@link CobwebRenderer} whose zoom and size to sample for
+	 * @param f
+	 *            the {@link MathFunction} to sample
+	 */
+	public CurveSampler(CobwebRenderer renderer, MathFunction f) {
+		this.renderer = renderer;
+		this.f = f;
+		ZoomLevel zoom = renderer.getZoom();
+		xMin = zoom.xMin;
+		dx = (zoom.xMax - zoom.xMin) / renderer.getWidth();
+		yMax = zoom.yMax;
+		dy = renderer.getHeight() / (zoom.yMax - zoom.yMin);
+	}
+
+	/**
+	 * @return the path of the function in pixel coordinates
+	 */
+	Path2D.Float sample() {
+		int width = renderer.getWidth();
+		path = new Path2D.Float(Path2D.WIND_NON_ZERO, width / 2 + 2);
+		drawing = false;
+		evaluations = 0;
+		double a = 0, ya = evaluate(0);
+		point(a, ya);
+		while (a < width) {
+			double b = Math.min(a + INITIAL_COLUMNS, width);
+			double yb = evaluate(b);
+			budget = evaluations + (int) (b - a) * MAX_EVALUATIONS_PER_COLUMN;
+			refine(a, ya, b, yb, 0);
+			a = b;
+			ya = yb;
+		}
+		return path;
+	}
+
+	/**
+	 * @return the number of times the function was evaluated
+	 */
+	int getEvaluations() {
+		return evaluations;
+	}
+
+	/**
+	 * add the curve over an interval to the path, the point at a already
+	 * being on it
+	 * 
+	 * @param stalls
+	 *            the number of halvings in a row the rise of the interval
+	 *            has failed to shrink
+	 */
+	private void refine(double a, double ya, double b, double yb, int stalls) {
+		boolean finiteA = CobwebRenderer.isFinite(ya);
+		boolean finiteB = CobwebRenderer.isFinite(yb);
+		if (b - a <= MIN_WIDTH || evaluations >= budget) {
+			if (!finiteA || !finiteB || isJump(a, ya, b, yb, stalls))
+				drawing = false;
+			point(b, yb);
+			return;
+		}
+		if (!finiteA && !finiteB) {
+			// not defined here, or only on a part too small to find
+			drawing = false;
+			return;
+		}
+
+		double m = (a + b) / 2, ym = evaluate(m);
+		int stallsA = 0, stallsB = 0;
+		if (finiteA && finiteB && CobwebRenderer.isFinite(ym)) {
+			double da = toDevice(ya), db = toDevice(yb), dm = toDevice(ym);
+			if (Math.abs(dm - (da + db) / 2) <= FLATNESS) {
+				point(b, yb);
+				return;
+			}
+			double rise = Math.abs(db - da);
+			if (rise > 1) {
+				if (Math.abs(dm - da) >= STALL_RATIO * rise)
+					stallsA = stalls + 1;
+				if (Math.abs(db - dm) >= STALL_RATIO * rise)
+					stallsB = stalls + 1;
+			}
+		}
+		refine(a, ya, m, ym, stallsA);
+		refine(m, ym, b, yb, stallsB);
+	}
+
+	/**
+	 * follow the steeper half of an interval down to {@link #MIN_WIDTH}. this
+	 * costs one evaluation per halving, so it is affordable even once the
+	 * budget is spent.
+	 * 
+	 * @return true if the rise stopped shrinking, so the interval holds a
+	 *         jump or a pole
+	 */
+	private boolean isJump(double a, double ya, double b, double yb,
+			int stalls) {
+		double da = toDevice(ya), db = toDevice(yb);
+		while (b - a > MIN_WIDTH) {
+			double rise = Math.abs(db - da);
+			if (rise <= 1)
+				return false;
+			double m = (a + b) / 2, ym = evaluate(m);
+			if (!CobwebRenderer.isFinite(ym))
+				return true;
+			double dm = toDevice(ym);
+			double left = Math.abs(dm - da), right = Math.abs(db - dm);
+			if (left >= right) {
+				b = m;
+				db = dm;
+			} else {
+				a = m;
+				da = dm;
+			}
+			stalls = Math.max(left, right) >= STALL_RATIO * rise ? stalls + 1
+					: 0;
+		}
+		return stalls >= STALLS_FOR_JUMP;
+	}
+
+	private double evaluate(double column) {
+		evaluations++;
+		return f.functionValue(xMin + column * dx);
+	}
+
+	private double toDevice(double y) {
+		return (yMax - y) * dy;
+	}
+
+	/**
+	 * add a point to the path, starting a new piece if the pen is up, or
+	 * lift the pen if the value is not finite
+	 */
+	private void point(double column, double y) {
+		if (!CobwebRenderer.isFinite(y)) {
+			drawing = false;
+			return;
+		}
+		float px = (float) column, py = (float) renderer.yToDevice(y);
+		if (drawing)
+			path.lineTo(px, py);
+		else
+			path.moveTo(px, py);
+		drawing = true;
+	}
+}
@@ -0,0 +1,673 @@
+/*
+ * Cobweb Plot 2008: A function iteration and cobweb plot visualization tool
+ * Copyright (C) 2008 Ball State University
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package edu.bsu.math.cobweb;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import EDU.emporia.mathtools.MiscFunctions;
+
+/**
+ * a node of an optimized formula. nodes never change once built, so one
+ * expression can be evaluated by any number of threads at once. a
+ * subexpression used more than once is computed a single time into the array
+ * of temporaries and read back through a {@link Temporary}.
+ * 
+ * the operators are numbered and evaluated exactly as in the MathToolKit
+ * Expr, so an optimized formula gives the values SymbolicFunction would.
+ */
+abstract class Expression {
+
+	static final int ADD = 0, SUB = 1, MUL = 2, DIV = 3, POW = 4, MOD = 5,
+			LTH = 6, LEQ = 7, GTH = 8, GEQ = 9, EQU = 10, NEQ = 11, AND = 12,
+			ORR = 13;
+
+	static final int ABS = 100, ACOS = 101, ASIN = 102, ATAN = 103,
+			CEIL = 104, COS = 105, EXP = 106, FLOOR = 107, LOG = 108,
+			NEG = 109, ROUND = 110, SIN = 111, SQRT = 112, TAN = 113,
+			LOG10 = 114, FACT = 115;
+
+	/**
+	 * the largest integer power turned into multiplications
+	 */
+	static final int MAX_POWER = 64;
+
+	private static final Expression[] NONE = new Expression[0];
+
+	private static final String[] SYMBOLS = { "+", "-", "*", "/", "^", "%",
+			"<", "<=", ">", ">=", "==", "!=", "&", "|" };
+
+	private static final int[] PRECEDENCE = { 10, 10, 20, 20, 30, 20, 8, 8,
+			8, 8, 6, 6, 4, 2 };
+
+	private static final String[] NAMES = { "abs", "acos", "asin", "atan",
+			"ceil", "cos", "exp", "floor", "log", "-", "round", "sin", "sqrt",
+			"tan", "log10", "fact" };
+
+	/**
+	 * the binding strength used when printing leaves and function calls
+	 */
+	private static final int ATOM = 100;
+
+	private final int hash;
+
+	Expression(int hash) {
+		this.hash = hash;
+	}
+
+	/**
+	 * @param x
+	 *            the value of x
+	 * @param t
+	 *            the temporaries computed so far
+	 * @return the value of the expression
+	 */
+	abstract double value(double x, double[] t);
+
+	/**
+	 * @return the subexpressions of this expression
+	 */
+	Expression[] children() {
+		return NONE;
+	}
+
+	/**
+	 * @param children
+	 *            new subexpressions, in the order of {@link #children()}
+	 * @return this expression with its subexpressions replaced
+	 */
+	Expression with(Expression[] children) {
+		return this;
+	}
+
+	/**
+	 * @return how tightly the printed form binds, as in the Parser
+	 */
+	int precedence() {
+		return ATOM;
+	}
+
+	public final int hashCode() {
+		return hash;
+	}
+
+	static double apply(int op, double a) {
+		switch (op) {
+		case ABS:
+			return Math.abs(a);
+		case ACOS:
+			return Math.acos(a);
+		case ASIN:
+			return Math.asin(a);
+		case ATAN:
+			return Math.atan(a);
+		case CEIL:
+			return Math.ceil(a);
+		case COS:
+			return Math.cos(a);
+		case EXP:
+			return Math.exp(a);
+		case FLOOR:
+			return Math.floor(a);
+		case LOG:
+			return Math.log(a);
+		case NEG:
+			return -a;
+		case ROUND:
+			return Math.round(a);
+		case SIN:
+			return Math.sin(a);
+		case SQRT:
+			return Math.sqrt(a);
+		case TAN:
+			return Math.tan(a);
+		case LOG10:
+			return Math.log(a) * 0.4342944819032518;
+		case FACT:
+			return MiscFunctions.fact(a);
+		default:
+			throw new IllegalArgumentException("unknown function " + op);
+		}
+	}
+
+	static double apply(int op, double a, double b) {
+		switch (op) {
+		case ADD:
+			return a + b;
+		case SUB:
+			return a - b;
+		case MUL:
+			return a * b;
+		case DIV:
+			return a / b;
+		case POW:
+			return Math.pow(a, b);
+		case MOD:
+			return a % b;
+		case LTH:
+			return a < b ? 1 : 0;
+		case LEQ:
+			return a <= b ? 1 : 0;
+		case GTH:
+			return a > b ? 1 : 0;
+		case GEQ:
+			return a >= b ? 1 : 0;
+		case EQU:
+			return a == b ? 1 : 0;
+		case NEQ:
+			return a != b ? 1 : 0;
+		case AND:
+			return a != 0 && b != 0 ? 1 : 0;
+		case ORR:
+			return a != 0 || b != 0 ? 1 : 0;
+		default:
+			throw new IllegalArgumentException("unknown operator " + op);
+		}
+	}
+
+	private static String format(double c) {
+		if (c == Math.rint(c) && Math.abs(c) < 1e15)
+			return Long.toString((long) c);
+		return Double.toString(c);
+	}
+
+	private static String operand(Expression e, int precedence) {
+		return e.precedence() < precedence ? "(" + e + ")" : e.toString();
+	}
+
+	private static boolean commutes(int op) {
+		return op == ADD || op == MUL || op == EQU || op == NEQ || op == AND
+				|| op == ORR;
+	}
+
+	/**
+	 * a number
+	 */
+	static final class Constant extends Expression {
+
+		final double value;
+
+		Constant(double value) {
+			super(Double.valueOf(value).hashCode());
+			this.value = value;
+		}
+
+		double value(double x, double[] t) {
+			return value;
+		}
+
+		int precedence() {
+			// the Parser reads negative numbers as negation
+			return value < 0 || 1 / value < 0 ? 15 : ATOM;
+		}
+
+		public boolean equals(Object o) {
+			return o instanceof Constant
+					&& Double.doubleToLongBits(((Constant) o).value) == Double
+							.doubleToLongBits(value);
+		}
+
+		public String toString() {
+			return format(value);
+		}
+	}
+
+	/**
+	 * the variable x
+	 */
+	static final class Variable extends Expression {
+
+		static final Variable X = new Variable();
+
+		private Variable() {
+			super(31);
+		}
+
+		double value(double x, double[] t) {
+			return x;
+		}
+
+		public String toString() {
+			return "x";
+		}
+	}
+
+	/**
+	 * a parameter of the formula such as r, which is the same for every x. its
+	 * value is kept in the last of the temporaries.
+	 */
+	static final class Parameter extends Expression {
+
+		private final String name;
+
+		Parameter(String name) {
+			super(name.hashCode() * 43 + 11);
+			this.name = name;
+		}
+
+		double value(double x, double[] t) {
+			return t[t.length - 1];
+		}
+
+		public String toString() {
+			return name;
+		}
+	}
+
+	/**
+	 * a subexpression computed earlier in the same evaluation
+	 */
+	static final class Temporary extends Expression {
+
+		final int slot;
+
+		Temporary(int slot) {
+			super(97 + slot);
+			this.slot = slot;
+		}
+
+		double value(double x, double[] t) {
+			return t[slot];
+		}
+
+		public boolean equals(Object o) {
+			return o instanceof Temporary && ((Temporary) o).slot == slot;
+		}
+
+		public String toString() {
+			return "t" + slot;
+		}
+	}
+
+	/**
+	 * a function or negation applied to one subexpression
+	 */
+	static final class Unary extends Expression {
+
+		final int op;
+
+		final Expression a;
+
+		Unary(int op, Expression a) {
+			super(op * 37 + a.hashCode());
+			this.op = op;
+			this.a = a;
+		}
+
+		double value(double x, double[] t) {
+			return apply(op, a.value(x, t));
+		}
+
+		Expression[] children() {
+			return new Expression[] { a };
+		}
+
+		Expression with(Expression[] children) {
+			return new Unary(op, children[0]);
+		}
+
+		int precedence() {
+			return op == NEG ? 15 : ATOM;
+		}
+
+		public boolean equals(Object o) {
+			if (!(o instanceof Unary))
+				return false;
+			Unary u = (Unary) o;
+			return u.op == op && u.a == a;
+		}
+
+		public String toString() {
+			if (op == NEG)
+				return "-" + operand(a, 15);
+			return NAMES[op - ABS] + "(" + a + ")";
+		}
+	}
+
+	/**
+	 * a subexpression multiplied by itself
+	 */
+	static final class Square extends Expression {
+
+		final Expression a;
+
+		Square(Expression a) {
+			super(a.hashCode() * 41 + 7);
+			this.a = a;
+		}
+
+		double value(double x, double[] t) {
+			double v = a.value(x, t);
+			return v * v;
+		}
+
+		Expression[] children() {
+			return new Expression[] { a };
+		}
+
+		Expression with(Expression[] children) {
+			return new Square(children[0]);
+		}
+
+		int precedence() {
+			return 30;
+		}
+
+		public boolean equals(Object o) {
+			return o instanceof Square && ((Square) o).a == a;
+		}
+
+		public String toString() {
+			return operand(a, ATOM) + "\u00b2";
+		}
+	}
+
+	/**
+	 * an operator applied to two subexpressions
+	 */
+	static final class Binary extends Expression {
+
+		final int op;
+
+		final Expression a, b;
+
+		Binary(int op, Expression a, Expression b) {
+			super((op * 37 + a.hashCode()) * 37 + b.hashCode());
+			this.op = op;
+			this.a = a;
+			this.b = b;
+		}
+
+		double value(double x, double[] t) {
+			double u = a.value(x, t);
+			double v = b.value(x, t);
+			switch (op) {
+			case ADD:
+				return u + v;
+			case SUB:
+				return u - v;
+			case MUL:
+				return u * v;
+			case DIV:
+				return u / v;
+			default:
+				return apply(op, u, v);
+			}
+		}
+
+		Expression[] children() {
+			return new Expression[] { a, b };
+		}
+
+		Expression with(Expression[] children) {
+			return new Binary(op, children[0], children[1]);
+		}
+
+		int precedence() {
+			return PRECEDENCE[op];
+		}
+
+		public boolean equals(Object o) {
+			if (!(o instanceof Binary))
+				return false;
+			Binary e = (Binary) o;
+			return e.op == op && e.a == a && e.b == b;
+		}
+
+		public String toString() {
+			int p = PRECEDENCE[op];
+			// ^ groups to the right, everything else to the left
+			return operand(a, op == POW ? p + 1 : p) + " " + SYMBOLS[op] + " "
+					+ operand(b, op == POW ? p : p + 1);
+		}
+	}
+
+	/**
+	 * an operator with a constant on one side, which saves evaluating a
+	 * {@link Constant} node
+	 */
+	static final class Scalar extends Expression {
+
+		final int op;
+
+		final Expression a;
+
+		final double c;
+
+		final boolean constantFirst;
+
+		Scalar(int op, double c, Expression a, boolean constantFirst) {
+			super(((op * 37 + a.hashCode()) * 37 + Double.valueOf(c)
+					.hashCode())
+					* 2 + (constantFirst ? 1 : 0));
+			this.op = op;
+			this.c = c;
+			this.a = a;
+			this.constantFirst = constantFirst;
+		}
+
+		double value(double x, double[] t) {
+			double v = a.value(x, t);
+			if (constantFirst) {
+				switch (op) {
+				case SUB:
+					return c - v;
+				case MUL:
+					return c * v;
+				case DIV:
+					return c / v;
+				default:
+					return apply(op, c, v);
+				}
+			}
+			switch (op) {
+			case ADD:
+				return v + c;
+			case SUB:
+				return v - c;
+			case DIV:
+				return v / c;
+			default:
+				return apply(op, v, c);
+			}
+		}
+
+		Expression[] children() {
+			return new Expression[] { a };
+		}
+
+		Expression with(Expression[] children) {
+			return new Scalar(op, c, children[0], constantFirst);
+		}
+
+		int precedence() {
+			return PRECEDENCE[op];
+		}
+
+		public boolean equals(Object o) {
+			if (!(o instanceof Scalar))
+				return false;
+			Scalar s = (Scalar) o;
+			return s.op == op && s.a == a && s.constantFirst == constantFirst
+					&& Double.doubleToLongBits(s.c) == Double
+							.doubleToLongBits(c);
+		}
+
+		public String toString() {
+			int p = PRECEDENCE[op];
+			Constant constant = new Constant(c);
+			if (constantFirst)
+				return operand(constant, op == POW ? p + 1 : p) + " "
+						+ SYMBOLS[op] + " " + operand(a, op == POW ? p : p + 1);
+			return operand(a, op == POW ? p + 1 : p) + " " + SYMBOLS[op] + " "
+					+ operand(constant, op == POW ? p : p + 1);
+		}
+	}
+
+	/**
+	 * builds optimized expressions. every node is made only once, so equal
+	 * subexpressions are the same object and can be found and shared later.
+	 * constants are folded, integer powers become multiplications, and
+	 * identities such as x*1 and x^1 are cancelled.
+	 * 
+	 * only rewrites that give the same double as the original are made, up to
+	 * the sign of a zero result and the rounding of integer powers. nothing is
+	 * reassociated and x*0 is kept, since x may be infinite or NaN.
+	 */
+	static final class Builder {
+
+		private final Map<Expression, Expression> nodes = new HashMap<Expression, Expression>();
+
+		private final Map<String, Parameter> parameters = new HashMap<String, Parameter>();
+
+		private Expression intern(Expression e) {
+			Expression known = nodes.get(e);
+			if (known != null)
+				return known;
+			nodes.put(e, e);
+			return e;
+		}
+
+		Expression constant(double value) {
+			return intern(new Constant(value));
+		}
+
+		Expression variable() {
+			return Variable.X;
+		}
+
+		Expression parameter(String name) {
+			Parameter p = parameters.get(name);
+			if (p == null) {
+				p = new Parameter(name);
+				parameters.put(name, p);
+			}
+			return p;
+		}
+
+		Expression unary(int op, Expression a) {
+			if (a instanceof Constant)
+				return constant(apply(op, ((Constant) a).value));
+			if (op == NEG) {
+				if (a instanceof Unary && ((Unary) a).op == NEG)
+					return ((Unary) a).a;
+				if (a instanceof Scalar && ((Scalar) a).op == MUL) {
+					Scalar s = (Scalar) a;
+					return intern(new Scalar(MUL, -s.c, s.a, true));
+				}
+			}
+			return intern(new Unary(op, a));
+		}
+
+		Expression binary(int op, Expression a, Expression b) {
+			boolean constantA = a instanceof Constant;
+			boolean constantB = b instanceof Constant;
+			if (constantA && constantB)
+				return constant(apply(op, ((Constant) a).value,
+						((Constant) b).value));
+			if (constantA && commutes(op) && op != MUL) {
+				Expression swap = a;
+				a = b;
+				b = swap;
+				constantA = false;
+				constantB = true;
+			} else if (constantB && op == MUL) {
+				Expression swap = a;
+				a = b;
+				b = swap;
+				constantA = true;
+				constantB = false;
+			}
+
+			if (constantB) {
+				double c = ((Constant) b).value;
+				switch (op) {
+				case ADD:
+				case SUB:
+					if (c == 0)
+						return a;
+					break;
+				case DIV:
+					if (c == 1)
+						return a;
+					if (c == -1)
+						return unary(NEG, a);
+					if (reciprocalExact(c))
+						return intern(new Scalar(MUL, 1 / c, a, true));
+					break;
+				case POW:
+					if (c == 0)
+						return constant(1);
+					if (c == Math.rint(c) && Math.abs(c) <= MAX_POWER) {
+						int n = (int) Math.abs(c);
+						Expression power = power(a, n);
+						return c > 0 ? power : binary(DIV, constant(1),
+								power);
+					}
+					break;
+				}
+				return intern(new Scalar(op, c, a, false));
+			}
+			if (constantA) {
+				double c = ((Constant) a).value;
+				if (op == MUL) {
+					if (c == 1)
+						return b;
+					if (c == -1)
+						return unary(NEG, b);
+				}
+				if (op == SUB && c == 0)
+					return unary(NEG, b);
+				return intern(new Scalar(op, c, b, true));
+			}
+
+			if (op == MUL && a == b)
+				return intern(new Square(a));
+			if (commutes(op)) {
+				Expression swapped = nodes.get(new Binary(op, b, a));
+				if (swapped != null)
+					return swapped;
+			}
+			return intern(new Binary(op, a, b));
+		}
+
+		/**
+		 * a to the n by repeated squaring, n &gt; 0
+		 */
+		private Expression power(Expression a, int n) {
+			if (n == 1)
+				return a;
+			if (n % 2 == 0)
+				return intern(new Square(power(a, n / 2)));
+			return binary(MUL, power(a, n - 1), a);
+		}
+
+		/**
+		 * @return whether x/c and x*(1/c) are always the same double
+		 */
+		private static boolean reciprocalExact(double c) {
+			if (c == 0 || Double.isInfinite(c) || Double.isNaN(c))
+				return false;
+			double r = 1 / c;
+			return Math.abs(c) >= Double.MIN_NORMAL
+					&& Math.abs(r) >= Double.MIN_NORMAL
+					&& !Double.isInfinite(r)
+					&& (Double.doubleToLongBits(c) & 0x000fffffffffffffL) == 0;
+		}
+	}
+}
@@ -0,0 +1,284 @@
+/*
+ * Cobweb Plot 2008: A function iteration and cobweb plot visualization tool
+ * Copyright (C) 2008 Ball State University
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package edu.bsu.math.cobweb;
+
+import java.io.IOException;
+import java.io.StreamTokenizer;
+import java.io.StringReader;
+import java.util.HashMap;
+import java.util.Map;
+
+import EDU.emporia.mathtools.Graphable_error;
+
+/**
+ * reads a formula into an {@link Expression}. the tokens, operators,
+ * precedences and functions are those of the MathToolKit Parser, so a formula
+ * means the same here as in SymbolicFunction. unlike the Parser this one
+ * keeps no static state, so formulas can be read on any thread.
+ * 
+ * the only names allowed besides the functions are x, the constants
+ * SymbolicFunction defines and a parameter named by the caller; any other
+ * name would be a variable shared by every SymbolicFunction, which can not
+ * be optimized.
+ */
+final class ExpressionParser {
+
+	private static final String[] FUNCTIONS = { "abs", "acos", "arccos",
+			"asin", "arcsin", "atan", "arctan", "ceil", "cos", "exp", "floor",
+			"log", "round", "sin", "sqrt", "tan", "log10", "fact" };
+
+	private static final int[] OPERATORS = { Expression.ABS, Expression.ACOS,
+			Expression.ACOS, Expression.ASIN, Expression.ASIN, Expression.ATAN,
+			Expression.ATAN, Expression.CEIL, Expression.COS, Expression.EXP,
+			Expression.FLOOR, Expression.LOG, Expression.ROUND, Expression.SIN,
+			Expression.SQRT, Expression.TAN, Expression.LOG10, Expression.FACT };
+
+	private static final Map<String, Double> CONSTANTS = new HashMap<String, Double>();
+
+	static {
+		CONSTANTS.put("Pi", Math.PI);
+		CONSTANTS.put("e", Math.E);
+		CONSTANTS.put("NaN", Double.NaN);
+		CONSTANTS.put("infinity", Double.POSITIVE_INFINITY);
+		CONSTANTS.put("negativeInfinity", Double.NEGATIVE_INFINITY);
+		CONSTANTS.put("true", 1.0);
+		CONSTANTS.put("false", 0.0);
+		CONSTANTS.put("maxValue", Double.MAX_VALUE);
+		CONSTANTS.put("minValue", Double.MIN_VALUE);
+	}
+
+	private final StreamTokenizer tokens;
+
+	private final Expression.Builder builder;
+
+	private final String parameter;
+
+	private ExpressionParser(String formula, String parameter,
+			Expression.Builder builder) {
+		tokens = new StreamTokenizer(new StringReader(formula));
+		tokens.ordinaryChar('/');
+		tokens.ordinaryChar('-');
+		tokens.ordinaryChar('%');
+		tokens.ordinaryChar('>');
+		tokens.ordinaryChar('<');
+		tokens.ordinaryChar('=');
+		tokens.ordinaryChar('!');
+		tokens.ordinaryChar('&');
+		tokens.ordinaryChar('|');
+		this.builder = builder;
+		this.parameter = parameter;
+	}
+
+	/**
+	 * @param formula
+	 *            a formula in x
+	 * @param builder
+	 *            the {@link Expression.Builder} that makes the nodes
+	 * @return the optimized expression
+	 * @throws Graphable_error
+	 *             if the formula is not valid or uses a name other than x
+	 *             and the constants
+	 */
+	static Expression parse(String formula, Expression.Builder builder)
+			throws Graphable_error {
+		return parse(formula, null, builder);
+	}
+
+	/**
+	 * @param formula
+	 *            a formula in x and a parameter
+	 * @param parameter
+	 *            the name of the parameter, or null for none
+	 * @param builder
+	 *            the {@link Expression.Builder} that makes the nodes
+	 * @return the optimized expression
+	 * @throws Graphable_error
+	 *             if the formula is not valid or uses a name other than x,
+	 *             the parameter and the constants
+	 */
+	static Expression parse(String formula, String parameter,
+			Expression.Builder builder) throws Graphable_error {
+		ExpressionParser parser = new ExpressionParser(formula, parameter,
+				builder);
+		parser.next();
+		Expression e = parser.expression(0);
+		if (parser.tokens.ttype != StreamTokenizer.TT_EOF)
+			throw new Graphable_error("Incomplete expression");
+		return e;
+	}
+
+	private void next() throws Graphable_error {
+		try {
+			tokens.nextToken();
+		} catch (IOException e) {
+			throw new Graphable_error("I/O error: " + e.getMessage());
+		}
+	}
+
+	private void expect(int token) throws Graphable_error {
+		if (tokens.ttype != token)
+			throw new Graphable_error("'" + (char) token + "' expected");
+		next();
+	}
+
+	/**
+	 * precedence climbing as in the Parser, including how it reads two
+	 * character operators: the token after the first character is read and
+	 * pushed back, even when the operator then binds too loosely
+	 */
+	private Expression expression(int minPrecedence) throws Graphable_error {
+		Expression left = factor();
+		while (true) {
+			int leftPrecedence, rightPrecedence, op;
+			switch (tokens.ttype) {
+			case '|':
+				leftPrecedence = 2;
+				rightPrecedence = 3;
+				op = Expression.ORR;
+				next();
+				if (tokens.ttype != '|')
+					tokens.pushBack();
+				break;
+			case '&':
+				leftPrecedence = 4;
+				rightPrecedence = 5;
+				op = Expression.AND;
+				next();
+				if (tokens.ttype != '&')
+					tokens.pushBack();
+				break;
+			case '=':
+				leftPrecedence = 6;
+				rightPrecedence = 7;
+				op = Expression.EQU;
+				next();
+				if (tokens.ttype != '=')
+					tokens.pushBack();
+				break;
+			case '!':
+				leftPrecedence = 6;
+				rightPrecedence = 7;
+				op = Expression.NEQ;
+				next();
+				if (tokens.ttype != '=')
+					tokens.pushBack();
+				break;
+			case '<':
+				leftPrecedence = 8;
+				rightPrecedence = 9;
+				next();
+				if (tokens.ttype != '=') {
+					tokens.pushBack();
+					op = Expression.LTH;
+				} else
+					op = Expression.LEQ;
+				break;
+			case '>':
+				leftPrecedence = 8;
+				rightPrecedence = 9;
+				next();
+				if (tokens.ttype != '=') {
+					tokens.pushBack();
+					op = Expression.GTH;
+				} else
+					op = Expression.GEQ;
+				break;
+			case '+':
+				leftPrecedence = 10;
+				rightPrecedence = 11;
+				op = Expression.ADD;
+				break;
+			case '-':
+				leftPrecedence = 10;
+				rightPrecedence = 11;
+				op = Expression.SUB;
+				break;
+			case '%':
+				leftPrecedence = 20;
+				rightPrecedence = 21;
+				op = Expression.MOD;
+				break;
+			case '*':
+				leftPrecedence = 20;
+				rightPrecedence = 21;
+				op = Expression.MUL;
+				break;
+			case '/':
+				leftPrecedence = 20;
+				rightPrecedence = 21;
+				op = Expression.DIV;
+				break;
+			case '^':
+				leftPrecedence = 30;
+				rightPrecedence = 30;
+				op = Expression.POW;
+				break;
+			default:
+				return left;
+			}
+			if (leftPrecedence < minPrecedence)
+				return left;
+			next();
+			left = builder.binary(op, left, expression(rightPrecedence));
+		}
+	}
+
+	private Expression factor() throws Graphable_error {
+		switch (tokens.ttype) {
+		case StreamTokenizer.TT_NUMBER: {
+			Expression e = builder.constant(tokens.nval);
+			next();
+			return e;
+		}
+		case StreamTokenizer.TT_WORD: {
+			String name = tokens.sval;
+			for (int i = 0; i < FUNCTIONS.length; i++) {
+				if (FUNCTIONS[i].equals(name)) {
+					next();
+					expect('(');
+					Expression e = expression(0);
+					expect(')');
+					return builder.unary(OPERATORS[i], e);
+				}
+			}
+			Expression e;
+			if (name.equals("x"))
+				e = builder.variable();
+			else if (name.equals(parameter))
+				e = builder.parameter(name);
+			else if (CONSTANTS.containsKey(name))
+				e = builder.constant(CONSTANTS.get(name));
+			else
+				throw new Graphable_error("Unknown variable " + name);
+			next();
+			return e;
+		}
+		case '(': {
+			next();
+			Expression e = expression(0);
+			expect(')');
+			return e;
+		}
+		case '-':
+			next();
+			return builder.unary(Expression.NEG, expression(15));
+		default:
+			throw new Graphable_error("Expected a factor");
+		}
+	}
+}
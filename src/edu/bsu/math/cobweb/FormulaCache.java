@@ -0,0 +1,221 @@
+/*
+ * Cobweb Plot 2008: A function iteration and cobweb plot visualization tool
+ * Copyright (C) 2008 Ball State University
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package edu.bsu.math.cobweb;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import EDU.emporia.mathtools.Graphable_error;
+
+/**
+ * the compiled functions of every formula used by the program, shared by all
+ * panels and the {@link OrbitServer}. formulas are looked up by their text
+ * without white space, together with k for the kth iterate, and the least
+ * recently used ones are dropped once the cache is full. a function handed
+ * out by the cache must never have its formula changed.
+ * 
+ * a formula that names a {@link TabulatedFunction} is read from its file the
+ * first time it is looked up, keeping the white space of the file name, and
+ * its kth iterate applies the same table k times. the time the file was last
+ * changed and its length are part of the key, so a file that has been
+ * changed is read again. a file is read without holding the cache, so
+ * other formulas can be looked up in the meantime.
+ */
+final class FormulaCache {
+
+	/**
+	 * the number of functions kept
+	 */
+	static final int CAPACITY = 256;
+
+	private static final FormulaCache INSTANCE = new FormulaCache();
+
+	private final Map<String, CompiledFunction> functions = new LinkedHashMap<String, CompiledFunction>(
+			16, 0.75f, true) {
+
+		private static final long serialVersionUID = -2402866203931185727L;
+
+		protected boolean removeEldestEntry(
+				Map.Entry<String, CompiledFunction> eldest) {
+			return size() > CAPACITY;
+		}
+	};
+
+	private long hits, misses;
+
+	private FormulaCache() {
+	}
+
+	/**
+	 * @return the {@link FormulaCache} of the program
+	 */
+	static FormulaCache getInstance() {
+		return INSTANCE;
+	}
+
+	/**
+	 * @param formula
+	 *            the formula of f
+	 * @return the compiled function f
+	 * @throws Graphable_error
+	 *             if the formula is not valid, or names a table that can not
+	 *             be read
+	 */
+	CompiledFunction function(String formula) throws Graphable_error {
+		return lookup(formula, 0);
+	}
+
+	/**
+	 * @param formula
+	 *            the formula of f
+	 * @param k
+	 *            the number of times f is applied
+	 * @return the compiled function f<sup>k</sup>, built by substituting f
+	 *         into itself
+	 * @throws Graphable_error
+	 *             if the formula is not valid
+	 */
+	CompiledFunction iterate(String formula, int k) throws Graphable_error {
+		return lookup(formula, Math.max(1, k));
+	}
+
+	/**
+	 * @param formula
+	 *            the formula of a family of maps, in x and a parameter
+	 * @param parameter
+	 *            the name of the parameter
+	 * @return the family compiled once for every value of the parameter, or
+	 *         null if it can only be compiled with the parameter written out
+	 * @throws Graphable_error
+	 *             if the formula is not valid
+	 * @see CompiledFunction#compile(String, String)
+	 */
+	synchronized CompiledFunction family(String formula, String parameter)
+			throws Graphable_error {
+		// a parameter is a name, so it can not be mistaken for k in the key
+		String key = normalize(formula) + "\n" + parameter;
+		if (functions.containsKey(key)) {
+			hits++;
+			return functions.get(key);
+		}
+		misses++;
+		CompiledFunction function = CompiledFunction.compile(
+				normalize(formula), parameter);
+		functions.put(key, function);
+		return function;
+	}
+
+	/**
+	 * the kth iterate is kept apart from f itself even when k is 1, so the two
+	 * are never the same object. a newline can not be part of a normalized
+	 * formula, so it separates k from the formula in the key.
+	 */
+	private CompiledFunction lookup(String formula, int k)
+			throws Graphable_error {
+		if (TabulatedFunction.isTable(formula))
+			return table(formula.trim(), k);
+		return compiled(normalize(formula), k);
+	}
+
+	/**
+	 * look up a table, reading its file if it is not cached as it is now. two
+	 * threads may both read a file, and the table of the first one is kept.
+	 */
+	private CompiledFunction table(String f, int k) throws Graphable_error {
+		File file = TabulatedFunction.file(f);
+		String key = f + "\n" + k + "\n" + file.lastModified() + "\n"
+				+ file.length();
+		synchronized (this) {
+			CompiledFunction function = functions.get(key);
+			if (function != null) {
+				hits++;
+				return function;
+			}
+			misses++;
+		}
+
+		TabulatedFunction table;
+		if (k == 0) {
+			try {
+				table = TabulatedFunction.read(f);
+			} catch (IOException e) {
+				throw new Graphable_error(e.getMessage());
+			}
+		} else {
+			table = table(f, 0).getTable();
+		}
+		CompiledFunction function = CompiledFunction.tabulated(f, table, k);
+		synchronized (this) {
+			CompiledFunction known = functions.get(key);
+			if (known != null)
+				return known;
+			functions.put(key, function);
+		}
+		return function;
+	}
+
+	private synchronized CompiledFunction compiled(String f, int k)
+			throws Graphable_error {
+		String key = f + "\n" + k;
+		CompiledFunction function = functions.get(key);
+		if (function != null) {
+			hits++;
+			return function;
+		}
+		misses++;
+
+		String kF = f;
+		for (int i = 0; i < k - 1; i++) {
+			kF = kF.replace("x", "(" + f + ")");
+		}
+		function = CompiledFunction.compile(kF);
+		functions.put(key, function);
+		return function;
+	}
+
+	/**
+	 * @return the number of lookups answered from the cache
+	 */
+	synchronized long getHits() {
+		return hits;
+	}
+
+	/**
+	 * @return the number of lookups that had to parse
+	 */
+	synchronized long getMisses() {
+		return misses;
+	}
+
+	/**
+	 * @param formula
+	 *            a formula as typed
+	 * @return the formula without white space
+	 */
+	static String normalize(String formula) {
+		StringBuilder normal = new StringBuilder(formula.length());
+		for (int i = 0; i < formula.length(); i++) {
+			char c = formula.charAt(i);
+			if (!Character.isWhitespace(c))
+				normal.append(c);
+		}
+		return normal.toString();
+	}
+}
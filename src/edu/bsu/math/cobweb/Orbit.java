@@ -0,0 +1,310 @@
+/*
+ * Cobweb Plot 2008: A function iteration and cobweb plot visualization tool
+ * Copyright (C) 2008 Ball State University
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package edu.bsu.math.cobweb;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.Arrays;
+
+import EDU.emporia.mathtools.MathFunction;
+
+/**
+ * a growable array of the values x<sub>0</sub>, x<sub>1</sub>, ... of an
+ * orbit, kept as primitive doubles. one thread may append while others read:
+ * the size is only published after the value has been stored.
+ * 
+ * the orbit can be cut back to any length at once. the values past the cut
+ * stay stored until the next value is appended, so until then they can be
+ * restored without computing them again.
+ */
+final class Orbit {
+
+	private static final int INITIAL_CAPACITY = 1024;
+
+	/**
+	 * the number of changes to the generation remembered by
+	 * {@link #unchangedSince(int)}, a power of two
+	 */
+	private static final int CHANGES = 16;
+
+	private double[] values;
+
+	private volatile int size = 0;
+
+	private volatile int generation = 0;
+
+	/**
+	 * the length of the orbit before it was cut back, or 0 if a value has
+	 * been appended since; the values up to it can be restored
+	 */
+	private volatile int stored = 0;
+
+	/**
+	 * unchanged[g % CHANGES] is the number of values at the start left as
+	 * they were by the change that made generation g
+	 */
+	private final int[] unchanged = new int[CHANGES];
+
+	/**
+	 * construct an empty {@link Orbit}
+	 */
+	public Orbit() {
+		values = new double[INITIAL_CAPACITY];
+	}
+
+	/**
+	 * iterate a function from a seed
+	 * 
+	 * @param f
+	 *            the {@link MathFunction} to iterate
+	 * @param seed
+	 *            the initial value x<sub>0</sub>
+	 * @param steps
+	 *            the number of times to apply f
+	 * @return the {@link Orbit} x<sub>0</sub> ... x<sub>steps</sub>
+	 */
+	static Orbit iterate(MathFunction f, double seed, int steps) {
+		Orbit orbit = new Orbit();
+		orbit.ensureCapacity(steps + 1);
+		double x = seed;
+		orbit.add(x);
+		for (int i = 0; i < steps; i++) {
+			x = f.functionValue(x);
+			orbit.add(x);
+		}
+		return orbit;
+	}
+
+	/**
+	 * append the next value of the orbit
+	 * 
+	 * @param value
+	 *            the value to append
+	 */
+	void add(double value) {
+		int n = size;
+		if (n == values.length)
+			ensureCapacity(n + 1);
+		values[n] = value;
+		size = n + 1;
+		if (stored > 0)
+			stored = 0;
+	}
+
+	/**
+	 * @param n
+	 *            the index of the value
+	 * @return x<sub>n</sub>
+	 */
+	double get(int n) {
+		if (n >= size)
+			throw new IndexOutOfBoundsException("n: " + n + ", size: " + size);
+		return values[n];
+	}
+
+	/**
+	 * @return the number of values in the orbit
+	 */
+	int size() {
+		return size;
+	}
+
+	/**
+	 * remove every value from the orbit
+	 */
+	void clear() {
+		size = 0;
+		stored = 0;
+		changed(0);
+	}
+
+	/**
+	 * cut the orbit back to its first values, keeping the rest stored until a
+	 * value is appended
+	 * 
+	 * @param n
+	 *            the number of values to keep
+	 */
+	void truncate(int n) {
+		int old = size;
+		if (n >= old)
+			return;
+		stored = Math.max(stored, old);
+		size = n;
+		changed(n);
+	}
+
+	/**
+	 * grow the orbit back to a length it had before it was cut back, without
+	 * computing any values
+	 * 
+	 * @param n
+	 *            the number of values wanted
+	 * @return true if the orbit now has at least n values, false if it has
+	 *         not changed because they are not stored
+	 */
+	boolean restore(int n) {
+		if (n <= size)
+			return true;
+		if (n > stored)
+			return false;
+		size = n;
+		return true;
+	}
+
+	/**
+	 * @return the length the orbit can be restored to
+	 */
+	int getStoredSize() {
+		return Math.max(size, stored);
+	}
+
+	/**
+	 * @return a number that changes whenever values already in the orbit may
+	 *         have changed; appending values leaves it alone
+	 */
+	int getGeneration() {
+		return generation;
+	}
+
+	/**
+	 * @param since
+	 *            a generation that was current earlier
+	 * @return the number of values at the start that have not changed since
+	 *         then, not counting any appended since; 0 if the generation is
+	 *         too old to tell
+	 */
+	synchronized int unchangedSince(int since) {
+		int now = generation;
+		if (now - since > CHANGES)
+			return 0;
+		int n = Integer.MAX_VALUE;
+		for (int g = since + 1; g - now <= 0; g++)
+			n = Math.min(n, unchanged[g & (CHANGES - 1)]);
+		return n;
+	}
+
+	/**
+	 * start a new generation in which only the first n values are as they
+	 * were
+	 */
+	private synchronized void changed(int n) {
+		unchanged[(generation + 1) & (CHANGES - 1)] = n;
+		generation++;
+	}
+
+	/**
+	 * take over the values of another orbit without copying them. the other
+	 * orbit must not be used afterwards.
+	 * 
+	 * @param other
+	 *            the {@link Orbit} to take the values of
+	 */
+	void replaceWith(Orbit other) {
+		size = 0;
+		stored = 0;
+		changed(0);
+		values = other.values;
+		size = other.size;
+	}
+
+	/**
+	 * make sure the orbit can hold a number of values without growing
+	 * 
+	 * @param capacity
+	 *            the number of values
+	 */
+	void ensureCapacity(int capacity) {
+		if (capacity > values.length)
+			values = Arrays.copyOf(values, Math.max(capacity,
+					values.length + (values.length >> 1)));
+	}
+
+	/**
+	 * write the values of the orbit to a channel as big-endian doubles
+	 * 
+	 * @param channel
+	 *            the {@link WritableByteChannel} to write to
+	 * @param buffer
+	 *            a {@link ByteBuffer} to copy the values through
+	 * @throws IOException
+	 *             if the values can not be written
+	 */
+	void writeTo(WritableByteChannel channel, ByteBuffer buffer)
+			throws IOException {
+		int n = size;
+		buffer.clear();
+		DoubleBuffer doubles = buffer.asDoubleBuffer();
+		for (int i = 0; i < n;) {
+			int count = Math.min(n - i, doubles.capacity());
+			doubles.clear();
+			doubles.put(values, i, count);
+			buffer.clear();
+			buffer.limit(count * 8);
+			while (buffer.hasRemaining())
+				channel.write(buffer);
+			i += count;
+		}
+	}
+
+	/**
+	 * replace the values of the orbit with doubles read from a channel
+	 * 
+	 * @param channel
+	 *            the {@link ReadableByteChannel} to read from
+	 * @param n
+	 *            the number of values to read
+	 * @param buffer
+	 *            a {@link ByteBuffer} to copy the values through
+	 * @throws IOException
+	 *             if the values can not be read
+	 */
+	void readFrom(ReadableByteChannel channel, int n, ByteBuffer buffer)
+			throws IOException {
+		size = 0;
+		stored = 0;
+		changed(0);
+		ensureCapacity(n);
+		buffer.clear();
+		DoubleBuffer doubles = buffer.asDoubleBuffer();
+		for (int i = 0; i < n;) {
+			int count = Math.min(n - i, doubles.capacity());
+			buffer.clear();
+			buffer.limit(count * 8);
+			while (buffer.hasRemaining())
+				if (channel.read(buffer) < 0)
+					throw new EOFException("orbit ended after " + i
+							+ " values");
+			doubles.clear();
+			doubles.get(values, i, count);
+			i += count;
+		}
+		size = n;
+	}
+
+	/**
+	 * @return the number of bytes held by the orbit
+	 */
+	long footprint() {
+		return 8L * values.length;
+	}
+}
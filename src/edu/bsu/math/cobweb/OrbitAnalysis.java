@@ -0,0 +1,54 @@
+/*
+ * Cobweb Plot 2008: A function iteration and cobweb plot visualization tool
+ * Copyright (C) 2008 Ball State University
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package edu.bsu.math.cobweb;
+
+/**
+ * questions about the long term behaviour of an {@link Orbit}.
+ */
+final class OrbitAnalysis {
+
+	private OrbitAnalysis() {
+	}
+
+	/**
+	 * find the period of the cycle the end of an orbit has settled on. the
+	 * period is the smallest p for which the last p values each lie within the
+	 * tolerance of the value p steps before them.
+	 * 
+	 * @param orbit
+	 *            the {@link Orbit} to look at
+	 * @param maxPeriod
+	 *            the longest period to look for
+	 * @param tolerance
+	 *            how close values must be to count as the same
+	 * @return the period, or 0 if the orbit has not settled on a cycle of at
+	 *         most maxPeriod
+	 */
+	static int period(Orbit orbit, int maxPeriod, double tolerance) {
+		int last = orbit.size() - 1;
+		for (int p = 1; p <= maxPeriod && 2 * p <= last + 1; p++) {
+			boolean cycle = true;
+			for (int i = 0; i < p && cycle; i++)
+				cycle = Math.abs(orbit.get(last - i)
+						- orbit.get(last - i - p)) <= tolerance;
+			if (cycle)
+				return p;
+		}
+		return 0;
+	}
+}
@@ -0,0 +1,427 @@
+/*
+ * Cobweb Plot 2008: A function iteration and cobweb plot visualization tool
+ * Copyright (C) 2008 Ball State University
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package edu.bsu.math.cobweb;
+
+import java.util.Arrays;
+
+/**
+ * answers questions about the values of an {@link Orbit}, or of every kth
+ * value of one through an {@link OrbitView}, without looking at all of them: where the orbit first comes within &epsilon; of a point, when
+ * it next visits an interval, and where it is smallest or largest over a
+ * range of n.
+ * 
+ * the index is a tree of the minimum and maximum of blocks of
+ * {@link #FANOUT} values, of blocks of {@link #FANOUT} blocks, and so on,
+ * with at most {@link #FANOUT} blocks at the top. the smallest and largest
+ * value of a range take O(FANOUT log n) steps. a search for a value skips
+ * every block whose values are all outside the interval, which is most of
+ * them for an orbit that converges or cycles; an orbit that is dense around
+ * the interval has to be searched block by block, but then the answer is
+ * usually close by.
+ * 
+ * the orbit may grow while it is indexed. the new values are added to the
+ * index when the next question is asked, and the index starts over when the
+ * orbit is cleared or replaced or the stride of the view changes. when the
+ * orbit is only cut back, the blocks past the cut are emptied and the one
+ * block of each level that holds the cut is worked out again, so a rewind
+ * costs O(FANOUT log n). NaN is in no interval and is neither the smallest
+ * nor the largest value.
+ */
+final class OrbitIndex {
+
+	/**
+	 * the values in a block, and the blocks in a block of the next level
+	 */
+	static final int FANOUT = 64;
+
+	private static final int SHIFT = 6;
+
+	private final Orbit orbit;
+
+	private final OrbitView view;
+
+	private int stride;
+
+	/**
+	 * mins[level][node] is the smallest value in values node << bits(level)
+	 * up to (node + 1) << bits(level)
+	 */
+	private double[][] mins = new double[0][];
+
+	private double[][] maxs = new double[0][];
+
+	private int size = 0;
+
+	private int generation;
+
+	/**
+	 * construct an {@link OrbitIndex}
+	 * 
+	 * @param orbit
+	 *            the {@link Orbit} to index
+	 */
+	public OrbitIndex(Orbit orbit) {
+		this(new OrbitView(orbit));
+	}
+
+	/**
+	 * construct an {@link OrbitIndex} of every value of an {@link OrbitView},
+	 * not just its complete rows
+	 * 
+	 * @param view
+	 *            the {@link OrbitView} to index
+	 */
+	public OrbitIndex(OrbitView view) {
+		this.view = view;
+		orbit = view.getOrbit();
+		generation = orbit.getGeneration();
+		stride = view.getStride();
+	}
+
+	/**
+	 * @return the number of values indexed so far
+	 */
+	synchronized int size() {
+		update();
+		return size;
+	}
+
+	/**
+	 * @param lo
+	 *            the smallest value wanted
+	 * @param hi
+	 *            the largest value wanted
+	 * @param from
+	 *            the first n to look at
+	 * @param to
+	 *            one past the last n to look at
+	 * @return the first n in [from, to) with lo &le; x<sub>n</sub> &le; hi,
+	 *         or -1 if there is none
+	 */
+	synchronized int firstIn(double lo, double hi, int from, int to) {
+		update();
+		from = Math.max(from, 0);
+		to = Math.min(to, size);
+		if (from >= to || !(lo <= hi))
+			return -1;
+		int top = mins.length - 1;
+		for (int node = from >> bits(top); node <= (to - 1) >> bits(top); node++) {
+			int n = first(top, node, lo, hi, from, to);
+			if (n >= 0)
+				return n;
+		}
+		return -1;
+	}
+
+	/**
+	 * @param a
+	 *            the point to come close to
+	 * @param epsilon
+	 *            how close to come
+	 * @param from
+	 *            the first n to look at
+	 * @param to
+	 *            one past the last n to look at
+	 * @return the first n in [from, to) with |x<sub>n</sub> - a| &lt;
+	 *         epsilon, or -1 if there is none
+	 */
+	int firstWithin(double a, double epsilon, int from, int to) {
+		return firstIn(Math.nextUp(a - epsilon), Math.nextDown(a + epsilon),
+				from, to);
+	}
+
+	/**
+	 * @param lo
+	 *            the smallest value wanted
+	 * @param hi
+	 *            the largest value wanted
+	 * @param from
+	 *            the first n to look at
+	 * @param to
+	 *            one past the last n to look at
+	 * @param limit
+	 *            the most returns wanted
+	 * @return every n in [from, to) with lo &le; x<sub>n</sub> &le; hi in
+	 *         order, but no more than limit of them
+	 */
+	synchronized int[] allIn(double lo, double hi, int from, int to, int limit) {
+		int[] returns = new int[Math.min(limit, 16)];
+		int count = 0;
+		int n = firstIn(lo, hi, from, to);
+		while (n >= 0 && count < limit) {
+			if (count == returns.length)
+				returns = Arrays.copyOf(returns, Math.min(limit, 2 * count));
+			returns[count++] = n;
+			n = firstIn(lo, hi, n + 1, to);
+		}
+		return Arrays.copyOf(returns, count);
+	}
+
+	/**
+	 * @param from
+	 *            the first n to look at
+	 * @param to
+	 *            one past the last n to look at
+	 * @return the first n in [from, to) where x<sub>n</sub> is smallest, or
+	 *         -1 if every value is NaN
+	 */
+	synchronized int argMin(int from, int to) {
+		return argExtreme(from, to, false);
+	}
+
+	/**
+	 * @param from
+	 *            the first n to look at
+	 * @param to
+	 *            one past the last n to look at
+	 * @return the first n in [from, to) where x<sub>n</sub> is largest, or -1
+	 *         if every value is NaN
+	 */
+	synchronized int argMax(int from, int to) {
+		return argExtreme(from, to, true);
+	}
+
+	/**
+	 * @param from
+	 *            the first n to look at
+	 * @param to
+	 *            one past the last n to look at
+	 * @return the smallest x<sub>n</sub> for n in [from, to), or NaN if every
+	 *         value is NaN
+	 */
+	synchronized double min(int from, int to) {
+		return extreme(from, to, false);
+	}
+
+	/**
+	 * @param from
+	 *            the first n to look at
+	 * @param to
+	 *            one past the last n to look at
+	 * @return the largest x<sub>n</sub> for n in [from, to), or NaN if every
+	 *         value is NaN
+	 */
+	synchronized double max(int from, int to) {
+		return extreme(from, to, true);
+	}
+
+	/**
+	 * @param n
+	 *            less than {@link #size()}
+	 * @return x<sub>n</sub>, or x<sub>nk</sub> for a view with stride k
+	 */
+	synchronized double get(int n) {
+		return value(n);
+	}
+
+	private int argExtreme(int from, int to, boolean largest) {
+		double extreme = extreme(from, to, largest);
+		return extreme == extreme ? firstIn(extreme, extreme, from, to) : -1;
+	}
+
+	private double extreme(int from, int to, boolean largest) {
+		update();
+		from = Math.max(from, 0);
+		to = Math.min(to, size);
+		double extreme = largest ? Double.NEGATIVE_INFINITY
+				: Double.POSITIVE_INFINITY;
+		boolean found = false;
+		if (from < to) {
+			int top = mins.length - 1;
+			for (int node = from >> bits(top); node <= (to - 1) >> bits(top); node++) {
+				double x = extreme(top, node, from, to, largest);
+				extreme = largest ? Math.max(extreme, x) : Math.min(extreme, x);
+			}
+			// an empty node is infinite too, so look for an infinite value
+			found = !Double.isInfinite(extreme)
+					|| firstIn(extreme, extreme, from, to) >= 0;
+		}
+		return found ? extreme : Double.NaN;
+	}
+
+	private double value(int n) {
+		return orbit.get(n * stride);
+	}
+
+	/**
+	 * @return the number of bits of n that pick a value inside a node of a
+	 *         level
+	 */
+	private static int bits(int level) {
+		return SHIFT * (level + 1);
+	}
+
+	/**
+	 * @return the first n in [from, to) under a node with a value in [lo, hi],
+	 *         or -1
+	 */
+	private int first(int level, int node, double lo, double hi, int from,
+			int to) {
+		if (mins[level][node] > hi || maxs[level][node] < lo)
+			return -1;
+		int shift = SHIFT * level;
+		int firstChild = Math.max(node << SHIFT, from >> shift);
+		int lastChild = Math.min((node << SHIFT) + FANOUT - 1, (to - 1) >> shift);
+		for (int child = firstChild; child <= lastChild; child++) {
+			if (level == 0) {
+				double x = value(child);
+				if (x >= lo && x <= hi)
+					return child;
+			} else {
+				int n = first(level - 1, child, lo, hi, from, to);
+				if (n >= 0)
+					return n;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * @return the smallest or largest value under a node with n in [from, to)
+	 */
+	private double extreme(int level, int node, int from, int to,
+			boolean largest) {
+		long start = (long) node << bits(level);
+		long end = (long) (node + 1) << bits(level);
+		if (start >= from && end <= to)
+			return largest ? maxs[level][node] : mins[level][node];
+		double extreme = largest ? Double.NEGATIVE_INFINITY
+				: Double.POSITIVE_INFINITY;
+		int shift = SHIFT * level;
+		int firstChild = Math.max(node << SHIFT, from >> shift);
+		int lastChild = Math.min((node << SHIFT) + FANOUT - 1, (to - 1) >> shift);
+		for (int child = firstChild; child <= lastChild; child++) {
+			double x = level == 0 ? value(child) : extreme(level - 1,
+					child, from, to, largest);
+			// comparisons with NaN are false, so NaN is skipped
+			if (largest ? x > extreme : x < extreme)
+				extreme = x;
+		}
+		return extreme;
+	}
+
+	/**
+	 * add the values appended to the orbit since the last question, cut the
+	 * index back if the orbit has been, or start over if it has been cleared
+	 * or replaced or the stride has changed
+	 */
+	private void update() {
+		int g = orbit.getGeneration();
+		int k = view.getStride();
+		if (g != generation || k != stride) {
+			int kept = k == stride ? orbit.unchangedSince(generation) : 0;
+			generation = g;
+			stride = k;
+			// the values of the rows below this are all unchanged
+			kept = kept == 0 ? 0 : (kept - 1) / stride + 1;
+			if (kept == 0) {
+				size = 0;
+				mins = new double[0][];
+				maxs = new double[0][];
+			} else if (kept < size) {
+				truncate(kept);
+			}
+		}
+		int n = orbit.size();
+		n = n == 0 ? 0 : (n - 1) / stride + 1;
+		if (n <= size)
+			return;
+		while (mins.length == 0 || (n - 1) >> bits(mins.length - 1) >= FANOUT)
+			addLevel();
+		for (int level = 0; level < mins.length; level++)
+			ensureNodes(level, ((n - 1) >> bits(level)) + 1);
+		for (int i = size; i < n; i++) {
+			double x = value(i);
+			for (int level = 0; level < mins.length; level++) {
+				int node = i >> bits(level);
+				if (x < mins[level][node])
+					mins[level][node] = x;
+				if (x > maxs[level][node])
+					maxs[level][node] = x;
+			}
+		}
+		size = n;
+	}
+
+	/**
+	 * forget the values from n on, n being more than 0
+	 */
+	private void truncate(int n) {
+		for (int level = 0; level < mins.length; level++) {
+			int node = (n - 1) >> bits(level);
+			Arrays.fill(mins[level], node, mins[level].length,
+					Double.POSITIVE_INFINITY);
+			Arrays.fill(maxs[level], node, maxs[level].length,
+					Double.NEGATIVE_INFINITY);
+			double min = Double.POSITIVE_INFINITY, max = Double.NEGATIVE_INFINITY;
+			if (level == 0) {
+				for (int i = node << SHIFT; i < n; i++) {
+					double x = value(i);
+					// comparisons with NaN are false, so NaN is skipped
+					if (x < min)
+						min = x;
+					if (x > max)
+						max = x;
+				}
+			} else {
+				int last = (n - 1) >> bits(level - 1);
+				for (int child = node << SHIFT; child <= last; child++) {
+					min = Math.min(min, mins[level - 1][child]);
+					max = Math.max(max, maxs[level - 1][child]);
+				}
+			}
+			mins[level][node] = min;
+			maxs[level][node] = max;
+		}
+		size = n;
+	}
+
+	/**
+	 * put a new level on top of the tree, made from the old top level
+	 */
+	private void addLevel() {
+		int level = mins.length;
+		mins = Arrays.copyOf(mins, level + 1);
+		maxs = Arrays.copyOf(maxs, level + 1);
+		mins[level] = new double[0];
+		maxs[level] = new double[0];
+		if (level == 0)
+			return;
+		double[] childMins = mins[level - 1], childMaxs = maxs[level - 1];
+		ensureNodes(level, ((childMins.length - 1) >> SHIFT) + 1);
+		for (int child = 0; child < childMins.length; child++) {
+			int node = child >> SHIFT;
+			mins[level][node] = Math.min(mins[level][node], childMins[child]);
+			maxs[level][node] = Math.max(maxs[level][node], childMaxs[child]);
+		}
+	}
+
+	/**
+	 * make room for a number of nodes on a level, new nodes being empty
+	 */
+	private void ensureNodes(int level, int nodes) {
+		int old = mins[level].length;
+		if (nodes <= old)
+			return;
+		int length = Math.max(nodes, 2 * old);
+		mins[level] = Arrays.copyOf(mins[level], length);
+		maxs[level] = Arrays.copyOf(maxs[level], length);
+		Arrays.fill(mins[level], old, length, Double.POSITIVE_INFINITY);
+		Arrays.fill(maxs[level], old, length, Double.NEGATIVE_INFINITY);
+	}
+}
@@ -0,0 +1,148 @@
+/*
+ * Cobweb Plot 2008: A function iteration and cobweb plot visualization tool
+ * Copyright (C) 2008 Ball State University
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package edu.bsu.math.cobweb;
+
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+
+import javax.swing.Timer;
+
+/**
+ * replays an orbit that has already been computed by revealing its webs step
+ * by step. each frame works out from the clock how many steps should be
+ * visible and moves the end of the webs there, so a late frame catches up in
+ * one go instead of queueing behind the others. the formula is never
+ * evaluated.
+ */
+final class OrbitPlayback implements ActionListener {
+
+	/**
+	 * the time between frames in milliseconds
+	 */
+	static final int FRAME_MILLIS = 16;
+
+	private final OrbitWeb web, kWeb;
+
+	private final int steps;
+
+	private final double stepsPerSecond;
+
+	private final Runnable frameListener, finishListener;
+
+	private final Timer timer;
+
+	private long startTime;
+
+	private int shown;
+
+	/**
+	 * construct an {@link OrbitPlayback}
+	 * 
+	 * @param web
+	 *            the {@link OrbitWeb} of the recorded values X<sub>n</sub>
+	 * @param kWeb
+	 *            the {@link OrbitWeb} of the recorded values Z<sub>n</sub>, or
+	 *            null if the kth iterate is not shown
+	 * @param stepsPerSecond
+	 *            the rate of the replay
+	 * @param frameListener
+	 *            run after the segments of each frame have been added
+	 * @param finishListener
+	 *            run once the whole orbit is visible again
+	 */
+	public OrbitPlayback(OrbitWeb web, OrbitWeb kWeb, double stepsPerSecond,
+			Runnable frameListener, Runnable finishListener) {
+		this.web = web;
+		this.kWeb = kWeb;
+		this.steps = web.getOrbit().size() - 1;
+		this.stepsPerSecond = stepsPerSecond;
+		this.frameListener = frameListener;
+		this.finishListener = finishListener;
+		timer = new Timer(FRAME_MILLIS, this);
+		timer.setCoalesce(true);
+	}
+
+	/**
+	 * @return the number of steps in the recorded orbit
+	 */
+	int getSteps() {
+		return steps;
+	}
+
+	/**
+	 * hide the webs and start the replay
+	 */
+	void start() {
+		shown = 0;
+		web.setVisibleSteps(0);
+		if (kWeb != null)
+			kWeb.setVisibleSteps(0);
+		startTime = System.nanoTime();
+		timer.start();
+	}
+
+	/**
+	 * stop the replay, leaving the whole orbit visible
+	 */
+	void stop() {
+		if (timer.isRunning()) {
+			showUpTo(getSteps());
+			finish();
+		}
+	}
+
+	/**
+	 * @return true while the replay is running
+	 */
+	boolean isRunning() {
+		return timer.isRunning();
+	}
+
+	/**
+	 * show the segments due for this frame
+	 * 
+	 * @see ActionListener#actionPerformed(ActionEvent)
+	 */
+	public void actionPerformed(ActionEvent e) {
+		double elapsed = (System.nanoTime() - startTime) / 1e9;
+		int due = (int) Math.min(getSteps(), Math.floor(elapsed
+				* stepsPerSecond));
+		if (due > shown) {
+			showUpTo(due);
+			frameListener.run();
+		}
+		if (shown >= getSteps())
+			finish();
+	}
+
+	private void showUpTo(int due) {
+		web.setVisibleSteps(due);
+		if (kWeb != null)
+			kWeb.setVisibleSteps(due);
+		shown = due;
+	}
+
+	private void finish() {
+		timer.stop();
+		web.setVisibleSteps(OrbitWeb.ALL_STEPS);
+		if (kWeb != null)
+			kWeb.setVisibleSteps(OrbitWeb.ALL_STEPS);
+		frameListener.run();
+		finishListener.run();
+	}
+}
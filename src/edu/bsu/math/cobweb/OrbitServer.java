@@ -0,0 +1,591 @@
+/*
+ * Cobweb Plot 2008: A function iteration and cobweb plot visualization tool
+ * Copyright (C) 2008 Ball State University
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package edu.bsu.math.cobweb;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UnsupportedEncodingException;
+import java.io.Writer;
+import java.lang.reflect.Method;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import EDU.emporia.mathtools.Graphable_error;
+
+/**
+ * a small HTTP service that computes orbits for scripts. every request is a
+ * GET with its arguments in the query string (a + in a formula must be sent
+ * as %2B):
+ * 
+ * <pre>
+ * /orbit?f=2*x*(1-x)&amp;seed=0.1&amp;steps=1000[&amp;k=1][&amp;format=json|binary]
+ * /cycle?f=...&amp;seed=...[&amp;k=1][&amp;transient=10000][&amp;maxPeriod=64]
+ *     [&amp;tolerance=1e-9][&amp;format=...]
+ * /bifurcation?f=r*x*(1-x)&amp;rMin=2.5&amp;rMax=4[&amp;samples=200][&amp;seed=0.5]
+ *     [&amp;transient=1000][&amp;keep=100][&amp;format=...]
+ * </pre>
+ * 
+ * each step of an orbit applies f k times, and no request may take more than
+ * {@link #MAX_EVALUATIONS} evaluations of f in all. the JSON is written while the orbit
+ * is being computed; the binary format is the raw big-endian doubles, and for
+ * a bifurcation slice each r is followed by its kept values.
+ * 
+ * the server listens on the loopback address unless it is given another one,
+ * since anyone who can reach it can make it compute. each request runs on its
+ * own virtual thread when the JVM has them. evaluation is limited to a number
+ * of requests at a time and the rest are answered with 503 once they have
+ * waited too long. a bifurcation formula is compiled once with r as a
+ * parameter and shared through the {@link FormulaCache}. the MathToolKit parser
+ * shares one variable x between every function, so all parsing happens under
+ * {@link #EVALUATION_LOCK}. optimized functions are evaluated without it;
+ * any other function is evaluated under the lock one chunk of steps at a
+ * time so requests take turns.
+ */
+final class OrbitServer {
+
+	/**
+	 * the port used when none is given
+	 */
+	static final int DEFAULT_PORT = 8008;
+
+	/**
+	 * the number of requests computed at once when no limit is given, one for
+	 * each processor since computing an orbit keeps a processor busy
+	 */
+	static final int DEFAULT_MAX_CONCURRENT = Runtime.getRuntime()
+			.availableProcessors();
+
+	/**
+	 * held while parsing any formula or evaluating a {@link CompiledFunction}
+	 * that is not optimized
+	 */
+	static final Object EVALUATION_LOCK = new Object();
+
+	private static final int MAX_STEPS = 1000000;
+
+	/**
+	 * the most evaluations of f one request may take
+	 */
+	static final long MAX_EVALUATIONS = 100L * MAX_STEPS;
+
+	private static final int MAX_SAMPLES = 10000;
+
+	private static final int CHUNK_STEPS = 4096;
+
+	private static final long PERMIT_WAIT_MILLIS = 1000;
+
+	private static final int BACKLOG = 4096;
+
+	private final HttpServer server;
+
+	private final ExecutorService executor;
+
+	private final Semaphore permits;
+
+	/**
+	 * construct an {@link OrbitServer} that listens on the loopback address
+	 * 
+	 * @param port
+	 *            the port to listen on
+	 * @param maxConcurrent
+	 *            the number of requests computed at once
+	 * @throws IOException
+	 *             if the port can not be opened
+	 */
+	public OrbitServer(int port, int maxConcurrent) throws IOException {
+		this(InetAddress.getLoopbackAddress(), port, maxConcurrent);
+	}
+
+	/**
+	 * construct an {@link OrbitServer}
+	 * 
+	 * @param address
+	 *            the address to listen on, or null for every interface
+	 * @param port
+	 *            the port to listen on
+	 * @param maxConcurrent
+	 *            the number of requests computed at once
+	 * @throws IOException
+	 *             if the port can not be opened
+	 */
+	public OrbitServer(InetAddress address, int port, int maxConcurrent)
+			throws IOException {
+		permits = new Semaphore(maxConcurrent);
+		executor = newRequestExecutor();
+		server = HttpServer.create(new InetSocketAddress(address, port),
+				BACKLOG);
+		server.setExecutor(executor);
+		server.createContext("/orbit", new Endpoint() {
+
+			void respond(Request request) throws IOException, Graphable_error {
+				CompiledFunction f = function(request.string("f"));
+				int k = request.integer("k", 1, 1, MAX_STEPS);
+				double seed = request.number("seed");
+				int steps = request.integer("steps", 100, 0, MAX_STEPS);
+				if ((long) k * steps > MAX_EVALUATIONS)
+					throw new IllegalArgumentException("k * steps is too large");
+				sendOrbit(request, f, k, seed, steps);
+			}
+		});
+		server.createContext("/cycle", new Endpoint() {
+
+			void respond(Request request) throws IOException, Graphable_error {
+				CompiledFunction f = function(request.string("f"));
+				int k = request.integer("k", 1, 1, MAX_STEPS);
+				double seed = request.number("seed");
+				int transientSteps = request.integer("transient", 10000, 0,
+						MAX_STEPS);
+				int maxPeriod = request.integer("maxPeriod", 64, 1,
+						MAX_STEPS / 2);
+				double tolerance = request.number("tolerance", 1e-9);
+				if ((long) k * (transientSteps + 2L * maxPeriod) > MAX_EVALUATIONS)
+					throw new IllegalArgumentException(
+							"k * (transient + 2 * maxPeriod) is too large");
+				sendCycle(request, f, k, seed, transientSteps, maxPeriod,
+						tolerance);
+			}
+		});
+		server.createContext("/bifurcation", new Endpoint() {
+
+			void respond(Request request) throws IOException, Graphable_error {
+				String formula = request.string("f");
+				double rMin = request.number("rMin");
+				double rMax = request.number("rMax");
+				int samples = request.integer("samples", 200, 1, MAX_SAMPLES);
+				double seed = request.number("seed", 0.5);
+				int transientSteps = request.integer("transient", 1000, 0,
+						MAX_STEPS);
+				int keep = request.integer("keep", 100, 1, MAX_STEPS);
+				if ((long) samples * (transientSteps + keep) > MAX_EVALUATIONS)
+					throw new IllegalArgumentException(
+							"samples * (transient + keep) is too large");
+				sendBifurcation(request, formula, rMin, rMax, samples, seed,
+						transientSteps, keep);
+			}
+		});
+	}
+
+	/**
+	 * start answering requests
+	 */
+	void start() {
+		server.start();
+	}
+
+	/**
+	 * stop answering requests
+	 * 
+	 * @param delaySeconds
+	 *            how long to let running requests finish
+	 */
+	void stop(int delaySeconds) {
+		server.stop(delaySeconds);
+		executor.shutdown();
+	}
+
+	/**
+	 * @return the address the server listens on
+	 */
+	InetSocketAddress getAddress() {
+		return server.getAddress();
+	}
+
+	/**
+	 * @return an executor with a virtual thread per request where the JVM has
+	 *         them (Java 21), else a cached pool of platform threads
+	 */
+	private static ExecutorService newRequestExecutor() {
+		try {
+			Method factory = Executors.class
+					.getMethod("newVirtualThreadPerTaskExecutor");
+			return (ExecutorService) factory.invoke(null);
+		} catch (Exception e) {
+			return Executors.newCachedThreadPool();
+		}
+	}
+
+	/**
+	 * parse a formula, or reuse the function parsed for an earlier request or
+	 * by a panel. a formula that names a {@link TabulatedFunction} is refused,
+	 * so a client can not make the server read its files.
+	 */
+	private static CompiledFunction function(String formula)
+			throws Graphable_error {
+		if (TabulatedFunction.isTable(formula))
+			throw new Graphable_error("tables are not served: " + formula);
+		synchronized (EVALUATION_LOCK) {
+			return FormulaCache.getInstance().function(formula);
+		}
+	}
+
+	private static CompiledFunction parse(String formula)
+			throws Graphable_error {
+		synchronized (EVALUATION_LOCK) {
+			return CompiledFunction.compile(formula);
+		}
+	}
+
+	/**
+	 * compile a formula in x and r once for every r, or reuse the family
+	 * compiled for an earlier request
+	 * 
+	 * @return the family, or null if every r has to be parsed on its own
+	 */
+	private static CompiledFunction family(String formula)
+			throws Graphable_error {
+		if (TabulatedFunction.isTable(formula))
+			throw new Graphable_error("tables are not served: " + formula);
+		synchronized (EVALUATION_LOCK) {
+			return FormulaCache.getInstance().family(formula, "r");
+		}
+	}
+
+	/**
+	 * apply f<sup>k</sup> a number of times, appending every value
+	 */
+	private static double iterate(CompiledFunction f, int k, double x,
+			int steps, Orbit orbit) {
+		if (f.isOptimized())
+			return step(f, k, x, steps, orbit);
+		synchronized (EVALUATION_LOCK) {
+			return step(f, k, x, steps, orbit);
+		}
+	}
+
+	private static double step(CompiledFunction f, int k, double x, int steps,
+			Orbit orbit) {
+		for (int i = 0; i < steps; i++) {
+			for (int j = 0; j < k; j++)
+				x = f.functionValue(x);
+			orbit.add(x);
+		}
+		return x;
+	}
+
+	/**
+	 * apply f<sup>k</sup> a number of times, a chunk at a time
+	 */
+	private static double advance(CompiledFunction f, int k, double x, int steps) {
+		Orbit scratch = new Orbit();
+		for (int done = 0; done < steps; done += CHUNK_STEPS) {
+			scratch.clear();
+			x = iterate(f, k, x, Math.min(CHUNK_STEPS, steps - done), scratch);
+		}
+		return x;
+	}
+
+	private void sendOrbit(Request request, CompiledFunction f, int k, double seed,
+			int steps) throws IOException {
+		Orbit chunk = new Orbit();
+		double x = seed;
+		if (request.binary()) {
+			DataOutputStream out = request.sendBinary(8L * (steps + 1));
+			out.writeDouble(seed);
+			for (int done = 0; done < steps; done += CHUNK_STEPS) {
+				chunk.clear();
+				x = iterate(f, k, x, Math.min(CHUNK_STEPS, steps - done),
+						chunk);
+				for (int i = 0; i < chunk.size(); i++)
+					out.writeDouble(chunk.get(i));
+			}
+			out.close();
+		} else {
+			Writer out = request.sendJson();
+			out.write("{\"formula\":");
+			writeString(out, request.string("f"));
+			out.write(",\"k\":" + k + ",\"steps\":" + steps + ",\"x\":[");
+			writeNumber(out, seed);
+			for (int done = 0; done < steps; done += CHUNK_STEPS) {
+				chunk.clear();
+				x = iterate(f, k, x, Math.min(CHUNK_STEPS, steps - done),
+						chunk);
+				for (int i = 0; i < chunk.size(); i++) {
+					out.write(',');
+					writeNumber(out, chunk.get(i));
+				}
+			}
+			out.write("]}");
+			out.close();
+		}
+	}
+
+	private void sendCycle(Request request, CompiledFunction f, int k, double seed,
+			int transientSteps, int maxPeriod, double tolerance)
+			throws IOException {
+		double x = advance(f, k, seed, transientSteps);
+		Orbit tail = new Orbit();
+		tail.add(x);
+		for (int done = 0; done < 2 * maxPeriod; done += CHUNK_STEPS)
+			x = iterate(f, k, x, Math.min(CHUNK_STEPS, 2 * maxPeriod - done),
+					tail);
+		int period = OrbitAnalysis.period(tail, maxPeriod, tolerance);
+		int last = tail.size() - 1;
+
+		if (request.binary()) {
+			DataOutputStream out = request.sendBinary(8L * period);
+			for (int i = last - period + 1; i <= last; i++)
+				out.writeDouble(tail.get(i));
+			out.close();
+		} else {
+			Writer out = request.sendJson();
+			out.write("{\"formula\":");
+			writeString(out, request.string("f"));
+			out.write(",\"k\":" + k + ",\"transient\":" + transientSteps
+					+ ",\"period\":" + period + ",\"cycle\":[");
+			for (int i = last - period + 1; i <= last; i++) {
+				if (i > last - period + 1)
+					out.write(',');
+				writeNumber(out, tail.get(i));
+			}
+			out.write("],\"last\":");
+			writeNumber(out, tail.get(last));
+			out.write('}');
+			out.close();
+		}
+	}
+
+	private void sendBifurcation(Request request, String formula, double rMin,
+			double rMax, int samples, double seed, int transientSteps,
+			int keep) throws IOException, Graphable_error {
+		// make every slice first so a bad formula is reported before sending;
+		// only a formula that can not be optimized is parsed for each r
+		CompiledFunction family = family(formula);
+		CompiledFunction[] slices = new CompiledFunction[samples];
+		double[] r = new double[samples];
+		for (int i = 0; i < samples; i++) {
+			r[i] = samples == 1 ? rMin : rMin + (rMax - rMin) * i
+					/ (samples - 1);
+			slices[i] = family != null ? family.at(r[i]) : parse(CompiledFunction
+					.substitute(formula, "r", r[i]));
+		}
+
+		Orbit kept = new Orbit();
+		if (request.binary()) {
+			DataOutputStream out = request.sendBinary(8L * samples
+					* (keep + 1));
+			for (int i = 0; i < samples; i++) {
+				kept.clear();
+				iterate(slices[i], 1, advance(slices[i], 1, seed,
+						transientSteps), keep, kept);
+				out.writeDouble(r[i]);
+				for (int j = 0; j < keep; j++)
+					out.writeDouble(kept.get(j));
+			}
+			out.close();
+		} else {
+			Writer out = request.sendJson();
+			out.write("{\"formula\":");
+			writeString(out, formula);
+			out.write(",\"transient\":" + transientSteps + ",\"rows\":[");
+			for (int i = 0; i < samples; i++) {
+				kept.clear();
+				iterate(slices[i], 1, advance(slices[i], 1, seed,
+						transientSteps), keep, kept);
+				out.write(i == 0 ? "{\"r\":" : ",{\"r\":");
+				writeNumber(out, r[i]);
+				out.write(",\"x\":[");
+				for (int j = 0; j < keep; j++) {
+					if (j > 0)
+						out.write(',');
+					writeNumber(out, kept.get(j));
+				}
+				out.write("]}");
+			}
+			out.write("]}");
+			out.close();
+		}
+	}
+
+	/**
+	 * JSON has no NaN or infinity, so those are written as null
+	 */
+	private static void writeNumber(Writer out, double value)
+			throws IOException {
+		if (Double.isNaN(value) || Double.isInfinite(value))
+			out.write("null");
+		else
+			out.write(Double.toString(value));
+	}
+
+	private static void writeString(Writer out, String value)
+			throws IOException {
+		out.write('"');
+		for (int i = 0; i < value.length(); i++) {
+			char c = value.charAt(i);
+			if (c == '"' || c == '\\')
+				out.write('\\');
+			if (c < ' ')
+				out.write(String.format("\\u%04x", (int) c));
+			else
+				out.write(c);
+		}
+		out.write('"');
+	}
+
+	/**
+	 * the arguments and response of one request
+	 */
+	private static final class Request {
+
+		private final HttpExchange exchange;
+
+		private final Map<String, String> parameters = new HashMap<String, String>();
+
+		Request(HttpExchange exchange) throws UnsupportedEncodingException {
+			this.exchange = exchange;
+			String query = exchange.getRequestURI().getRawQuery();
+			if (query != null)
+				for (String pair : query.split("&")) {
+					int equals = pair.indexOf('=');
+					if (equals > 0)
+						parameters.put(URLDecoder.decode(pair.substring(0,
+								equals), "UTF-8"), URLDecoder.decode(pair
+								.substring(equals + 1), "UTF-8"));
+				}
+		}
+
+		String string(String name) {
+			String value = parameters.get(name);
+			if (value == null || value.length() == 0)
+				throw new IllegalArgumentException("missing parameter " + name);
+			return value;
+		}
+
+		double number(String name) {
+			try {
+				return Double.parseDouble(string(name));
+			} catch (NumberFormatException e) {
+				throw new IllegalArgumentException(name + " must be a number");
+			}
+		}
+
+		double number(String name, double defaultValue) {
+			return parameters.containsKey(name) ? number(name) : defaultValue;
+		}
+
+		int integer(String name, int defaultValue, int min, int max) {
+			if (!parameters.containsKey(name))
+				return defaultValue;
+			int value;
+			try {
+				value = Integer.parseInt(string(name));
+			} catch (NumberFormatException e) {
+				throw new IllegalArgumentException(name
+						+ " must be an integer");
+			}
+			if (value < min || value > max)
+				throw new IllegalArgumentException(name + " must be from "
+						+ min + " to " + max);
+			return value;
+		}
+
+		boolean binary() {
+			String format = parameters.get("format");
+			if (format == null || format.equals("json"))
+				return false;
+			if (format.equals("binary"))
+				return true;
+			throw new IllegalArgumentException("format must be json or binary");
+		}
+
+		Writer sendJson() throws IOException {
+			exchange.getResponseHeaders().set("Content-Type",
+					"application/json; charset=UTF-8");
+			exchange.sendResponseHeaders(200, 0);
+			return new BufferedWriter(new OutputStreamWriter(exchange
+					.getResponseBody(), "UTF-8"), 1 << 16);
+		}
+
+		DataOutputStream sendBinary(long length) throws IOException {
+			exchange.getResponseHeaders().set("Content-Type",
+					"application/octet-stream");
+			exchange.sendResponseHeaders(200, length == 0 ? -1 : length);
+			return new DataOutputStream(new BufferedOutputStream(exchange
+					.getResponseBody(), 1 << 16));
+		}
+
+		void sendError(int code, String message) throws IOException {
+			byte[] body = (message + "\n").getBytes("UTF-8");
+			exchange.getResponseHeaders().set("Content-Type",
+					"text/plain; charset=UTF-8");
+			if (code == 503)
+				exchange.getResponseHeaders().set("Retry-After", "1");
+			exchange.sendResponseHeaders(code, body.length);
+			OutputStream out = exchange.getResponseBody();
+			out.write(body);
+			out.close();
+		}
+	}
+
+	/**
+	 * a path of the service: checks the method, takes a permit and turns bad
+	 * arguments into 400 responses
+	 */
+	private abstract class Endpoint implements HttpHandler {
+
+		abstract void respond(Request request) throws IOException,
+				Graphable_error;
+
+		public void handle(HttpExchange exchange) throws IOException {
+			try {
+				Request request = new Request(exchange);
+				if (!exchange.getRequestMethod().equals("GET")) {
+					request.sendError(405, "only GET is supported");
+					return;
+				}
+				boolean acquired = false;
+				try {
+					acquired = permits.tryAcquire(PERMIT_WAIT_MILLIS,
+							TimeUnit.MILLISECONDS);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+				if (!acquired) {
+					request.sendError(503, "too many requests");
+					return;
+				}
+				try {
+					respond(request);
+				} catch (IllegalArgumentException e) {
+					request.sendError(400, e.getMessage());
+				} catch (Graphable_error e) {
+					request.sendError(400, "not a valid formula");
+				} finally {
+					permits.release();
+				}
+			} finally {
+				exchange.close();
+			}
+		}
+	}
+}
@@ -0,0 +1,146 @@
+/*
+ * Cobweb Plot 2008: A function iteration and cobweb plot visualization tool
+ * Copyright (C) 2008 Ball State University
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package edu.bsu.math.cobweb;
+
+import java.awt.Color;
+
+/**
+ * another map or seed iterated in lockstep with the orbit of the panel,
+ * drawn on the same graph in a color of its own and shown in a column of its
+ * own. a track has a value for each row of the orbit it follows, so its rows
+ * line up with those of the orbit, and its web has a step for each row.
+ */
+final class OrbitTrack {
+
+	private final String formula;
+
+	private final CompiledFunction func;
+
+	private final double seed;
+
+	private final Color color;
+
+	private final Orbit orbit = new Orbit();
+
+	private final OrbitView view = new OrbitView(orbit);
+
+	private final OrbitWeb web = new OrbitWeb(view);
+
+	/**
+	 * construct an {@link OrbitTrack}, which is empty until it follows an
+	 * orbit
+	 * 
+	 * @param formula
+	 *            the formula of the map, as typed
+	 * @param func
+	 *            the {@link CompiledFunction} of the formula
+	 * @param seed
+	 *            the initial value
+	 * @param color
+	 *            the color of the function and the web
+	 */
+	public OrbitTrack(String formula, CompiledFunction func, double seed,
+			Color color) {
+		this.formula = formula;
+		this.func = func;
+		this.seed = seed;
+		this.color = color;
+	}
+
+	/**
+	 * iterate, restore or cut back the track until it has as many values as
+	 * an orbit has rows, or clear it with the orbit. only the one thread that
+	 * changes the orbit may call this.
+	 * 
+	 * @param size
+	 *            the number of rows of the orbit followed
+	 */
+	void follow(int size) {
+		if (size == 0) {
+			orbit.clear();
+			return;
+		}
+		orbit.truncate(size);
+		if (orbit.restore(size))
+			return;
+		if (orbit.size() == 0)
+			orbit.add(seed);
+		orbit.ensureCapacity(size);
+		double x = orbit.get(orbit.size() - 1);
+		for (int n = orbit.size(); n < size; n++) {
+			x = func.functionValue(x);
+			orbit.add(x);
+		}
+	}
+
+	/**
+	 * @return the formula of the map, as typed
+	 */
+	String getFormula() {
+		return formula;
+	}
+
+	/**
+	 * @return the {@link CompiledFunction} iterated
+	 */
+	CompiledFunction getFunction() {
+		return func;
+	}
+
+	/**
+	 * @return the initial value
+	 */
+	double getSeed() {
+		return seed;
+	}
+
+	/**
+	 * @return the color of the function and the web
+	 */
+	Color getColor() {
+		return color;
+	}
+
+	/**
+	 * @return the {@link Orbit} of the track
+	 */
+	Orbit getOrbit() {
+		return orbit;
+	}
+
+	/**
+	 * @return the {@link OrbitView} of the rows of the track
+	 */
+	OrbitView getView() {
+		return view;
+	}
+
+	/**
+	 * @return the {@link OrbitWeb} of the track
+	 */
+	OrbitWeb getWeb() {
+		return web;
+	}
+
+	/**
+	 * @return the name of the column of the track
+	 */
+	String getName() {
+		return "X_n of " + formula + ", x_0=" + seed;
+	}
+}
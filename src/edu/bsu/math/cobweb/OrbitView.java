@@ -0,0 +1,127 @@
+/*
+ * Cobweb Plot 2008: A function iteration and cobweb plot visualization tool
+ * Copyright (C) 2008 Ball State University
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package edu.bsu.math.cobweb;
+
+/**
+ * every kth value x<sub>0</sub>, x<sub>k</sub>, x<sub>2k</sub>, ... of an
+ * {@link Orbit}, which is the orbit of f<sup>k</sup> from the same seed. one
+ * orbit of f is computed far enough for the largest k in use, the span, and
+ * each row of the view is one span of the orbit, so every view of the same
+ * orbit and span has the same number of rows.
+ */
+final class OrbitView {
+
+	private final Orbit orbit;
+
+	private volatile int stride, span;
+
+	/**
+	 * construct an {@link OrbitView} of every value of an orbit
+	 * 
+	 * @param orbit
+	 *            the {@link Orbit} to view
+	 */
+	public OrbitView(Orbit orbit) {
+		this(orbit, 1, 1);
+	}
+
+	/**
+	 * construct an {@link OrbitView}
+	 * 
+	 * @param orbit
+	 *            the {@link Orbit} to view
+	 * @param stride
+	 *            k, the number of steps of the orbit between two values
+	 * @param span
+	 *            the number of steps of the orbit in one row
+	 */
+	public OrbitView(Orbit orbit, int stride, int span) {
+		this.orbit = orbit;
+		setStride(stride, span);
+	}
+
+	/**
+	 * @param strides
+	 *            the values of k in use
+	 * @return the span needed to view the orbit with every stride
+	 */
+	static int span(int[] strides) {
+		int span = 1;
+		for (int k : strides)
+			span = Math.max(span, k);
+		return span;
+	}
+
+	/**
+	 * change which values of the orbit are viewed
+	 * 
+	 * @param stride
+	 *            k, the number of steps of the orbit between two values
+	 * @param span
+	 *            the number of steps of the orbit in one row, at least the
+	 *            stride
+	 */
+	void setStride(int stride, int span) {
+		if (stride < 1 || span < stride)
+			throw new IllegalArgumentException("stride: " + stride
+					+ ", span: " + span);
+		this.span = span;
+		this.stride = stride;
+	}
+
+	/**
+	 * @return k, the number of steps of the orbit between two values
+	 */
+	int getStride() {
+		return stride;
+	}
+
+	/**
+	 * @return the number of steps of the orbit in one row
+	 */
+	int getSpan() {
+		return span;
+	}
+
+	/**
+	 * @return the {@link Orbit} viewed
+	 */
+	Orbit getOrbit() {
+		return orbit;
+	}
+
+	/**
+	 * @param n
+	 *            the row
+	 * @return x<sub>nk</sub>
+	 */
+	double get(int n) {
+		if (n >= size())
+			throw new IndexOutOfBoundsException("n: " + n + ", size: "
+					+ size());
+		return orbit.get(n * stride);
+	}
+
+	/**
+	 * @return the number of complete rows in the orbit
+	 */
+	int size() {
+		int n = orbit.size();
+		return n == 0 ? 0 : (n - 1) / span + 1;
+	}
+}
@@ -0,0 +1,71 @@
+/*
+ * Cobweb Plot 2008: A function iteration and cobweb plot visualization tool
+ * Copyright (C) 2008 Ball State University
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package edu.bsu.math.cobweb;
+
+/**
+ * the cobweb of an {@link OrbitView} as it is shown on the graph. the points
+ * (x<sub>n</sub>, x<sub>n</sub>), (x<sub>n</sub>, x<sub>n+1</sub>) are read
+ * straight from the orbit, so the web never has to be rebuilt when the orbit
+ * grows, is loaded or is replayed. a replay shows only the first steps of the
+ * orbit.
+ */
+final class OrbitWeb {
+
+	/**
+	 * the visible step count meaning the whole orbit
+	 */
+	static final int ALL_STEPS = Integer.MAX_VALUE;
+
+	private final OrbitView orbit;
+
+	private volatile int visibleSteps = ALL_STEPS;
+
+	/**
+	 * construct an {@link OrbitWeb}
+	 * 
+	 * @param orbit
+	 *            the {@link OrbitView} to draw the web of
+	 */
+	public OrbitWeb(OrbitView orbit) {
+		this.orbit = orbit;
+	}
+
+	/**
+	 * @return the {@link OrbitView} drawn by this web
+	 */
+	OrbitView getOrbit() {
+		return orbit;
+	}
+
+	/**
+	 * @return the number of steps of the orbit in the web
+	 */
+	int getSteps() {
+		return Math.max(0, Math.min(orbit.size() - 1, visibleSteps));
+	}
+
+	/**
+	 * limit the web to the first steps of the orbit
+	 * 
+	 * @param steps
+	 *            the number of steps to show, or {@link #ALL_STEPS}
+	 */
+	void setVisibleSteps(int steps) {
+		visibleSteps = steps;
+	}
+}
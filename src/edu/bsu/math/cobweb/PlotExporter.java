@@ -0,0 +1,474 @@
+/*
+ * Cobweb Plot 2008: A function iteration and cobweb plot visualization tool
+ * Copyright (C) 2008 Ball State University
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package edu.bsu.math.cobweb;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.geom.Path2D;
+import java.awt.geom.PathIterator;
+import java.awt.image.BufferedImage;
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.text.DecimalFormat;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+/**
+ * writes the image of a {@link CobwebRenderer} to a PNG or SVG file without a
+ * display. PNG images are painted in parallel tiles one strip at a time and
+ * streamed through the encoder, so memory use depends on the width and the
+ * tile size but not on the height. SVG is written element by element straight
+ * to the output.
+ */
+final class PlotExporter {
+
+	/**
+	 * default edge length of a tile in pixels
+	 */
+	static final int DEFAULT_TILE_SIZE = 512;
+
+	private static final byte[] PNG_SIGNATURE = { (byte) 137, 80, 78, 71, 13,
+			10, 26, 10 };
+
+	private static final int PNG_CHUNK_SIZE = 1 << 16;
+
+	private final CobwebRenderer renderer;
+
+	private int tileSize = DEFAULT_TILE_SIZE;
+
+	private int threads = Runtime.getRuntime().availableProcessors();
+
+	/**
+	 * construct a {@link PlotExporter}
+	 * 
+	 * @param renderer
+	 *            the {@link CobwebRenderer} that draws the image
+	 */
+	public PlotExporter(CobwebRenderer renderer) {
+		this.renderer = renderer;
+	}
+
+	/**
+	 * @param size
+	 *            the edge length of a tile in pixels
+	 */
+	void setTileSize(int size) {
+		tileSize = Math.max(16, size);
+	}
+
+	/**
+	 * @param count
+	 *            the number of threads that paint tiles
+	 */
+	void setThreads(int count) {
+		threads = Math.max(1, count);
+	}
+
+	/**
+	 * write the image to a file, choosing the format from its extension
+	 * 
+	 * @param file
+	 *            a .png or .svg {@link File}
+	 * @throws IOException
+	 *             if the file can not be written
+	 */
+	void write(File file) throws IOException {
+		String name = file.getName().toLowerCase();
+		OutputStream out = new BufferedOutputStream(new FileOutputStream(file),
+				PNG_CHUNK_SIZE);
+		try {
+			if (name.endsWith(".svg"))
+				writeSvg(new BufferedWriter(new OutputStreamWriter(out, "UTF-8"),
+						PNG_CHUNK_SIZE));
+			else if (name.endsWith(".png"))
+				writePng(out);
+			else
+				throw new IOException("unknown image type: " + file);
+		} finally {
+			out.close();
+		}
+	}
+
+	/**
+	 * paint the image in tiles and write it as a PNG
+	 * 
+	 * @param out
+	 *            the {@link OutputStream} to write to
+	 * @throws IOException
+	 *             if the image can not be written
+	 */
+	void writePng(OutputStream out) throws IOException {
+		renderer.prepare();
+		final int width = renderer.getWidth();
+		final int height = renderer.getHeight();
+		final int[] strip = new int[width * Math.min(tileSize, height)];
+		ExecutorService pool = Executors.newFixedThreadPool(threads,
+				new ThreadFactory() {
+
+					public Thread newThread(Runnable r) {
+						Thread t = new Thread(r, "cobweb-tile");
+						t.setDaemon(true);
+						return t;
+					}
+				});
+		try {
+			PngStream png = new PngStream(out, width, height);
+			for (int top = 0; top < height; top += tileSize) {
+				final int y = top;
+				final int h = Math.min(tileSize, height - top);
+				List<Future<?>> tiles = new ArrayList<Future<?>>();
+				for (int left = 0; left < width; left += tileSize) {
+					final int x = left;
+					final int w = Math.min(tileSize, width - left);
+					tiles.add(pool.submit(new Runnable() {
+
+						public void run() {
+							BufferedImage tile = new BufferedImage(w, h,
+									BufferedImage.TYPE_INT_RGB);
+							Graphics2D g = tile.createGraphics();
+							renderer.paintTile(g, x, y, w, h);
+							g.dispose();
+							tile.getRGB(0, 0, w, h, strip, x, width);
+						}
+					}));
+				}
+				for (Future<?> tile : tiles)
+					waitFor(tile);
+				for (int row = 0; row < h; row++)
+					png.writeRow(strip, row * width);
+			}
+			png.finish();
+		} finally {
+			pool.shutdownNow();
+		}
+	}
+
+	/**
+	 * write the image as SVG, one element at a time
+	 * 
+	 * @param out
+	 *            the {@link Writer} to write to
+	 * @throws IOException
+	 *             if the image can not be written
+	 */
+	void writeSvg(Writer out) throws IOException {
+		renderer.prepare();
+		int width = renderer.getWidth();
+		int height = renderer.getHeight();
+		ZoomLevel zoom = renderer.getZoom();
+		StringBuilder b = new StringBuilder(PNG_CHUNK_SIZE);
+
+		b.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+		b.append("<svg xmlns=\"http://www.w3.org/2000/svg\" width=\"")
+				.append(width).append("\" height=\"").append(height)
+				.append("\" viewBox=\"0 0 ").append(width).append(' ').append(
+						height).append("\">\n");
+		b.append("<rect width=\"100%\" height=\"100%\" fill=\"").append(
+				hex(CobwebRenderer.BACKGROUND_COLOR)).append("\"/>\n");
+		b.append("<g fill=\"none\" stroke-width=\"");
+		coordinate(b, renderer.getStrokeWidth());
+		b.append("\" stroke-linecap=\"round\" stroke-linejoin=\"round\">\n");
+
+		// grid lines and labels
+		if (renderer.isGridVisible()) {
+			DecimalFormat format = CobwebRenderer.labelFormat();
+			StringBuilder labels = new StringBuilder();
+			double step = renderer.getGridStepX();
+			b.append("<path stroke=\"").append(hex(CobwebRenderer.GRID_COLOR))
+					.append("\" d=\"");
+			long last = (long) Math.floor(zoom.xMax / step);
+			for (long i = (long) Math.ceil(zoom.xMin / step); i <= last; i++) {
+				double px = renderer.xToDevice(i * step);
+				b.append('M');
+				coordinate(b, px);
+				b.append(" 0V").append(height);
+				label(labels, format.format(i * step), px + 2, height - 2);
+			}
+			step = renderer.getGridStepY();
+			last = (long) Math.floor(zoom.yMax / step);
+			for (long i = (long) Math.ceil(zoom.yMin / step); i <= last; i++) {
+				double py = renderer.yToDevice(i * step);
+				b.append("M0 ");
+				coordinate(b, py);
+				b.append('H').append(width);
+				label(labels, format.format(i * step), 2, py
+						+ renderer.getFontSize());
+			}
+			b.append("\"/>\n");
+			b.append("<g stroke=\"none\" fill=\"").append(
+					hex(CobwebRenderer.AXES_COLOR)).append(
+					"\" font-family=\"serif\" font-size=\"");
+			coordinate(b, renderer.getFontSize());
+			b.append("\">\n").append(labels).append("</g>\n");
+		}
+		out.append(b);
+		b.setLength(0);
+
+		if (renderer.isLineVisible())
+			path(out, b, renderer.linePath(), CobwebRenderer.LINE_COLOR);
+		path(out, b, renderer.getFunctionPath(),
+				CobwebRenderer.FUNCTION_COLOR);
+		path(out, b, renderer.getKFunctionPath(),
+				CobwebRenderer.K_FUNCTION_COLOR);
+		web(out, b, renderer.getWeb(), CobwebRenderer.WEB_COLOR);
+		web(out, b, renderer.getKWeb(), CobwebRenderer.K_WEB_COLOR);
+
+		out.append("</g>\n</svg>\n");
+		out.flush();
+	}
+
+	/**
+	 * write a path computed by the renderer
+	 */
+	private void path(Writer out, StringBuilder b, Path2D path, Color color)
+			throws IOException {
+		if (path == null)
+			return;
+		b.append("<path stroke=\"").append(hex(color)).append("\" d=\"");
+		float[] point = new float[6];
+		for (PathIterator it = path.getPathIterator(null); !it.isDone(); it
+				.next()) {
+			b.append(it.currentSegment(point) == PathIterator.SEG_MOVETO ? 'M'
+					: 'L');
+			coordinate(b, point[0]);
+			b.append(' ');
+			coordinate(b, point[1]);
+			if (b.length() > PNG_CHUNK_SIZE) {
+				out.append(b);
+				b.setLength(0);
+			}
+		}
+		b.append("\"/>\n");
+		out.append(b);
+		b.setLength(0);
+	}
+
+	/**
+	 * stream a web as one path of alternating vertical and horizontal moves
+	 */
+	private void web(Writer out, StringBuilder b, OrbitView orbit,
+			Color color) throws IOException {
+		if (orbit == null || orbit.size() < 2)
+			return;
+		b.append("<path stroke=\"").append(hex(color)).append("\" d=\"");
+		boolean drawing = false;
+		for (int i = 0; i < orbit.size(); i++) {
+			double value = orbit.get(i);
+			if (!CobwebRenderer.isFinite(value)) {
+				drawing = false;
+				continue;
+			}
+			double px = renderer.xToDevice(value);
+			double py = renderer.yToDevice(value);
+			if (drawing) {
+				b.append('V');
+				coordinate(b, py);
+				b.append('H');
+				coordinate(b, px);
+			} else {
+				b.append('M');
+				coordinate(b, px);
+				b.append(' ');
+				coordinate(b, py);
+				drawing = true;
+			}
+			if (b.length() > PNG_CHUNK_SIZE) {
+				out.append(b);
+				b.setLength(0);
+			}
+		}
+		b.append("\"/>\n");
+		out.append(b);
+		b.setLength(0);
+	}
+
+	private static void label(StringBuilder b, String text, double x, double y) {
+		b.append("<text x=\"");
+		coordinate(b, x);
+		b.append("\" y=\"");
+		coordinate(b, y);
+		b.append("\">").append(text).append("</text>\n");
+	}
+
+	/**
+	 * append a pixel coordinate with at most two decimals, without going
+	 * through a {@link java.util.Formatter}
+	 */
+	static void coordinate(StringBuilder b, double d) {
+		long hundredths = Math.round(d * 100);
+		if (hundredths < 0) {
+			b.append('-');
+			hundredths = -hundredths;
+		}
+		b.append(hundredths / 100);
+		int fraction = (int) (hundredths % 100);
+		if (fraction != 0) {
+			b.append('.').append((char) ('0' + fraction / 10));
+			if (fraction % 10 != 0)
+				b.append((char) ('0' + fraction % 10));
+		}
+	}
+
+	private static String hex(Color c) {
+		return String.format("#%06x", c.getRGB() & 0xffffff);
+	}
+
+	private static void waitFor(Future<?> future) throws IOException {
+		try {
+			future.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("interrupted while painting tiles");
+		} catch (ExecutionException e) {
+			throw new IOException("could not paint a tile", e.getCause());
+		}
+	}
+
+	/**
+	 * a minimal streaming PNG encoder for 8 bit RGB images
+	 */
+	private static final class PngStream {
+
+		private final DataOutputStream out;
+
+		private final DeflaterOutputStream data;
+
+		private final int width;
+
+		private final byte[] row;
+
+		PngStream(OutputStream stream, int width, int height)
+				throws IOException {
+			this.out = new DataOutputStream(stream);
+			this.width = width;
+			row = new byte[1 + 3 * width];
+
+			out.write(PNG_SIGNATURE);
+			DataChunk header = new DataChunk("IHDR");
+			header.writeInt(width);
+			header.writeInt(height);
+			header.write(8); // bits per sample
+			header.write(2); // truecolor
+			header.write(0); // deflate
+			header.write(0); // adaptive filtering
+			header.write(0); // not interlaced
+			header.writeTo(out);
+
+			data = new DeflaterOutputStream(new IdatStream(),
+					new Deflater(Deflater.DEFAULT_COMPRESSION), PNG_CHUNK_SIZE);
+		}
+
+		/**
+		 * write one row of pixels using the Sub filter
+		 */
+		void writeRow(int[] pixels, int offset) throws IOException {
+			row[0] = 1;
+			int r0 = 0, g0 = 0, b0 = 0;
+			for (int i = 0, j = 1; i < width; i++) {
+				int p = pixels[offset + i];
+				int r = (p >> 16) & 0xff, g = (p >> 8) & 0xff, b = p & 0xff;
+				row[j++] = (byte) (r - r0);
+				row[j++] = (byte) (g - g0);
+				row[j++] = (byte) (b - b0);
+				r0 = r;
+				g0 = g;
+				b0 = b;
+			}
+			data.write(row);
+		}
+
+		void finish() throws IOException {
+			data.finish();
+			data.flush();
+			new DataChunk("IEND").writeTo(out);
+			out.flush();
+		}
+
+		/**
+		 * collects the compressed data into IDAT chunks
+		 */
+		private final class IdatStream extends OutputStream {
+
+			private final DataChunk chunk = new DataChunk("IDAT");
+
+			public void write(int b) throws IOException {
+				chunk.write(b);
+				if (chunk.size() >= PNG_CHUNK_SIZE)
+					flush();
+			}
+
+			public void write(byte[] b, int off, int len) throws IOException {
+				chunk.write(b, off, len);
+				if (chunk.size() >= PNG_CHUNK_SIZE)
+					flush();
+			}
+
+			public void flush() throws IOException {
+				if (chunk.size() > 0) {
+					chunk.writeTo(out);
+					chunk.reset();
+				}
+			}
+		}
+	}
+
+	/**
+	 * one PNG chunk, written with its length and checksum
+	 */
+	private static final class DataChunk extends DataOutputStream {
+
+		private final byte[] type;
+
+		DataChunk(String type) {
+			super(new ByteArrayOutputStream());
+			this.type = type.getBytes();
+		}
+
+		void writeTo(DataOutputStream stream) throws IOException {
+			ByteArrayOutputStream bytes = (ByteArrayOutputStream) out;
+			CRC32 crc = new CRC32();
+			crc.update(type);
+			crc.update(bytes.toByteArray());
+			stream.writeInt(bytes.size());
+			stream.write(type);
+			bytes.writeTo(stream);
+			stream.writeInt((int) crc.getValue());
+		}
+
+		void reset() {
+			((ByteArrayOutputStream) out).reset();
+			written = 0;
+		}
+	}
+}
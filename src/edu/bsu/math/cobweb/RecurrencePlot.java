@@ -0,0 +1,289 @@
+/*
+ * Cobweb Plot 2008: A function iteration and cobweb plot visualization tool
+ * Copyright (C) 2008 Ball State University
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package edu.bsu.math.cobweb;
+
+import java.awt.image.BufferedImage;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * the recurrence plot of a stretch of an orbit: the N by N matrix whose cell
+ * (i, j) is set when |x<sub>i</sub> - x<sub>j</sub>| &lt; &epsilon;.
+ * 
+ * the matrix is symmetric, so only the cells with i &le; j are kept, one bit
+ * each, row i starting at the word that holds column i. a plot of 50,000
+ * values takes 150 MB. the rows are filled {@link #TILE_ROWS} at a time on a
+ * fork-join pool, each tile going across the columns
+ * {@link #TILE_COLUMNS} at a time so the values it compares stay in the
+ * cache. NaN recurs with nothing, not even itself.
+ */
+final class RecurrencePlot {
+
+	/**
+	 * the most values in a plot
+	 */
+	static final int MAX_SIZE = 100000;
+
+	/**
+	 * the rows of a tile, one word of columns
+	 */
+	static final int TILE_ROWS = 64;
+
+	/**
+	 * the columns of a tile
+	 */
+	static final int TILE_COLUMNS = 4096;
+
+	private final double[] x;
+
+	private final double epsilon;
+
+	/**
+	 * the words of row i start at bits[rowStart[i]], which holds columns
+	 * (i >> 6) << 6 up to that plus 63
+	 */
+	private final int[] rowStart;
+
+	private final long[] bits;
+
+	private final int words;
+
+	/**
+	 * construct a {@link RecurrencePlot}, computing every cell
+	 * 
+	 * @param x
+	 *            the values of the orbit, which are kept
+	 * @param epsilon
+	 *            how close two values must be to count as a recurrence
+	 * @param pool
+	 *            the {@link ForkJoinPool} the tiles are computed on
+	 * @throws IllegalArgumentException
+	 *             if there are more than {@link #MAX_SIZE} values or epsilon
+	 *             is not positive
+	 */
+	public RecurrencePlot(double[] x, double epsilon, ForkJoinPool pool) {
+		if (x.length > MAX_SIZE)
+			throw new IllegalArgumentException("more than " + MAX_SIZE
+					+ " values: " + x.length);
+		if (!(epsilon > 0))
+			throw new IllegalArgumentException("epsilon: " + epsilon);
+		this.x = x;
+		this.epsilon = epsilon;
+		words = (x.length + 63) >> 6;
+		rowStart = new int[x.length];
+		int start = 0;
+		for (int i = 0; i < x.length; i++) {
+			rowStart[i] = start;
+			start += words - (i >> 6);
+		}
+		bits = new long[start];
+		pool.invoke(new Tiles(0, words));
+	}
+
+	/**
+	 * @return N, the number of values
+	 */
+	int size() {
+		return x.length;
+	}
+
+	/**
+	 * @return how close two values must be to count as a recurrence
+	 */
+	double getEpsilon() {
+		return epsilon;
+	}
+
+	/**
+	 * @return true if |x<sub>i</sub> - x<sub>j</sub>| &lt; &epsilon;
+	 */
+	boolean get(int i, int j) {
+		if (i > j) {
+			int t = i;
+			i = j;
+			j = t;
+		}
+		return (bits[rowStart[i] + (j >> 6) - (i >> 6)] >>> j & 1) != 0;
+	}
+
+	/**
+	 * @return the fraction of the cells that are set
+	 */
+	double recurrenceRate() {
+		long upper = 0;
+		for (long word : bits)
+			upper += Long.bitCount(word);
+		long diagonal = 0;
+		for (int i = 0; i < x.length; i++)
+			if (get(i, i))
+				diagonal++;
+		return (2.0 * upper - diagonal) / ((double) x.length * x.length);
+	}
+
+	/**
+	 * draw the plot shrunk to fit a square, each pixel as dark as the
+	 * fraction of its cells that are set. i runs to the right and j up.
+	 * 
+	 * @param pixels
+	 *            the most pixels on a side
+	 * @param pool
+	 *            the {@link ForkJoinPool} the pixel rows are counted on
+	 * @return the image, no bigger than N on a side
+	 */
+	BufferedImage toImage(int pixels, ForkJoinPool pool) {
+		int side = Math.max(1, Math.min(pixels, x.length));
+		long[][] upper = new long[side][side];
+		pool.invoke(new Counts(upper, 0, side));
+
+		BufferedImage image = new BufferedImage(side, side,
+				BufferedImage.TYPE_INT_RGB);
+		for (int a = 0; a < side; a++) {
+			for (int b = 0; b < side; b++) {
+				// the cells below the diagonal are the ones above it mirrored
+				long set = upper[a][b] + upper[b][a];
+				if (a == b)
+					set -= diagonal(a, side);
+				double cells = (double) (start(a + 1, side) - start(a, side))
+						* (start(b + 1, side) - start(b, side));
+				int gray = (int) Math.round(255 * (1 - Math.sqrt(set / cells)));
+				image.setRGB(a, side - 1 - b, gray << 16 | gray << 8 | gray);
+			}
+		}
+		return image;
+	}
+
+	/**
+	 * @return the first value shown by a pixel row or column
+	 */
+	private int start(int pixel, int side) {
+		return (int) ((long) pixel * x.length / side);
+	}
+
+	/**
+	 * @return the cells set on the diagonal of a pixel
+	 */
+	private long diagonal(int pixel, int side) {
+		long set = 0;
+		for (int i = start(pixel, side); i < start(pixel + 1, side); i++)
+			if (get(i, i))
+				set++;
+		return set;
+	}
+
+	/**
+	 * @return the cells set in row i from column from up to column to, where
+	 *         i &le; from
+	 */
+	private int count(int i, int from, int to) {
+		if (from >= to)
+			return 0;
+		int base = rowStart[i] - (i >> 6);
+		int first = from >> 6, last = (to - 1) >> 6;
+		int set = 0;
+		for (int w = first; w <= last; w++) {
+			long word = bits[base + w];
+			if (w == first)
+				word &= -1L << from;
+			if (w == last)
+				word &= -1L >>> (63 - ((to - 1) & 63));
+			set += Long.bitCount(word);
+		}
+		return set;
+	}
+
+	/**
+	 * fill the rows of the words of rows from up to to, splitting them
+	 * between threads until one tile row is left
+	 */
+	private final class Tiles extends RecursiveAction {
+
+		private static final long serialVersionUID = 3081264452371725937L;
+
+		private final int from, to;
+
+		Tiles(int from, int to) {
+			this.from = from;
+			this.to = to;
+		}
+
+		protected void compute() {
+			if (to - from > 1) {
+				int middle = (from + to) >>> 1;
+				invokeAll(new Tiles(from, middle), new Tiles(middle, to));
+				return;
+			}
+			int firstRow = from << 6;
+			int lastRow = Math.min(firstRow + TILE_ROWS, x.length);
+			for (int column = firstRow; column < x.length; column += TILE_COLUMNS) {
+				int end = Math.min(column + TILE_COLUMNS, x.length);
+				for (int i = firstRow; i < lastRow; i++)
+					fill(i, Math.max(column, i), end);
+			}
+		}
+
+		/**
+		 * set the cells of row i from column from up to column to, where
+		 * from is i or a multiple of 64
+		 */
+		private void fill(int i, int from, int to) {
+			double xi = x[i];
+			int base = rowStart[i] - (i >> 6);
+			for (int w = from >> 6; w <= (to - 1) >> 6; w++) {
+				int j = Math.max(w << 6, from);
+				int end = Math.min((w + 1) << 6, to);
+				long word = 0;
+				for (; j < end; j++)
+					word |= (Math.abs(xi - x[j]) < epsilon ? 1L : 0L) << j;
+				bits[base + w] |= word;
+			}
+		}
+	}
+
+	/**
+	 * count the cells of pixel rows from up to to, above and on the diagonal
+	 */
+	private final class Counts extends RecursiveAction {
+
+		private static final long serialVersionUID = -6000815932757337358L;
+
+		private final long[][] upper;
+
+		private final int from, to;
+
+		Counts(long[][] upper, int from, int to) {
+			this.upper = upper;
+			this.from = from;
+			this.to = to;
+		}
+
+		protected void compute() {
+			if (to - from > 1) {
+				int middle = (from + to) >>> 1;
+				invokeAll(new Counts(upper, from, middle), new Counts(upper,
+						middle, to));
+				return;
+			}
+			int side = upper.length;
+			long[] counts = upper[from];
+			for (int i = start(from, side); i < start(from + 1, side); i++)
+				for (int b = from; b < side; b++)
+					counts[b] += count(i, Math.max(i, start(b, side)), start(
+							b + 1, side));
+		}
+	}
+}
@@ -0,0 +1,250 @@
+/*
+ * Cobweb Plot 2008: A function iteration and cobweb plot visualization tool
+ * Copyright (C) 2008 Ball State University
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package edu.bsu.math.cobweb;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * everything needed to pick a session up where it was left: the formula, seed
+ * and k values, the number of iterations, the zoom stack and the orbit.
+ * 
+ * a session file is a small header written with {@link DataOutputStream}
+ * followed by the orbit as raw big-endian doubles, which are copied in bulk
+ * through a direct buffer. the Z columns are views of the orbit, so they are
+ * not saved. the orbit of a started session holds index rows of the span,
+ * the largest k in use, and its first value. the layout of version 2 is
+ * 
+ * <pre>
+ * int     magic 'CWEB'
+ * short   version
+ * UTF     formula of f
+ * double  seed
+ * boolean kth iterate enabled
+ * int     number of k values, then each k
+ * int     index
+ * boolean started
+ * int     number of zoom levels, then xMin, xMax, yMin, yMax of each
+ * int     number of orbit values
+ * double  orbit values
+ * </pre>
+ */
+final class SessionSnapshot {
+
+	/**
+	 * the file extension of saved sessions
+	 */
+	static final String EXTENSION = "cweb";
+
+	private static final int MAGIC = 0x43574542;
+
+	private static final short VERSION = 2;
+
+	private static final int BUFFER_SIZE = 1 << 20;
+
+	private static final int MAX_K_VALUES = 1024;
+
+	/**
+	 * the formula of f
+	 */
+	final String formula;
+
+	/**
+	 * the initial value of the orbit
+	 */
+	final double seed;
+
+	/**
+	 * whether the kth iterate is enabled
+	 */
+	final boolean kEnabled;
+
+	/**
+	 * the k of each Z column, the k of f<sup>k</sup> first
+	 */
+	final int[] kValues;
+
+	/**
+	 * the number of iterations done
+	 */
+	final int index;
+
+	/**
+	 * whether the iteration has started
+	 */
+	final boolean started;
+
+	/**
+	 * the zoom stack, the full zoom first and the current zoom last
+	 */
+	final List<ZoomLevel> zooms;
+
+	/**
+	 * the orbit of f, as far as it has been computed
+	 */
+	final Orbit orbit;
+
+	/**
+	 * construct a {@link SessionSnapshot}
+	 * 
+	 * @param formula
+	 *            the formula of f
+	 * @param seed
+	 *            the initial value of the orbit
+	 * @param kEnabled
+	 *            whether the kth iterate is enabled
+	 * @param kValues
+	 *            the k of each Z column, the k of f<sup>k</sup> first
+	 * @param index
+	 *            the number of iterations done
+	 * @param started
+	 *            whether the iteration has started
+	 * @param zooms
+	 *            the zoom stack, the full zoom first and the current zoom last
+	 * @param orbit
+	 *            the orbit of f, as far as it has been computed
+	 */
+	public SessionSnapshot(String formula, double seed, boolean kEnabled,
+			int[] kValues, int index, boolean started, List<ZoomLevel> zooms,
+			Orbit orbit) {
+		this.formula = formula;
+		this.seed = seed;
+		this.kEnabled = kEnabled;
+		this.kValues = kValues.clone();
+		this.index = index;
+		this.started = started;
+		this.zooms = Collections.unmodifiableList(new ArrayList<ZoomLevel>(
+				zooms));
+		this.orbit = orbit;
+	}
+
+	/**
+	 * write the session to a file
+	 * 
+	 * @param file
+	 *            the {@link File} to write
+	 * @throws IOException
+	 *             if the file can not be written
+	 */
+	void write(File file) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream header = new DataOutputStream(bytes);
+		header.writeInt(MAGIC);
+		header.writeShort(VERSION);
+		header.writeUTF(formula);
+		header.writeDouble(seed);
+		header.writeBoolean(kEnabled);
+		header.writeInt(kValues.length);
+		for (int k : kValues)
+			header.writeInt(k);
+		header.writeInt(index);
+		header.writeBoolean(started);
+		header.writeInt(zooms.size());
+		for (ZoomLevel zoom : zooms) {
+			header.writeDouble(zoom.xMin);
+			header.writeDouble(zoom.xMax);
+			header.writeDouble(zoom.yMin);
+			header.writeDouble(zoom.yMax);
+		}
+		header.writeInt(orbit.size());
+		header.flush();
+
+		RandomAccessFile out = new RandomAccessFile(file, "rw");
+		try {
+			FileChannel channel = out.getChannel();
+			channel.truncate(0);
+			ByteBuffer buffer = ByteBuffer.wrap(bytes.toByteArray());
+			while (buffer.hasRemaining())
+				channel.write(buffer);
+			orbit.writeTo(channel, ByteBuffer.allocateDirect(BUFFER_SIZE));
+		} finally {
+			out.close();
+		}
+	}
+
+	/**
+	 * read a session from a file
+	 * 
+	 * @param file
+	 *            the {@link File} to read
+	 * @return the {@link SessionSnapshot} in the file
+	 * @throws IOException
+	 *             if the file can not be read or is not a session
+	 */
+	static SessionSnapshot read(File file) throws IOException {
+		RandomAccessFile in = new RandomAccessFile(file, "r");
+		try {
+			FileChannel channel = in.getChannel();
+			// unbuffered, so the channel is left just past the header
+			DataInputStream header = new DataInputStream(Channels
+					.newInputStream(channel));
+			if (header.readInt() != MAGIC)
+				throw new IOException(file.getName()
+						+ " is not a cobweb plot session");
+			short version = header.readShort();
+			if (version != VERSION)
+				throw new IOException(file.getName()
+						+ " is a session of unknown version " + version);
+			String formula = header.readUTF();
+			double seed = header.readDouble();
+			boolean kEnabled = header.readBoolean();
+			int[] kValues = new int[header.readInt()];
+			if (kValues.length < 1 || kValues.length > MAX_K_VALUES)
+				throw new IOException(file.getName()
+						+ " has a damaged number of k values");
+			for (int i = 0; i < kValues.length; i++)
+				if ((kValues[i] = header.readInt()) < 1)
+					throw new IOException(file.getName() + " has k = "
+							+ kValues[i]);
+			int index = header.readInt();
+			boolean started = header.readBoolean();
+			int zoomCount = header.readInt();
+			if (zoomCount < 1)
+				throw new IOException(file.getName() + " has no zoom levels");
+			List<ZoomLevel> zooms = new ArrayList<ZoomLevel>(zoomCount);
+			for (int i = 0; i < zoomCount; i++)
+				zooms.add(new ZoomLevel(header.readDouble(), header
+						.readDouble(), header.readDouble(), header
+						.readDouble()));
+			int count = header.readInt();
+			int span = kEnabled ? OrbitView.span(kValues) : 1;
+			if (count < 0 || 8L * count > channel.size()
+					|| (started && count != (long) index * span + 1))
+				throw new IOException(file.getName()
+						+ " has a damaged orbit size");
+
+			Orbit orbit = new Orbit();
+			orbit.readFrom(channel, count, ByteBuffer
+					.allocateDirect(BUFFER_SIZE));
+			return new SessionSnapshot(formula, seed, kEnabled, kValues,
+					index, started, zooms, orbit);
+		} finally {
+			in.close();
+		}
+	}
+}
@@ -0,0 +1,398 @@
+/*
+ * Cobweb Plot 2008: A function iteration and cobweb plot visualization tool
+ * Copyright (C) 2008 Ball State University
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package edu.bsu.math.cobweb;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * the power spectrum and autocorrelation of a stretch of an orbit. a cycle
+ * of period p shows as peaks at multiples of 1/p, a quasi-periodic orbit as
+ * peaks that are not, and a chaotic one as a broad spectrum whose
+ * autocorrelation dies away.
+ * 
+ * the mean is taken off the values, which are padded with zeros to M, twice
+ * the next power of two, so the autocorrelation does not wrap around. both
+ * come from one real FFT of length M, done as a complex FFT of length M / 2
+ * on primitive arrays. the first stages of the FFT are done
+ * {@link #BLOCK_SIZE} points at a time, so each block is read from memory
+ * once for all of them, and the later stages two at a time, so memory is
+ * read half as often. the stages and blocks are split between the threads
+ * of a fork-join pool once it has at least {@link #PARALLEL_SIZE} points,
+ * and every sine and cosine comes from one table.
+ * 
+ * the autocorrelation is the inverse transform of the power of the values
+ * without a window, so a window only changes the spectrum, at the cost of a
+ * second forward FFT.
+ */
+final class Spectrum {
+
+	/**
+	 * the smallest FFT split between threads
+	 */
+	static final int PARALLEL_SIZE = 1 << 14;
+
+	/**
+	 * the points of the FFT whose first stages are done together, small
+	 * enough to stay in the cache
+	 */
+	static final int BLOCK_SIZE = 1 << 12;
+
+	/**
+	 * the butterflies of a stage done by one task
+	 */
+	private static final int BUTTERFLIES_PER_TASK = 1 << 13;
+
+	private final double[] power;
+
+	private final double[] autocorrelation;
+
+	private final int padded;
+
+	/**
+	 * construct a {@link Spectrum}, computing the power spectrum and the
+	 * autocorrelation
+	 * 
+	 * @param x
+	 *            the values of the orbit, which are not changed
+	 * @param hann
+	 *            true to taper the values with a Hann window before the
+	 *            spectrum is taken, if there are at least three
+	 * @param pool
+	 *            the {@link ForkJoinPool} the FFTs are split over
+	 * @throws IllegalArgumentException
+	 *             if there are fewer than two values or a value is not finite
+	 */
+	public Spectrum(double[] x, boolean hann, ForkJoinPool pool) {
+		int n = x.length;
+		if (n < 2)
+			throw new IllegalArgumentException("too few values: " + n);
+		double mean = 0;
+		for (double v : x) {
+			if (!CobwebRenderer.isFinite(v))
+				throw new IllegalArgumentException("the orbit is not finite");
+			mean += v;
+		}
+		mean /= n;
+		// a Hann window of two values weighs both at zero
+		boolean window = hann && n >= 3;
+		padded = 2 * Integer.highestOneBit(2 * n - 1);
+		if (padded <= 0)
+			throw new IllegalArgumentException("too many values: " + n);
+		int half = padded / 2;
+		double[] re = new double[half], im = new double[half];
+		double[] cos = new double[half], sin = new double[half];
+		angles(cos, sin);
+
+		// the spectrum, windowed or not
+		double[] squares = new double[half + 1];
+		double weight = realTransform(x, mean, window, re, im, cos, sin,
+				squares, pool);
+		power = new double[half + 1];
+		for (int k = 0; k <= half; k++)
+			power[k] = squares[k] / weight;
+
+		// the autocorrelation, from the power of the values without a window
+		if (window)
+			realTransform(x, mean, false, re, im, cos, sin, squares, pool);
+		autocorrelation = new double[n];
+		inverseRealTransform(squares, re, im, cos, sin, pool);
+		double r0 = re[0];
+		for (int lag = 0; lag < n; lag++) {
+			double r = (lag & 1) == 0 ? re[lag >> 1] : im[lag >> 1];
+			autocorrelation[lag] = r0 == 0 ? 0 : r / r0;
+		}
+	}
+
+	/**
+	 * @return the power at frequencies k / M cycles per step, k from 0 to
+	 *         M / 2
+	 */
+	double[] getPower() {
+		return power;
+	}
+
+	/**
+	 * @return the autocorrelation at lags 0 to N - 1, 1 at lag 0
+	 */
+	double[] getAutocorrelation() {
+		return autocorrelation;
+	}
+
+	/**
+	 * @return M, the length of the transform
+	 */
+	int getPadded() {
+		return padded;
+	}
+
+	/**
+	 * fill in the cosines and sines of &pi;k / length for k up to length, a
+	 * quarter of a turn of them from Math and the rest by symmetry
+	 */
+	private static void angles(double[] cos, double[] sin) {
+		int n = cos.length, quarter = Math.max(n / 2, 1);
+		for (int k = 0; k < quarter; k++) {
+			double angle = Math.PI * k / n;
+			cos[k] = Math.cos(angle);
+			sin[k] = Math.sin(angle);
+		}
+		for (int k = quarter; k < n; k++) {
+			cos[k] = -sin[k - quarter];
+			sin[k] = cos[k - quarter];
+		}
+	}
+
+	private static double hann(int i, int n) {
+		return 0.5 - 0.5 * Math.cos(2 * Math.PI * i / (n - 1));
+	}
+
+	/**
+	 * find |X<sub>k</sub>|<sup>2</sup> for k from 0 to M / 2, where X is the
+	 * transform of the values less their mean, padded to M
+	 * 
+	 * @return the sum of the squares of the window
+	 */
+	private static double realTransform(double[] x, double mean, boolean hann,
+			double[] re, double[] im, double[] cos, double[] sin,
+			double[] squares, ForkJoinPool pool) {
+		int half = re.length, n = x.length;
+		// the even values are the real parts, the odd ones the imaginary
+		double weight = 0;
+		for (int i = 0; i < 2 * half; i++) {
+			double v = 0;
+			if (i < n) {
+				double w = hann ? hann(i, n) : 1;
+				v = (x[i] - mean) * w;
+				weight += w * w;
+			}
+			if ((i & 1) == 0)
+				re[i >> 1] = v;
+			else
+				im[i >> 1] = v;
+		}
+		fft(re, im, false, cos, sin, pool);
+		// split the transform of the pairs into that of the evens and odds
+		for (int k = 0; k <= half; k++) {
+			int a = k % half, b = (half - k) % half;
+			double zr = re[a], zi = im[a], cr = re[b], ci = -im[b];
+			double er = (zr + cr) / 2, ei = (zi + ci) / 2;
+			double or = (zi - ci) / 2, oi = -(zr - cr) / 2;
+			// e^(-i pi k / half), and -1 at k = half
+			double wr = k < half ? cos[k] : -1, wi = k < half ? -sin[k] : 0;
+			double xr = er + wr * or - wi * oi, xi = ei + wr * oi + wi * or;
+			squares[k] = xr * xr + xi * xi;
+		}
+		return weight;
+	}
+
+	/**
+	 * find the inverse transform of the power, which is real and even, with
+	 * the values at even lags left in re and at odd lags in im
+	 */
+	private static void inverseRealTransform(double[] squares, double[] re,
+			double[] im, double[] cos, double[] sin, ForkJoinPool pool) {
+		int half = re.length;
+		for (int k = 0; k < half; k++) {
+			double p = squares[k], q = squares[half - k];
+			double d = (p - q) / 2;
+			// the evens plus i times the odds
+			re[k] = (p + q) / 2 - d * sin[k];
+			im[k] = d * cos[k];
+		}
+		fft(re, im, true, cos, sin, pool);
+		for (int k = 0; k < half; k++) {
+			re[k] /= half;
+			im[k] /= half;
+		}
+	}
+
+	/**
+	 * transform complex values in place, leaving the inverse unscaled
+	 * 
+	 * @param re
+	 *            the real parts, a power of two of them
+	 * @param im
+	 *            the imaginary parts
+	 * @param inverse
+	 *            true for the inverse transform
+	 * @param cos
+	 *            the cosines of &pi;k / n for k from 0 to n - 1
+	 * @param sin
+	 *            the sines of &pi;k / n
+	 * @param pool
+	 *            the {@link ForkJoinPool} large transforms are split over
+	 */
+	static void fft(double[] re, double[] im, boolean inverse, double[] cos,
+			double[] sin, ForkJoinPool pool) {
+		int n = re.length;
+		if (Integer.bitCount(n) != 1)
+			throw new IllegalArgumentException("not a power of two: " + n);
+		for (int i = 1, j = 0; i < n; i++) {
+			int bit = n >> 1;
+			for (; (j & bit) != 0; bit >>= 1)
+				j ^= bit;
+			j |= bit;
+			if (i < j) {
+				double t = re[i];
+				re[i] = re[j];
+				re[j] = t;
+				t = im[i];
+				im[i] = im[j];
+				im[j] = t;
+			}
+		}
+		int block = Math.min(n, BLOCK_SIZE);
+		Stage first = new Stage(re, im, cos, sin, inverse, false, 1, block,
+				0, n / 2);
+		if (n >= PARALLEL_SIZE)
+			pool.invoke(first);
+		else
+			first.butterflies();
+		for (int size = block; size < n;) {
+			boolean pairs = 4 * size <= n;
+			Stage stage = new Stage(re, im, cos, sin, inverse, pairs, size,
+					pairs ? 4 * size : 2 * size, 0, pairs ? n / 4 : n / 2);
+			if (n >= PARALLEL_SIZE)
+				pool.invoke(stage);
+			else
+				stage.butterflies();
+			size = stage.end;
+		}
+	}
+
+	/**
+	 * the butterflies from to to of the stages from size up to end, each
+	 * combining pairs of transforms of a size into ones of twice the size.
+	 * for more than one stage the range must be whole blocks of end / 2
+	 * butterflies, which are done one block at a time, unless they are a
+	 * pair of stages done together, when from and to count groups of the
+	 * four points that are combined with each other.
+	 */
+	private static final class Stage extends RecursiveAction {
+
+		private static final long serialVersionUID = 1963720440163016592L;
+
+		private final double[] re, im, cos, sin;
+
+		private final boolean inverse, pairs;
+
+		private final int size, end, from, to;
+
+		Stage(double[] re, double[] im, double[] cos, double[] sin,
+				boolean inverse, boolean pairs, int size, int end, int from,
+				int to) {
+			this.re = re;
+			this.im = im;
+			this.cos = cos;
+			this.sin = sin;
+			this.inverse = inverse;
+			this.pairs = pairs;
+			this.size = size;
+			this.end = end;
+			this.from = from;
+			this.to = to;
+		}
+
+		protected void compute() {
+			int smallest = pairs ? BUTTERFLIES_PER_TASK : Math.max(
+					BUTTERFLIES_PER_TASK, end / 2);
+			if (to - from > smallest) {
+				int middle = (from + to) >>> 1;
+				invokeAll(new Stage(re, im, cos, sin, inverse, pairs, size,
+						end, from, middle), new Stage(re, im, cos, sin,
+						inverse, pairs, size, end, middle, to));
+			} else {
+				butterflies();
+			}
+		}
+
+		void butterflies() {
+			if (pairs) {
+				pairs(size, from, to);
+				return;
+			}
+			int blockButterflies = Math.max(end / 2, 1);
+			for (int start = from; start < to; start += blockButterflies) {
+				int stop = Math.min(start + blockButterflies, to);
+				int s = size;
+				for (; 4 * s <= end; s <<= 2)
+					pairs(s, start / 2, stop / 2);
+				if (s < end)
+					stage(s, start, stop);
+			}
+		}
+
+		private void stage(int s, int from, int to) {
+			int step = re.length / s;
+			for (int b = from; b < to; b++) {
+				int j = b & (s - 1);
+				int i = ((b - j) << 1) + j, k = i + s;
+				double wr = cos[j * step];
+				double wi = inverse ? sin[j * step] : -sin[j * step];
+				double tr = wr * re[k] - wi * im[k];
+				double ti = wr * im[k] + wi * re[k];
+				re[k] = re[i] - tr;
+				im[k] = im[i] - ti;
+				re[i] += tr;
+				im[i] += ti;
+			}
+		}
+
+		/**
+		 * the stages of size s and 2s for the groups of four points from to
+		 * to, done on each group at once
+		 */
+		private void pairs(int s, int from, int to) {
+			int n = re.length, step = n / s;
+			double sign = inverse ? 1 : -1;
+			for (int q = from; q < to; q++) {
+				int j = q & (s - 1);
+				int a = ((q - j) << 2) + j, b = a + s, c = b + s, d = c + s;
+				// e^(-i pi j / s) for the first stage, e^(-i pi j / 2s) and
+				// e^(-i pi (j + s) / 2s) for the second
+				int k1 = j * step, k2 = k1 >> 1, k3 = k2 + n / 2;
+				double w1r = cos[k1], w1i = sign * sin[k1];
+				double w2r = cos[k2], w2i = sign * sin[k2];
+				double w3r = cos[k3], w3i = sign * sin[k3];
+
+				double tr = w1r * re[b] - w1i * im[b];
+				double ti = w1r * im[b] + w1i * re[b];
+				double ar = re[a] + tr, ai = im[a] + ti;
+				double br = re[a] - tr, bi = im[a] - ti;
+				tr = w1r * re[d] - w1i * im[d];
+				ti = w1r * im[d] + w1i * re[d];
+				double cr = re[c] + tr, ci = im[c] + ti;
+				double dr = re[c] - tr, di = im[c] - ti;
+
+				tr = w2r * cr - w2i * ci;
+				ti = w2r * ci + w2i * cr;
+				re[a] = ar + tr;
+				im[a] = ai + ti;
+				re[c] = ar - tr;
+				im[c] = ai - ti;
+				tr = w3r * dr - w3i * di;
+				ti = w3r * di + w3i * dr;
+				re[b] = br + tr;
+				im[b] = bi + ti;
+				re[d] = br - tr;
+				im[d] = bi - ti;
+			}
+		}
+	}
+}
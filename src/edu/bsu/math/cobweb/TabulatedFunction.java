@@ -0,0 +1,341 @@
+/*
+ * Cobweb Plot 2008: A function iteration and cobweb plot visualization tool
+ * Copyright (C) 2008 Ball State University
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package edu.bsu.math.cobweb;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Comparator;
+
+import EDU.emporia.mathtools.MathFunction;
+
+/**
+ * a map given by a table of points (x, f(x)) rather than a formula, such as
+ * one measured from data. between two points f is interpolated along a line
+ * or along a cubic whose slope at each point is the Bessel slope, the slope
+ * of the parabola through it and its neighbours, so the curve is smooth and
+ * goes through every point. outside the points f is NaN.
+ * 
+ * unlike PiecewiseLinearFunction, which searches its points one by one, the
+ * segment that holds x is found through a uniform grid over the points: the
+ * cell of x is computed, and the cells next to it know the segments at their
+ * left edges. the cells are no wider than the closest two points, so a cell
+ * holds at most one point and x is found in O(1), unless that would take
+ * more than {@link #MAX_CELLS} cells; then the segments between the edges
+ * are searched by bisection, which is O(log n) however bunched the points
+ * are. a table never changes, so any number of threads may evaluate it at
+ * once.
+ * 
+ * a table is named in a formula as table(file) for lines or spline(file) for
+ * cubics. the file has a point on each line, x and f(x) separated by white
+ * space, a comma or a semicolon, in any order of x. blank lines, lines
+ * starting with # and a header line are skipped.
+ */
+final class TabulatedFunction extends MathFunction {
+
+	/**
+	 * the formula of a table interpolated along lines is LINEAR(file)
+	 */
+	static final String LINEAR = "table";
+
+	/**
+	 * the formula of a table interpolated along cubics is CUBIC(file)
+	 */
+	static final String CUBIC = "spline";
+
+	/**
+	 * the most cells in the grid, unless there are more segments
+	 */
+	static final int MAX_CELLS = 1 << 20;
+
+	/**
+	 * the most segments looked at one by one before bisecting
+	 */
+	private static final int WALK = 8;
+
+	private final double[] x, y;
+
+	/**
+	 * the slope at each point, or null for lines
+	 */
+	private final double[] slopes;
+
+	/**
+	 * the number of cells per unit of x
+	 */
+	private final double scale;
+
+	/**
+	 * cells[c] is the last segment that starts at or before the left edge of
+	 * cell c
+	 */
+	private final int[] cells;
+
+	private final String name;
+
+	/**
+	 * construct a {@link TabulatedFunction}
+	 * 
+	 * @param x
+	 *            the x of each point, increasing
+	 * @param y
+	 *            f(x) at each point
+	 * @param cubic
+	 *            true to interpolate along cubics, false along lines
+	 * @param name
+	 *            what the table is called, such as its file name
+	 * @throws IllegalArgumentException
+	 *             if there are fewer than two points, a value is not finite
+	 *             or x is not increasing
+	 */
+	public TabulatedFunction(double[] x, double[] y, boolean cubic, String name) {
+		if (x.length != y.length || x.length < 2)
+			throw new IllegalArgumentException("a table needs two points");
+		for (int i = 0; i < x.length; i++) {
+			if (!CobwebRenderer.isFinite(x[i]) || !CobwebRenderer.isFinite(y[i]))
+				throw new IllegalArgumentException("not a finite point: ("
+						+ x[i] + ", " + y[i] + ")");
+			if (i > 0 && !(x[i] > x[i - 1]))
+				throw new IllegalArgumentException("x is not increasing at "
+						+ x[i]);
+		}
+		this.x = x;
+		this.y = y;
+		this.name = name;
+		slopes = cubic ? besselSlopes(x, y) : null;
+
+		int segments = x.length - 1;
+		double closest = Double.POSITIVE_INFINITY;
+		for (int i = 0; i < segments; i++)
+			closest = Math.min(closest, x[i + 1] - x[i]);
+		double range = x[segments] - x[0];
+		int count = (int) Math.max(segments, Math.min(Math.max(segments,
+				MAX_CELLS), Math.ceil(range / closest)));
+		scale = count / range;
+		cells = new int[count];
+		int i = 0;
+		for (int c = 0; c < count; c++) {
+			double edge = x[0] + c / scale;
+			while (i < segments - 1 && x[i + 1] <= edge)
+				i++;
+			cells[c] = i;
+		}
+		setTitle("y=" + toString());
+	}
+
+	/**
+	 * @param formula
+	 *            a formula
+	 * @return true if the formula names a table, as LINEAR(file) or
+	 *         CUBIC(file)
+	 */
+	static boolean isTable(String formula) {
+		String f = formula.trim();
+		return f.endsWith(")")
+				&& (f.startsWith(LINEAR + "(") || f.startsWith(CUBIC + "("));
+	}
+
+	/**
+	 * read the table a formula names
+	 * 
+	 * @param formula
+	 *            LINEAR(file) or CUBIC(file)
+	 * @return the {@link TabulatedFunction}
+	 * @throws IOException
+	 *             if the file can not be read or is not a table
+	 */
+	static TabulatedFunction read(String formula) throws IOException {
+		String f = formula.trim();
+		if (!isTable(f))
+			throw new IOException("not a table: " + f);
+		return read(file(f), f.startsWith(CUBIC + "("));
+	}
+
+	/**
+	 * @param formula
+	 *            LINEAR(file) or CUBIC(file)
+	 * @return the file the formula names
+	 */
+	static File file(String formula) {
+		String f = formula.trim();
+		return new File(f.substring(f.indexOf('(') + 1, f.length() - 1).trim());
+	}
+
+	/**
+	 * read a table from a file
+	 * 
+	 * @param file
+	 *            the file of points
+	 * @param cubic
+	 *            true to interpolate along cubics, false along lines
+	 * @return the {@link TabulatedFunction}
+	 * @throws IOException
+	 *             if the file can not be read or is not a table
+	 */
+	static TabulatedFunction read(File file, boolean cubic) throws IOException {
+		double[] xs = new double[1024], ys = new double[1024];
+		int n = 0;
+		BufferedReader in = new BufferedReader(new FileReader(file));
+		try {
+			String line;
+			int number = 0;
+			while ((line = in.readLine()) != null) {
+				number++;
+				line = line.trim();
+				if (line.length() == 0 || line.startsWith("#"))
+					continue;
+				String[] parts = line.split("[\\s,;]+");
+				try {
+					if (parts.length != 2)
+						throw new NumberFormatException();
+					double px = Double.parseDouble(parts[0]);
+					double py = Double.parseDouble(parts[1]);
+					if (n == xs.length) {
+						xs = Arrays.copyOf(xs, 2 * n);
+						ys = Arrays.copyOf(ys, 2 * n);
+					}
+					xs[n] = px;
+					ys[n] = py;
+					n++;
+				} catch (NumberFormatException e) {
+					// the first line may name the columns
+					if (n > 0 || number > 1)
+						throw new IOException(file.getName() + ", line "
+								+ number + ": not a point: " + line);
+				}
+			}
+		} finally {
+			in.close();
+		}
+
+		final double[] px = Arrays.copyOf(xs, n), py = Arrays.copyOf(ys, n);
+		boolean sorted = true;
+		for (int i = 1; i < n && sorted; i++)
+			sorted = px[i] > px[i - 1];
+		if (!sorted) {
+			Integer[] order = new Integer[n];
+			for (int i = 0; i < n; i++)
+				order[i] = i;
+			Arrays.sort(order, new Comparator<Integer>() {
+
+				public int compare(Integer a, Integer b) {
+					return Double.compare(px[a], px[b]);
+				}
+			});
+			xs = new double[n];
+			ys = new double[n];
+			for (int i = 0; i < n; i++) {
+				xs[i] = px[order[i]];
+				ys[i] = py[order[i]];
+			}
+		} else {
+			xs = px;
+			ys = py;
+		}
+		try {
+			return new TabulatedFunction(xs, ys, cubic, file.getName());
+		} catch (IllegalArgumentException e) {
+			throw new IOException(file.getName() + ": " + e.getMessage());
+		}
+	}
+
+	/**
+	 * @return the slope at each point of the parabola through it and its
+	 *         neighbours, or of the line to its one neighbour at either end
+	 */
+	private static double[] besselSlopes(double[] x, double[] y) {
+		int last = x.length - 1;
+		double[] slopes = new double[x.length];
+		slopes[0] = (y[1] - y[0]) / (x[1] - x[0]);
+		slopes[last] = (y[last] - y[last - 1]) / (x[last] - x[last - 1]);
+		for (int i = 1; i < last; i++) {
+			double h0 = x[i] - x[i - 1], h1 = x[i + 1] - x[i];
+			double d0 = (y[i] - y[i - 1]) / h0, d1 = (y[i + 1] - y[i]) / h1;
+			slopes[i] = (h1 * d0 + h0 * d1) / (h0 + h1);
+		}
+		return slopes;
+	}
+
+	public double functionValue(double t) {
+		int last = x.length - 1;
+		if (!(t >= x[0] && t <= x[last]))
+			return Double.NaN;
+		int c = Math.min((int) ((t - x[0]) * scale), cells.length - 1);
+		// the cell may be off by one where (t - x[0]) * scale rounds
+		int lo = cells[Math.max(c - 1, 0)];
+		int hi = c + 2 < cells.length ? cells[c + 2] : last - 1;
+		int i;
+		if (hi - lo <= WALK) {
+			i = lo;
+			while (i < hi && t >= x[i + 1])
+				i++;
+		} else {
+			i = Arrays.binarySearch(x, lo, hi + 1, t);
+			if (i < 0)
+				i = -i - 2;
+			i = Math.min(Math.max(i, lo), hi);
+		}
+
+		double h = x[i + 1] - x[i];
+		double s = (t - x[i]) / h;
+		double y0 = y[i], y1 = y[i + 1];
+		if (slopes == null)
+			return y0 + s * (y1 - y0);
+		// the cubic Hermite polynomial through both points with their slopes
+		double m0 = slopes[i] * h, m1 = slopes[i + 1] * h;
+		double s2 = s * s, s3 = s2 * s;
+		return (2 * s3 - 3 * s2 + 1) * y0 + (s3 - 2 * s2 + s) * m0
+				+ (-2 * s3 + 3 * s2) * y1 + (s3 - s2) * m1;
+	}
+
+	/**
+	 * @return the number of points
+	 */
+	int size() {
+		return x.length;
+	}
+
+	/**
+	 * @return true if the table is interpolated along cubics
+	 */
+	boolean isCubic() {
+		return slopes != null;
+	}
+
+	/**
+	 * @return the smallest x of the table
+	 */
+	double getMinX() {
+		return x[0];
+	}
+
+	/**
+	 * @return the largest x of the table
+	 */
+	double getMaxX() {
+		return x[x.length - 1];
+	}
+
+	public String toString() {
+		return (isCubic() ? "cubic" : "linear") + " interpolation of " + name
+				+ ", " + x.length + " points on [" + x[0] + ", "
+				+ x[x.length - 1] + "]";
+	}
+}
@@ -0,0 +1,173 @@
+/*
+ * Cobweb Plot 2008: A function iteration and cobweb plot visualization tool
+ * Copyright (C) 2008 Ball State University
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package edu.bsu.math.cobweb;
+
+/**
+ * the conditions that stop an iteration before it has done all the steps
+ * asked for. {@link #check(double, double)} looks at each new value and only
+ * compares numbers, so it can run on every step; the time and memory budget
+ * is checked with {@link #checkBudget(long, long)} once per batch.
+ */
+final class TerminationPolicy {
+
+	/**
+	 * why an iteration stopped
+	 */
+	enum Reason {
+
+		COMPLETED("finished"),
+
+		CANCELLED("was cancelled"),
+
+		ESCAPED("escaped the radius"),
+
+		NOT_FINITE("reached infinity or NaN"),
+
+		CONVERGED("converged"),
+
+		TIME_LIMIT("ran out of time"),
+
+		MEMORY_LIMIT("reached the memory limit");
+
+		private final String description;
+
+		private Reason(String description) {
+			this.description = description;
+		}
+
+		/**
+		 * @return what happened, to follow "the orbit"
+		 */
+		String getDescription() {
+			return description;
+		}
+	}
+
+	/**
+	 * the policy used until the user sets one: stop at infinity or NaN and
+	 * keep the orbit within a quarter of the heap
+	 */
+	static final TerminationPolicy DEFAULT = new TerminationPolicy(
+			Double.POSITIVE_INFINITY, true, 0, 0, Runtime.getRuntime()
+					.maxMemory() / 4);
+
+	private final double escapeRadius;
+
+	private final boolean stopOnNonFinite;
+
+	private final double tolerance;
+
+	private final long maxNanos;
+
+	private final long maxBytes;
+
+	/**
+	 * construct a {@link TerminationPolicy}
+	 * 
+	 * @param escapeRadius
+	 *            stop once |x| is larger, or infinity for no limit
+	 * @param stopOnNonFinite
+	 *            stop once x is infinite or NaN
+	 * @param tolerance
+	 *            stop once x moves less than this in one step, or 0 to never
+	 *            stop for convergence
+	 * @param maxMillis
+	 *            the longest an iteration may run, or 0 for no limit
+	 * @param maxBytes
+	 *            the most memory the orbit may take, or 0 for no limit
+	 */
+	public TerminationPolicy(double escapeRadius, boolean stopOnNonFinite,
+			double tolerance, long maxMillis, long maxBytes) {
+		if (!(escapeRadius > 0) || !(tolerance >= 0) || maxMillis < 0
+				|| maxBytes < 0)
+			throw new IllegalArgumentException("limits must not be negative");
+		this.escapeRadius = escapeRadius;
+		this.stopOnNonFinite = stopOnNonFinite;
+		this.tolerance = tolerance;
+		this.maxNanos = maxMillis * 1000000L;
+		this.maxBytes = maxBytes;
+	}
+
+	/**
+	 * @param previous
+	 *            the value before x
+	 * @param x
+	 *            the new value of the orbit
+	 * @return the {@link Reason} to stop at x, or null to go on
+	 */
+	Reason check(double previous, double x) {
+		// x - x is NaN for both infinities and NaN
+		if (stopOnNonFinite && x - x != 0)
+			return Reason.NOT_FINITE;
+		if (x > escapeRadius || -x > escapeRadius)
+			return Reason.ESCAPED;
+		if (Math.abs(x - previous) < tolerance)
+			return Reason.CONVERGED;
+		return null;
+	}
+
+	/**
+	 * @param elapsedNanos
+	 *            how long the iteration has run
+	 * @param bytes
+	 *            the memory taken by the orbit
+	 * @return the {@link Reason} to stop now, or null to go on
+	 */
+	Reason checkBudget(long elapsedNanos, long bytes) {
+		if (maxNanos > 0 && elapsedNanos >= maxNanos)
+			return Reason.TIME_LIMIT;
+		if (maxBytes > 0 && bytes >= maxBytes)
+			return Reason.MEMORY_LIMIT;
+		return null;
+	}
+
+	/**
+	 * @return the escape radius, infinity for none
+	 */
+	double getEscapeRadius() {
+		return escapeRadius;
+	}
+
+	/**
+	 * @return whether the iteration stops at infinity or NaN
+	 */
+	boolean isStopOnNonFinite() {
+		return stopOnNonFinite;
+	}
+
+	/**
+	 * @return the convergence tolerance, 0 for none
+	 */
+	double getTolerance() {
+		return tolerance;
+	}
+
+	/**
+	 * @return the time limit in milliseconds, 0 for none
+	 */
+	long getMaxMillis() {
+		return maxNanos / 1000000L;
+	}
+
+	/**
+	 * @return the memory limit in bytes, 0 for none
+	 */
+	long getMaxBytes() {
+		return maxBytes;
+	}
+}
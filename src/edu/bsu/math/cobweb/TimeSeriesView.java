@@ -0,0 +1,461 @@
+/*
+ * Cobweb Plot 2008: A function iteration and cobweb plot visualization tool
+ * Copyright (C) 2008 Ball State University
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package edu.bsu.math.cobweb;
+
+import java.awt.Color;
+import java.awt.Dimension;
+import java.awt.FontMetrics;
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.Point;
+import java.awt.Rectangle;
+import java.awt.RenderingHints;
+import java.awt.event.InputEvent;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.awt.event.MouseWheelEvent;
+import java.awt.geom.Path2D;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Stack;
+
+import javax.swing.JComponent;
+
+/**
+ * the plot of x<sub>n</sub> against n for one or more {@link OrbitView}s.
+ * 
+ * the values are read straight from the orbit through an {@link OrbitIndex}
+ * per track. when a pixel column holds more than
+ * {@link #POINTS_PER_COLUMN} values, only the first, smallest, largest and
+ * last of them are drawn, which is the same picture as drawing every line
+ * between them; the smallest and largest come from the index, so a column
+ * costs about the same for a hundred values as for a hundred million, and a
+ * paint costs about the width of the view. values that arrive while the
+ * view is open are added to the indexes when it is next painted.
+ * 
+ * the mouse works as it does on the graph: drag a rectangle to zoom in,
+ * scroll up to zoom in and down to go back, and click the right button to
+ * see the whole orbit again. dragging with shift or the middle button held
+ * pans. the whole orbit is shown with the y axis fitted to it and grows
+ * with the orbit.
+ */
+final class TimeSeriesView extends JComponent {
+
+	private static final long serialVersionUID = -1739360513804331570L;
+
+	/**
+	 * the most values in a pixel column drawn one by one
+	 */
+	static final int POINTS_PER_COLUMN = 2;
+
+	private static final int SCROLL_ZOOM_SIZE = 75;
+
+	private static final int MARGIN = 4;
+
+	private final List<Track> tracks = new ArrayList<Track>();
+
+	/**
+	 * the zooms, the latest on top, with the whole orbit under them all
+	 */
+	private final Stack<ZoomLevel> zoomStack = new Stack<ZoomLevel>();
+
+	/**
+	 * the n and y ranges last painted, which the mouse works in
+	 */
+	private ZoomLevel shown = new ZoomLevel(0, 1, 0, 1);
+
+	private Point dragStart;
+
+	private boolean panning;
+
+	private Rectangle zoomRectangle;
+
+	private String axisName = "n";
+
+	private double axisScale = 1;
+
+	/**
+	 * one line of the plot
+	 */
+	private static final class Track {
+
+		final String name;
+
+		final OrbitIndex index;
+
+		final Color color;
+
+		volatile boolean visible = true;
+
+		/**
+		 * the first, smallest, largest and last value of each pixel column
+		 */
+		double[] columns = new double[0];
+
+		Track(String name, OrbitView view, Color color) {
+			this.name = name;
+			this.index = new OrbitIndex(view);
+			this.color = color;
+		}
+	}
+
+	/**
+	 * construct an empty {@link TimeSeriesView}
+	 */
+	public TimeSeriesView() {
+		setPreferredSize(new Dimension(600, 300));
+		setOpaque(true);
+		MouseAdapter mouse = new MouseAdapter() {
+
+			public void mousePressed(MouseEvent ev) {
+				if (dragStart != null)
+					return;
+				panning = ev.getButton() == MouseEvent.BUTTON2
+						|| (ev.getButton() == MouseEvent.BUTTON1 && (ev
+								.getModifiersEx() & InputEvent.SHIFT_DOWN_MASK) != 0);
+				if (panning || ev.getButton() == MouseEvent.BUTTON1)
+					dragStart = ev.getPoint();
+			}
+
+			public void mouseDragged(MouseEvent ev) {
+				if (dragStart == null)
+					return;
+				Point p = ev.getPoint();
+				if (panning) {
+					pan(p.x - dragStart.x, p.y - dragStart.y);
+					dragStart = p;
+				} else {
+					zoomRectangle = new Rectangle(Math.min(p.x, dragStart.x),
+							Math.min(p.y, dragStart.y), Math.abs(p.x
+									- dragStart.x), Math.abs(p.y
+									- dragStart.y));
+				}
+				repaint();
+			}
+
+			public void mouseReleased(MouseEvent ev) {
+				if (dragStart != null) {
+					Rectangle r = zoomRectangle;
+					dragStart = null;
+					zoomRectangle = null;
+					if (!panning && r != null && r.width > 0 && r.height > 0)
+						zoomStack.push(toZoom(r));
+					repaint();
+				} else if (ev.getButton() == MouseEvent.BUTTON3) {
+					zoomStack.clear();
+					repaint();
+				}
+			}
+
+			public void mouseWheelMoved(MouseWheelEvent ev) {
+				if (ev.getWheelRotation() > 0 && !zoomStack.isEmpty()) {
+					zoomStack.pop();
+				} else if (ev.getWheelRotation() < 0) {
+					Point c = ev.getPoint();
+					zoomStack.push(toZoom(new Rectangle(c.x - SCROLL_ZOOM_SIZE,
+							c.y - SCROLL_ZOOM_SIZE, 2 * SCROLL_ZOOM_SIZE,
+							2 * SCROLL_ZOOM_SIZE)));
+				}
+				repaint();
+			}
+		};
+		addMouseListener(mouse);
+		addMouseMotionListener(mouse);
+		addMouseWheelListener(mouse);
+	}
+
+	/**
+	 * add a line to the plot
+	 * 
+	 * @param name
+	 *            the name shown in the legend
+	 * @param view
+	 *            the {@link OrbitView} whose values are plotted
+	 * @param color
+	 *            the color of the line
+	 * @return the number of the track
+	 */
+	int addTrack(String name, OrbitView view, Color color) {
+		tracks.add(new Track(name, view, color));
+		repaint();
+		return tracks.size() - 1;
+	}
+
+	/**
+	 * show or hide a track
+	 * 
+	 * @param track
+	 *            the number of the track
+	 * @param visible
+	 *            true to show it
+	 */
+	void setTrackVisible(int track, boolean visible) {
+		tracks.get(track).visible = visible;
+		repaint();
+	}
+
+	/**
+	 * label the horizontal axis with something other than n
+	 * 
+	 * @param name
+	 *            the name of the axis
+	 * @param scale
+	 *            the value of the axis at n = 1
+	 */
+	void setAxis(String name, double scale) {
+		axisName = name;
+		axisScale = scale;
+		repaint();
+	}
+
+	/**
+	 * go back to the whole orbit
+	 */
+	void resetZoom() {
+		zoomStack.clear();
+		repaint();
+	}
+
+	/**
+	 * @return the n and y ranges last painted
+	 */
+	ZoomLevel getShownRange() {
+		return shown;
+	}
+
+	/**
+	 * @see JComponent#paintComponent(Graphics)
+	 */
+	protected void paintComponent(Graphics g) {
+		Graphics2D g2 = (Graphics2D) g.create();
+		int width = Math.max(getWidth(), 1);
+		int height = Math.max(getHeight(), 1);
+		g2.setColor(CobwebRenderer.BACKGROUND_COLOR);
+		g2.fillRect(0, 0, width, height);
+
+		// the range of n
+		ZoomLevel zoom = zoomStack.isEmpty() ? null : zoomStack.peek();
+		int[] sizes = new int[tracks.size()];
+		int longest = 0;
+		for (int t = 0; t < tracks.size(); t++) {
+			Track track = tracks.get(t);
+			if (track.visible) {
+				sizes[t] = track.index.size();
+				longest = Math.max(longest, sizes[t]);
+			}
+		}
+		double nMin = zoom == null ? 0 : zoom.xMin;
+		double nMax = zoom == null ? Math.max(longest - 1, 1) : zoom.xMax;
+		double dn = (nMax - nMin) / width;
+
+		// sum up each column, fitting the y axis to the values if need be
+		double yMin = Double.POSITIVE_INFINITY, yMax = Double.NEGATIVE_INFINITY;
+		for (int t = 0; t < tracks.size(); t++) {
+			Track track = tracks.get(t);
+			if (!track.visible)
+				continue;
+			if (track.columns.length != 4 * width)
+				track.columns = new double[4 * width];
+			aggregate(track, sizes[t], nMin, dn, width);
+			for (double y : track.columns) {
+				if (CobwebRenderer.isFinite(y)) {
+					yMin = Math.min(yMin, y);
+					yMax = Math.max(yMax, y);
+				}
+			}
+		}
+		if (zoom != null) {
+			yMin = zoom.yMin;
+			yMax = zoom.yMax;
+		} else if (yMin > yMax) {
+			yMin = -1;
+			yMax = 1;
+		} else {
+			double pad = yMax > yMin ? (yMax - yMin) / 20 : Math.max(Math
+					.abs(yMin), 1) / 2;
+			yMin -= pad;
+			yMax += pad;
+		}
+		shown = new ZoomLevel(nMin, nMax, yMin, yMax);
+
+		// a column of values is a vertical line, which is as sharp and far
+		// quicker to draw without antialiasing
+		if (dn <= POINTS_PER_COLUMN)
+			g2.setRenderingHint(RenderingHints.KEY_ANTIALIASING,
+					RenderingHints.VALUE_ANTIALIAS_ON);
+		double scale = height / (yMax - yMin);
+		for (int t = 0; t < tracks.size(); t++) {
+			Track track = tracks.get(t);
+			if (track.visible) {
+				g2.setColor(track.color);
+				g2.draw(path(track, sizes[t], nMin, dn, yMax, scale, width));
+			}
+		}
+		paintLabels(g2, width, height);
+		if (zoomRectangle != null) {
+			g2.setColor(getForeground());
+			g2.draw(zoomRectangle);
+		}
+		g2.dispose();
+	}
+
+	/**
+	 * fill in the first, smallest, largest and last value of each column,
+	 * NaN where a column holds no values
+	 */
+	private static void aggregate(Track track, int size, double nMin,
+			double dn, int width) {
+		double[] columns = track.columns;
+		for (int c = 0; c < width; c++) {
+			int from = first(nMin + c * dn, size);
+			int to = first(nMin + (c + 1) * dn, size);
+			if (c == width - 1)
+				to = Math.min(Math.max(to, (int) Math.floor(nMin + width * dn) + 1), size);
+			if (from >= to) {
+				columns[4 * c] = columns[4 * c + 1] = columns[4 * c + 2] = columns[4 * c + 3] = Double.NaN;
+			} else if (dn <= POINTS_PER_COLUMN) {
+				// every value is drawn, so only the y axis needs these
+				columns[4 * c] = track.index.get(from);
+				columns[4 * c + 1] = columns[4 * c + 2] = Double.NaN;
+				columns[4 * c + 3] = track.index.get(to - 1);
+			} else {
+				columns[4 * c] = track.index.get(from);
+				columns[4 * c + 1] = track.index.min(from, to);
+				columns[4 * c + 2] = track.index.max(from, to);
+				columns[4 * c + 3] = track.index.get(to - 1);
+			}
+		}
+	}
+
+	/**
+	 * @return the first whole n at or after a position, between 0 and size
+	 */
+	private static int first(double n, int size) {
+		return (int) Math.max(0, Math.min(Math.ceil(n), size));
+	}
+
+	/**
+	 * @return the line of a track in pixels, broken where a value is not
+	 *         finite
+	 */
+	private static Path2D.Float path(Track track, int size, double nMin,
+			double dn, double yMax, double scale, int width) {
+		Path2D.Float path = new Path2D.Float();
+		boolean drawing = false;
+		if (dn <= POINTS_PER_COLUMN) {
+			// one point per value, one value past each edge
+			int from = Math.max(0, (int) Math.floor(nMin) - 1);
+			int to = Math.min(size, (int) Math.ceil(nMin + width * dn) + 2);
+			for (int n = from; n < to; n++) {
+				double y = track.index.get(n);
+				if (!CobwebRenderer.isFinite(y)) {
+					drawing = false;
+					continue;
+				}
+				float px = (float) ((n - nMin) / dn);
+				float py = (float) clamp((yMax - y) * scale);
+				if (drawing)
+					path.lineTo(px, py);
+				else
+					path.moveTo(px, py);
+				drawing = true;
+			}
+			return path;
+		}
+		double[] columns = track.columns;
+		for (int c = 0; c < width; c++) {
+			for (int i = 4 * c; i < 4 * c + 4; i++) {
+				double y = columns[i];
+				if (y != y && (i == 4 * c + 1 || i == 4 * c + 2))
+					continue;
+				if (!CobwebRenderer.isFinite(y)) {
+					drawing = false;
+					continue;
+				}
+				float py = (float) clamp((yMax - y) * scale);
+				if (drawing)
+					path.lineTo(c, py);
+				else
+					path.moveTo(c, py);
+				drawing = true;
+			}
+		}
+		return path;
+	}
+
+	/**
+	 * keep a pixel coordinate where Java2D can draw it
+	 */
+	private static double clamp(double d) {
+		return Math.max(-1e6, Math.min(d, 1e6));
+	}
+
+	/**
+	 * draw the ranges of n and y in the corners and the names of the tracks
+	 */
+	private void paintLabels(Graphics2D g, int width, int height) {
+		FontMetrics metrics = g.getFontMetrics();
+		int line = metrics.getAscent();
+		g.setColor(CobwebRenderer.AXES_COLOR);
+		g.drawString(format(shown.yMax), MARGIN, MARGIN + line);
+		g.drawString(format(shown.yMin), MARGIN, height - MARGIN - line
+				- metrics.getDescent());
+		g.drawString(axisName + " = " + format(shown.xMin * axisScale),
+				MARGIN, height - MARGIN);
+		String end = axisName + " = " + format(shown.xMax * axisScale);
+		g.drawString(end, width - MARGIN - metrics.stringWidth(end), height
+				- MARGIN);
+		int y = MARGIN + line;
+		for (Track track : tracks) {
+			if (!track.visible)
+				continue;
+			g.setColor(track.color);
+			g.drawString(track.name, width - MARGIN
+					- metrics.stringWidth(track.name), y);
+			y += metrics.getHeight();
+		}
+	}
+
+	private static String format(double d) {
+		return d == Math.rint(d) && Math.abs(d) < 1e15 ? "" + (long) d : String
+				.format("%.6g", d);
+	}
+
+	/**
+	 * @return the n and y ranges of a rectangle of pixels
+	 */
+	private ZoomLevel toZoom(Rectangle r) {
+		double dn = (shown.xMax - shown.xMin) / Math.max(getWidth(), 1);
+		double dy = (shown.yMax - shown.yMin) / Math.max(getHeight(), 1);
+		return new ZoomLevel(shown.xMin + r.x * dn, shown.xMin
+				+ (r.x + r.width) * dn, shown.yMax - (r.y + r.height) * dy,
+				shown.yMax - r.y * dy);
+	}
+
+	/**
+	 * move what is shown by a number of pixels, replacing the zoom on top of
+	 * the stack
+	 */
+	private void pan(int dx, int dy) {
+		ZoomLevel moved = toZoom(new Rectangle(-dx, -dy, getWidth(),
+				getHeight()));
+		if (!zoomStack.isEmpty())
+			zoomStack.pop();
+		zoomStack.push(moved);
+	}
+}
@@ -28,8 +28,12 @@ import java.awt.event.MouseListener;
 import java.awt.event.MouseMotionListener;
 import java.awt.event.MouseWheelEvent;
 import java.awt.event.MouseWheelListener;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Stack;
 
+import javax.swing.SwingUtilities;
+
 /**
  * class to take care of the zooming with the mouse buttons, dragging, and
  * scrolling.
@@ -108,6 +112,8 @@ final class ZoomManager extends MouseAdapter implements MouseListener,
 			CoordinatePair end = panel.pointToCoordinatePair(ev.getPoint());
 			if (start.equals(end))
 				return;
+			CobwebEvents.Zoom event = beginZoom();
+			panel.graphInteracting();
 
 			// figure out what the zoom level should be
 			ZoomLevel zoom;
@@ -125,15 +131,19 @@ final class ZoomManager extends MouseAdapter implements MouseListener,
 			zoomStack.push(zoom);
 			panel.setGraphZoom(zoom);
 			panel.setFullZoomOptionsEnabled(false);
+			commitZoom(event, "push", zoom);
 
 			start = null;
 			startPoint = null;
 			zoomRectangle = NOT_ZOOMING_RECT;
 		} else if (ev.getButton() == MouseEvent.BUTTON3 && startPoint == null) {
+			CobwebEvents.Zoom event = beginZoom();
 			ZoomLevel fullZoom = zoomStack.firstElement();
+			panel.graphInteracting();
 			setFullZoom(fullZoom);
 			panel.setGraphZoom(fullZoom);
 			panel.setFullZoomOptionsEnabled(true);
+			commitZoom(event, "reset", fullZoom);
 		}
 	}
 
@@ -178,6 +188,7 @@ final class ZoomManager extends MouseAdapter implements MouseListener,
 		}
 
 		zoomRectangle = new Rectangle(x, y, width, height);
+		panel.graphInteracting();
 		panel.repaint();
 	}
 
@@ -192,15 +203,19 @@ final class ZoomManager extends MouseAdapter implements MouseListener,
 		while (!(obj instanceof CobwebPanel))
 			obj = obj.getParent();
 		CobwebPanel panel = (CobwebPanel) obj;
+		panel.graphInteracting();
 
 		if (ev.getWheelRotation() == 1 && zoomStack.size() > 1) {
 			// scroll wheel scrolling down, zoom out
+			CobwebEvents.Zoom event = beginZoom();
 			zoomStack.pop();
 			if (zoomStack.size() == 1)
 				panel.setFullZoomOptionsEnabled(true);
 			panel.setGraphZoom(zoomStack.peek());
+			commitZoom(event, "pop", zoomStack.peek());
 		} else if (ev.getWheelRotation() == -1) {
 			// scroll wheel scrolling up, zoom in
+			CobwebEvents.Zoom event = beginZoom();
 			Point center = ev.getPoint();
 			CoordinatePair topLeft = panel.pointToCoordinatePair(new Point(
 					center.x - SCROLL_ZOOM_SIZE, center.y - SCROLL_ZOOM_SIZE));
@@ -211,6 +226,7 @@ final class ZoomManager extends MouseAdapter implements MouseListener,
 			zoomStack.push(zoomIn);
 			panel.setGraphZoom(zoomIn);
 			panel.setFullZoomOptionsEnabled(false);
+			commitZoom(event, "push", zoomIn);
 		}
 	}
 
@@ -225,6 +241,70 @@ final class ZoomManager extends MouseAdapter implements MouseListener,
 		zoomStack.push(fullZoom);
 	}
 
+	/**
+	 * @return a copy of the zoom stack, the full zoom first and the current
+	 *         zoom last
+	 */
+	public List<ZoomLevel> getZoomStack() {
+		return new ArrayList<ZoomLevel>(zoomStack);
+	}
+
+	/**
+	 * method to replace the whole zoom stack, as when a session is loaded
+	 * 
+	 * @param zooms
+	 *            the {@link ZoomLevel}s, the full zoom first and the current
+	 *            zoom last
+	 */
+	public void setZoomStack(List<ZoomLevel> zooms) {
+		CobwebEvents.Zoom event = beginZoom();
+		zoomStack.clear();
+		zoomStack.addAll(zooms);
+		commitZoom(event, "load", zoomStack.peek());
+	}
+
+	/**
+	 * @return a started flight recorder event for a change of the zoom stack,
+	 *         or null if nothing is recording
+	 */
+	private static CobwebEvents.Zoom beginZoom() {
+		if (!CobwebEvents.isRecording())
+			return null;
+		CobwebEvents.Zoom event = new CobwebEvents.Zoom();
+		event.begin();
+		return event;
+	}
+
+	/**
+	 * commit the event of a change of the zoom stack once the graph has been
+	 * repainted. the repaint the change asked for is already queued on the
+	 * event dispatch thread, so the commit queued after it ends the event.
+	 * 
+	 * @param event
+	 *            the event from {@link #beginZoom()}, or null
+	 * @param action
+	 *            what happened to the stack
+	 * @param zoom
+	 *            the {@link ZoomLevel} now on top of the stack
+	 */
+	private void commitZoom(final CobwebEvents.Zoom event, String action,
+			ZoomLevel zoom) {
+		if (event == null)
+			return;
+		event.action = action;
+		event.depth = zoomStack.size();
+		event.xMin = zoom.xMin;
+		event.xMax = zoom.xMax;
+		event.yMin = zoom.yMin;
+		event.yMax = zoom.yMax;
+		SwingUtilities.invokeLater(new Runnable() {
+
+			public void run() {
+				event.commit();
+			}
+		});
+	}
+
 	/**
 	 * @return the zoomRectangle to draw
 	 */